@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("org.jetbrains.intellij") version "1.17.0"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.ennic"
@@ -10,9 +11,60 @@ repositories {
     mavenCentral()
 }
 
+// The template preview renders with the real engine; Gson for JSON data models comes with the IDE
+dependencies {
+    implementation("org.freemarker:freemarker:2.3.32")
+    implementation("org.yaml:snakeyaml:2.2")
+
+    // Tests build on the platform's LexerTestCase and BasePlatformTestCase, which are JUnit 3 test cases
+    testImplementation("junit:junit:4.13.2")
+}
+
 intellij {
     version.set("2024.1.4")
     type.set("IC") // IntelliJ Community Edition
+    plugins.set(listOf("com.intellij.java", "org.jetbrains.kotlin")) // optional, see freemarker-java.xml
+}
+
+// Benchmarks live in src/jmh and run against the IDE jars the plugin compiles with: ./gradlew jmh
+configurations {
+    named("jmhImplementation") {
+        extendsFrom(configurations.compileOnly.get())
+    }
+}
+
+// The headless template linter lives in src/lint: ./gradlew lintTemplates --args="--format sarif src/templates"
+sourceSets {
+    create("lint") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations {
+    named("lintImplementation") {
+        extendsFrom(configurations.compileOnly.get())
+    }
+    named("lintRuntimeOnly") {
+        extendsFrom(configurations.compileOnly.get())
+    }
+}
+
+tasks.register<JavaExec>("lintTemplates") {
+    group = "verification"
+    description = "Checks FreeMarker templates without starting the IDE."
+    classpath = sourceSets["lint"].runtimeClasspath
+    mainClass.set("com.ennic.freemarker.lint.FreeMarkerLint")
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    // Benchmarks only measure: the time limits they track are checked by the tests in src/test
+    failOnError.set(true)
 }
 
 tasks {
@@ -0,0 +1,70 @@
+package com.ennic.freemarker.benchmark;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.TestApplicationManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reformatting a whole template and a small range in the middle of it. The one second limit for a 10,000 line
+ * template is checked by FreeMarkerFormatterTest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class FormatterBenchmark {
+    private static final int RANGE_LINES = 50;
+
+    @Param({"10000"})
+    public int lines;
+
+    private Project project;
+    private String text;
+    private int rangeStart;
+    private int rangeEnd;
+    private PsiFile file;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TestApplicationManager.getInstance();
+        project = ProjectManager.getInstance().getDefaultProject();
+        text = TemplateCorpus.generateLines(TemplateCorpus.Kind.BLOCK_HEAVY, lines);
+        rangeStart = lineStart(text, lines / 2);
+        rangeEnd = lineStart(text, lines / 2 + RANGE_LINES);
+    }
+
+    // Every invocation starts again from the unformatted text
+    @Setup(Level.Invocation)
+    public void createFile() {
+        file = PsiFileFactory.getInstance(project)
+                .createFileFromText("benchmark.ftl", FreeMarkerFileType.INSTANCE, text, System.currentTimeMillis(), true);
+    }
+
+    @Benchmark
+    public void reformatFile() {
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project,
+                () -> CodeStyleManager.getInstance(project).reformat(file)));
+    }
+
+    @Benchmark
+    public void reformatRange() {
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project,
+                () -> CodeStyleManager.getInstance(project).reformatText(file, rangeStart, rangeEnd)));
+    }
+
+    private static int lineStart(String text, int line) {
+        int offset = 0;
+        for (int i = 0; i < line; i++) {
+            offset = text.indexOf('\n', offset) + 1;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ennic.freemarker.benchmark;
+
+import com.ennic.freemarker.highlighting.FreeMarkerSyntaxHighlighter;
+import com.intellij.lexer.Lexer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing through the highlighting lexer and mapping every token to its attributes,
+ * which is the work the editor highlighter does when a template is opened.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class HighlighterBenchmark {
+
+    @Param({"DIRECTIVE_HEAVY", "INTERPOLATION_HEAVY", "COMMENT_HEAVY", "HTML_HEAVY"})
+    public TemplateCorpus.Kind kind;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private String text;
+    private FreeMarkerSyntaxHighlighter highlighter;
+
+    @Setup
+    public void setUp() {
+        text = TemplateCorpus.generate(kind, size);
+        highlighter = new FreeMarkerSyntaxHighlighter();
+    }
+
+    @Benchmark
+    public void highlight(LexerBenchmark.Counters counters, Blackhole blackhole) {
+        Lexer lexer = highlighter.getHighlightingLexer();
+        lexer.start(text, 0, text.length(), 0);
+        long tokens = 0;
+        while (lexer.getTokenType() != null) {
+            blackhole.consume(highlighter.getTokenHighlights(lexer.getTokenType()));
+            tokens++;
+            lexer.advance();
+        }
+        counters.tokens += tokens;
+        counters.bytes += text.length();
+    }
+}
@@ -0,0 +1,79 @@
+package com.ennic.freemarker.benchmark;
+
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.lang.injection.InjectedLanguageManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.TestApplicationManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typing into one of many FreeMarker templates injected into a Java file: one keystroke, the commit
+ * and the lookup of the injected fragment at the caret. The 100 ms limit for a keystroke is checked by
+ * FreeMarkerLiteralInjectorTest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class InjectionBenchmark {
+    @Param({"200"})
+    public int templates;
+
+    private Project project;
+    private PsiFile file;
+    private Document document;
+    private int caret;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TestApplicationManager.getInstance();
+        project = ProjectManager.getInstance().getDefaultProject();
+        String text = generateJavaFile(templates);
+        file = PsiFileFactory.getInstance(project)
+                .createFileFromText("Templates.java", JavaFileType.INSTANCE, text, System.currentTimeMillis(), true);
+        document = PsiDocumentManager.getInstance(project).getDocument(file);
+        // Inside the interpolation of the middle template
+        caret = text.indexOf("${order", text.indexOf("\"t" + templates / 2 + "\"")) + 2;
+        if (InjectedLanguageManager.getInstance(project).findInjectedElementAt(file, caret) == null) {
+            throw new IllegalStateException("No FreeMarker injected at offset " + caret);
+        }
+    }
+
+    @Benchmark
+    public void typeInTemplate(Blackhole blackhole) {
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project, () -> {
+            document.insertString(caret, "x");
+            PsiDocumentManager.getInstance(project).commitDocument(document);
+        }));
+        PsiElement injected = InjectedLanguageManager.getInstance(project).findInjectedElementAt(file, caret);
+        blackhole.consume(injected);
+    }
+
+    // Half of the templates are passed directly, half through a constant
+    private static String generateJavaFile(int templates) {
+        StringBuilder text = new StringBuilder();
+        text.append("import freemarker.template.Template;\nimport java.io.StringReader;\n\nclass Templates {\n");
+        for (int i = 0; i < templates; i += 2) {
+            text.append("    static final String T").append(i).append(" = \"<#if order.total > ").append(i)
+                    .append("><b>${order.customer.name}</b></#if>\";\n");
+        }
+        text.append("\n    void load() throws Exception {\n");
+        for (int i = 0; i < templates; i++) {
+            String source = i % 2 == 0 ? "T" + i :
+                    "\"<#list items as item>${item.name}: ${order.total}</#list>\"";
+            text.append("        new Template(\"t").append(i).append("\", new StringReader(").append(source).append("));\n");
+        }
+        text.append("    }\n}\n");
+        return text.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package com.ennic.freemarker.benchmark;
+
+import com.ennic.freemarker.lexer.FreeMarkerRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name classification on every identifier of a corpus: the perfect-hash registry, which reads the
+ * buffer range in place, against the former switch over a String copied out of the buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class KeywordLookupBenchmark {
+
+    @Param({"DIRECTIVE_HEAVY", "INTERPOLATION_HEAVY"})
+    public TemplateCorpus.Kind kind;
+
+    private String text;
+    private int[] starts;
+    private int[] ends;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long lookups;
+    }
+
+    @Setup
+    public void setUp() {
+        text = TemplateCorpus.generate(kind, 100_000);
+        int count = 0;
+        starts = new int[text.length()];
+        ends = new int[text.length()];
+        for (int i = 0; i < text.length(); ) {
+            if (!Character.isLetter(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_')) {
+                i++;
+            }
+            starts[count] = start;
+            ends[count++] = i;
+        }
+        starts = Arrays.copyOf(starts, count);
+        ends = Arrays.copyOf(ends, count);
+    }
+
+    @Benchmark
+    public void registry(Counters counters, Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(FreeMarkerRegistry.lookup(text, starts[i], ends[i]));
+        }
+        counters.lookups += starts.length;
+    }
+
+    @Benchmark
+    public void stringSwitch(Counters counters, Blackhole blackhole) {
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(isKeyword(text.subSequence(starts[i], ends[i]).toString()));
+        }
+        counters.lookups += starts.length;
+    }
+
+    // The lexer's keyword check before the registry
+    private static boolean isKeyword(String word) {
+        return switch (word) {
+            case "if", "else", "elseif", "list", "assign", "include", "import", "macro", "function", "return", "switch",
+                 "case", "default", "ftl", "setting", "escape", "stop", "attempt", "recover", "items", "as" -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.ennic.freemarker.benchmark;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexer throughput. The aux counters report tokens/s and bytes/s; with the gc profiler enabled,
+ * gc.alloc.rate.norm divided by the tokens of one operation gives the allocation per token.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+
+    @Param({"DIRECTIVE_HEAVY", "INTERPOLATION_HEAVY", "COMMENT_HEAVY", "HTML_HEAVY"})
+    public TemplateCorpus.Kind kind;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private String text;
+    private FreeMarkerLexer lexer;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long tokens;
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        text = TemplateCorpus.generate(kind, size);
+        lexer = new FreeMarkerLexer();
+    }
+
+    @Benchmark
+    public void lex(Counters counters, Blackhole blackhole) {
+        lexer.start(text, 0, text.length(), 0);
+        long tokens = 0;
+        while (lexer.getTokenType() != null) {
+            blackhole.consume(lexer.getTokenType());
+            tokens++;
+            lexer.advance();
+        }
+        counters.tokens += tokens;
+        counters.bytes += text.length();
+    }
+}
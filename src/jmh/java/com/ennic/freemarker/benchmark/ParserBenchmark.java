@@ -0,0 +1,53 @@
+package com.ennic.freemarker.benchmark;
+
+import com.ennic.freemarker.FreeMarkerParserDefinition;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.lang.PsiParser;
+import com.intellij.testFramework.TestApplicationManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full parse of a template into an AST. PsiBuilder needs the platform services,
+ * so the setup boots a headless test application once per fork.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"DIRECTIVE_HEAVY", "INTERPOLATION_HEAVY", "COMMENT_HEAVY", "HTML_HEAVY"})
+    public TemplateCorpus.Kind kind;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private String text;
+    private FreeMarkerParserDefinition parserDefinition;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        TestApplicationManager.getInstance();
+        text = TemplateCorpus.generate(kind, size);
+        parserDefinition = new FreeMarkerParserDefinition();
+    }
+
+    @Benchmark
+    public ASTNode parse(Counters counters) {
+        PsiBuilder builder = PsiBuilderFactory.getInstance()
+                .createBuilder(parserDefinition, parserDefinition.createLexer(null), text);
+        PsiParser parser = parserDefinition.createParser(null);
+        ASTNode root = parser.parse(parserDefinition.getFileNodeType(), builder);
+        counters.bytes += text.length();
+        return root;
+    }
+}
@@ -0,0 +1,169 @@
+package com.ennic.freemarker.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic templates for the benchmarks. Each kind stresses a different part of the lexer,
+ * and the same kind, size and seed always produce the same text so runs of different plugin versions compare.
+ */
+public final class TemplateCorpus {
+
+    public enum Kind {
+        DIRECTIVE_HEAVY,
+        INTERPOLATION_HEAVY,
+        COMMENT_HEAVY,
+        HTML_HEAVY,
+        BLOCK_HEAVY, // nested blocks and markup without any indentation, for the formatter
+    }
+
+    private static final String[] NAMES = {"order", "customer", "item", "product", "user", "page", "total", "row"};
+    private static final String[] PROPERTIES = {"id", "name", "price", "active", "items", "address", "created"};
+    private static final String[] BUILT_INS = {"upper_case", "has_content", "size", "string", "c", "trim"};
+    private static final String[] TAGS = {"div", "span", "td", "li", "p", "a", "section"};
+
+    private TemplateCorpus() {
+    }
+
+    @NotNull
+    public static String generate(@NotNull Kind kind, int size) {
+        return generate(kind, size, 42L);
+    }
+
+    // A template of at least the given number of lines
+    @NotNull
+    public static String generateLines(@NotNull Kind kind, int lines) {
+        int size = lines * 32;
+        String text = generate(kind, size);
+        while (lineCount(text) < lines) {
+            size += size / 4;
+            text = generate(kind, size);
+        }
+        return text;
+    }
+
+    @NotNull
+    public static String generate(@NotNull Kind kind, int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(size + 256);
+        int depth = 0;
+        while (text.length() < size) {
+            switch (kind) {
+                case DIRECTIVE_HEAVY -> depth = appendDirectives(text, random, depth);
+                case INTERPOLATION_HEAVY -> appendInterpolations(text, random);
+                case COMMENT_HEAVY -> appendComments(text, random);
+                case HTML_HEAVY -> appendMarkup(text, random);
+                case BLOCK_HEAVY -> depth = appendBlocks(text, random, depth);
+            }
+        }
+        // Close whatever is still open so every template is well formed
+        for (; depth > 0; depth--) {
+            text.append("</#if>\n");
+        }
+        return text.toString();
+    }
+
+    private static int appendDirectives(StringBuilder text, Random random, int depth) {
+        String name = pick(random, NAMES);
+        switch (random.nextInt(5)) {
+            case 0 -> {
+                text.append("<#if ").append(name).append('.').append(pick(random, PROPERTIES)).append("??>\n");
+                return depth + 1;
+            }
+            case 1 -> {
+                if (depth > 0) {
+                    text.append("</#if>\n");
+                    return depth - 1;
+                }
+                text.append("<#assign ").append(name).append(" = ").append(random.nextInt(1000)).append(" />\n");
+            }
+            case 2 -> text.append("<#list ").append(name).append("s as ").append(name).append(">")
+                    .append("<#sep>, </#sep></#list>\n");
+            case 3 -> text.append("<#assign ").append(name).append("Label = \"")
+                    .append(pick(random, PROPERTIES)).append("\" />\n");
+            default -> text.append("<@layout.block name=\"").append(name).append("\" />\n");
+        }
+        return depth;
+    }
+
+    private static int appendBlocks(StringBuilder text, Random random, int depth) {
+        String name = pick(random, NAMES);
+        switch (random.nextInt(6)) {
+            case 0 -> {
+                text.append("<#if ").append(name).append('.').append(pick(random, PROPERTIES)).append("??>\n");
+                return depth + 1;
+            }
+            case 1 -> {
+                if (depth > 0) {
+                    text.append("</#if>\n");
+                    return depth - 1;
+                }
+                appendMarkup(text, random);
+            }
+            case 2 -> {
+                if (depth > 0) {
+                    text.append("<#elseif ").append(name).append(".").append(pick(random, PROPERTIES)).append(">\n");
+                } else {
+                    appendMarkup(text, random);
+                }
+            }
+            case 3 -> {
+                String tag = pick(random, TAGS);
+                text.append("<#list ").append(name).append("s as ").append(name).append(">\n")
+                        .append('<').append(tag).append(">${").append(name).append('.').append(pick(random, PROPERTIES))
+                        .append("}</").append(tag).append(">\n</#list>\n");
+            }
+            default -> appendMarkup(text, random);
+        }
+        return depth;
+    }
+
+    private static void appendInterpolations(StringBuilder text, Random random) {
+        text.append("${").append(pick(random, NAMES)).append('.').append(pick(random, PROPERTIES));
+        if (random.nextBoolean()) {
+            text.append('?').append(pick(random, BUILT_INS));
+        }
+        text.append("} ");
+        if (random.nextInt(8) == 0) {
+            text.append("${\"").append(pick(random, NAMES)).append(": ${").append(pick(random, NAMES)).append("}\"}\n");
+        }
+    }
+
+    private static void appendComments(StringBuilder text, Random random) {
+        text.append("<#-- ");
+        if (random.nextInt(4) == 0) {
+            text.append("TODO ");
+        }
+        int words = 5 + random.nextInt(30);
+        for (int i = 0; i < words; i++) {
+            text.append(pick(random, PROPERTIES)).append(i % 9 == 8 ? "\n     " : " ");
+        }
+        text.append("-->\n");
+    }
+
+    private static void appendMarkup(StringBuilder text, Random random) {
+        String tag = pick(random, TAGS);
+        text.append('<').append(tag).append(" class=\"").append(pick(random, PROPERTIES)).append("\">")
+                .append("Lorem ipsum dolor sit amet, ").append(pick(random, NAMES))
+                .append("</").append(tag).append(">\n");
+        if (random.nextInt(10) == 0) {
+            text.append("<a href=\"/").append(pick(random, NAMES)).append("/${")
+                    .append(pick(random, PROPERTIES)).append("}\">link</a>\n");
+        }
+    }
+
+    private static int lineCount(String text) {
+        int lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
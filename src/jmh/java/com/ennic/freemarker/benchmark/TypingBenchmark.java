@@ -0,0 +1,88 @@
+package com.ennic.freemarker.benchmark;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.ennic.freemarker.matching.FreeMarkerAutoCloseHandler;
+import com.ennic.freemarker.matching.FreeMarkerBlockPairs;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.TestApplicationManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typing the ">" of a start tag in the middle of a 20,000 line template: the document edit with the incremental
+ * update of the block index, and the inserted end tag. The 1 ms limit for a keystroke is checked by
+ * FreeMarkerAutoCloseHandlerTest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class TypingBenchmark {
+    private static final String START_TAG = "<#list items as item";
+
+    @Param({"20000"})
+    public int lines;
+
+    private Project project;
+    private PsiFile file;
+    private Document document;
+    private Editor editor;
+    private int caret;
+    private final FreeMarkerAutoCloseHandler handler = new FreeMarkerAutoCloseHandler();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TestApplicationManager.getInstance();
+        project = ProjectManager.getInstance().getDefaultProject();
+        String text = TemplateCorpus.generateLines(TemplateCorpus.Kind.DIRECTIVE_HEAVY, lines);
+        file = PsiFileFactory.getInstance(project)
+                .createFileFromText("benchmark.ftl", FreeMarkerFileType.INSTANCE, text, System.currentTimeMillis(), true);
+        document = PsiDocumentManager.getInstance(project).getDocument(file);
+        editor = EdtTestUtil.runInEdtAndGet(() -> EditorFactory.getInstance().createEditor(document, project));
+        caret = text.indexOf('\n', text.length() / 2) + 1;
+        // Built once when the editor first shows paired tags, not on the keystroke
+        FreeMarkerBlockPairs.forDocument(document);
+    }
+
+    // The start tag up to its ">" is typed before each measured keystroke
+    @Setup(Level.Invocation)
+    public void typeStartTag() {
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project,
+                () -> document.insertString(caret, START_TAG)));
+    }
+
+    @Benchmark
+    public void typeTagEnd() {
+        int offset = caret + START_TAG.length();
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project, () -> {
+            document.insertString(offset, ">");
+            editor.getCaretModel().moveToOffset(offset + 1);
+            handler.charTyped('>', project, editor, file);
+        }));
+    }
+
+    // Removes the typed tag and the inserted end tag, so every keystroke sees the same template
+    @TearDown(Level.Invocation)
+    public void removeTypedTags() {
+        int end = caret + START_TAG.length() + ">".length() + "</#list>".length();
+        if (!document.getCharsSequence().subSequence(end - "</#list>".length(), end).toString().equals("</#list>")) {
+            throw new IllegalStateException("No end tag was inserted after " + START_TAG + ">");
+        }
+        EdtTestUtil.runInEdtAndWait(() -> WriteCommandAction.runWriteCommandAction(project,
+                () -> document.deleteString(caret, end)));
+    }
+
+    @TearDown(Level.Trial)
+    public void releaseEditor() {
+        EdtTestUtil.runInEdtAndWait(() -> EditorFactory.getInstance().releaseEditor(editor));
+    }
+}
@@ -0,0 +1,117 @@
+package com.ennic.freemarker.lint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Checks .ftl files without an IDE, for CI:
+ * <pre>
+ *     ./gradlew lintTemplates --args="[--format json|sarif] [--slowest N] path..."
+ * </pre>
+ * Results go to stdout, throughput and the slowest templates to stderr.
+ * The exit code is 1 when an error was found, 2 on bad usage.
+ */
+public class FreeMarkerLint {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String format = "json";
+        int slowest = 10;
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--format") && i + 1 < args.length) {
+                format = args[++i];
+            } else if (args[i].equals("--slowest") && i + 1 < args.length) {
+                slowest = Integer.parseInt(args[++i]);
+            } else {
+                roots.add(Path.of(args[i]));
+            }
+        }
+        if (roots.isEmpty() || !format.equals("json") && !format.equals("sarif")) {
+            System.err.println("Usage: FreeMarkerLint [--format json|sarif] [--slowest N] path...");
+            System.exit(2);
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            try (Stream<Path> paths = Files.walk(root)) {
+                paths.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".ftl")).forEach(files::add);
+            }
+        }
+
+        LintReport report = LintReport.create(format, System.out);
+        Queue<Timing> timings = new ConcurrentLinkedQueue<>();
+        AtomicInteger errors = new AtomicInteger();
+        report.begin();
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.submit(() -> files.parallelStream().forEach(file -> {
+                long fileStart = System.nanoTime();
+                List<LintProblem> problems = new TemplateChecker().check(read(file));
+                long nanos = System.nanoTime() - fileStart;
+                timings.add(new Timing(file, nanos));
+                for (LintProblem problem : problems) {
+                    if (problem.rule.level.equals("error")) {
+                        errors.incrementAndGet();
+                    }
+                }
+                report.file(file.toString(), nanos, problems);
+            })).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        report.end();
+
+        System.err.printf("%d files in %.1f ms, %.0f files/s%n", files.size(), elapsed / 1e6,
+                files.size() / Math.max(elapsed / 1e9, 1e-9));
+        timings.stream()
+                .sorted(Comparator.comparingLong((Timing timing) -> timing.nanos).reversed())
+                .limit(slowest)
+                .forEach(timing -> System.err.printf("%10.2f ms  %s%n", timing.nanos / 1e6, timing.file));
+        System.exit(errors.get() > 0 ? 1 : 0);
+    }
+
+    // Mapped rather than read into a heap array; the decoded buffer is a CharSequence the lexer reads directly
+    private static CharBuffer read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            return decoder.decode(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(file.toString(), e);
+        }
+    }
+
+    private static class Timing {
+        final Path file;
+        final long nanos;
+
+        Timing(Path file, long nanos) {
+            this.file = file;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ennic.freemarker.lint;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One finding in a template. Line and column are 1-based and filled in once all problems of a file are known.
+ */
+public class LintProblem {
+    public enum Rule {
+        UNCLOSED_DIRECTIVE("unclosed-directive", "error"),
+        UNMATCHED_END_TAG("unmatched-end-tag", "error"),
+        UNTERMINATED_TAG("unterminated-tag", "error"),
+        BAD_INTERPOLATION("bad-interpolation", "error"),
+        UNCLOSED_COMMENT("unclosed-comment", "error"),
+        UNKNOWN_BUILTIN("unknown-builtin", "warning");
+
+        public final String id;
+        public final String level;
+
+        Rule(String id, String level) {
+            this.id = id;
+            this.level = level;
+        }
+    }
+
+    public final Rule rule;
+    public final int offset;
+    public final String message;
+    int line;
+    int column;
+
+    public LintProblem(@NotNull Rule rule, int offset, @NotNull String message) {
+        this.rule = rule;
+        this.offset = offset;
+        this.message = message;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,136 @@
+package com.ennic.freemarker.lint;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Streams results as they come in: one JSON object per line, or a single SARIF log whose results
+ * are written file by file. Calls are serialized, workers report from many threads.
+ */
+public abstract class LintReport {
+    protected final PrintStream out;
+
+    protected LintReport(@NotNull PrintStream out) {
+        this.out = out;
+    }
+
+    @NotNull
+    public static LintReport create(@NotNull String format, @NotNull PrintStream out) {
+        return switch (format) {
+            case "json" -> new Json(out);
+            case "sarif" -> new Sarif(out);
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+    }
+
+    public abstract void begin();
+
+    public abstract void file(@NotNull String path, long nanos, @NotNull List<LintProblem> problems);
+
+    public abstract void end();
+
+    static String quote(String value) {
+        StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    private static class Json extends LintReport {
+        Json(PrintStream out) {
+            super(out);
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public synchronized void file(@NotNull String path, long nanos, @NotNull List<LintProblem> problems) {
+            if (problems.isEmpty()) {
+                return;
+            }
+            StringBuilder builder = new StringBuilder();
+            builder.append("{\"file\":").append(quote(path))
+                    .append(",\"millis\":").append(nanos / 1_000_000.0)
+                    .append(",\"problems\":[");
+            for (int i = 0; i < problems.size(); i++) {
+                LintProblem problem = problems.get(i);
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append("{\"rule\":").append(quote(problem.rule.id))
+                        .append(",\"level\":").append(quote(problem.rule.level))
+                        .append(",\"line\":").append(problem.getLine())
+                        .append(",\"column\":").append(problem.getColumn())
+                        .append(",\"message\":").append(quote(problem.message)).append('}');
+            }
+            out.println(builder.append("]}"));
+        }
+
+        @Override
+        public void end() {
+            out.flush();
+        }
+    }
+
+    private static class Sarif extends LintReport {
+        private boolean first = true;
+
+        Sarif(PrintStream out) {
+            super(out);
+        }
+
+        @Override
+        public void begin() {
+            StringBuilder rules = new StringBuilder();
+            for (LintProblem.Rule rule : LintProblem.Rule.values()) {
+                if (rules.length() > 0) {
+                    rules.append(',');
+                }
+                rules.append("{\"id\":").append(quote(rule.id))
+                        .append(",\"defaultConfiguration\":{\"level\":").append(quote(rule.level)).append("}}");
+            }
+            out.println("{\"version\":\"2.1.0\",\"$schema\":\"https://json.schemastore.org/sarif-2.1.0.json\"," +
+                    "\"runs\":[{\"tool\":{\"driver\":{\"name\":\"freemarker-lint\",\"rules\":[" + rules + "]}}," +
+                    "\"results\":[");
+        }
+
+        @Override
+        public synchronized void file(@NotNull String path, long nanos, @NotNull List<LintProblem> problems) {
+            for (LintProblem problem : problems) {
+                out.print(first ? "" : ",\n");
+                first = false;
+                out.print("{\"ruleId\":" + quote(problem.rule.id) +
+                        ",\"level\":" + quote(problem.rule.level) +
+                        ",\"message\":{\"text\":" + quote(problem.message) + "}" +
+                        ",\"locations\":[{\"physicalLocation\":{\"artifactLocation\":{\"uri\":" + quote(path) + "}" +
+                        ",\"region\":{\"startLine\":" + problem.getLine() +
+                        ",\"startColumn\":" + problem.getColumn() + "}}}]}");
+            }
+        }
+
+        @Override
+        public void end() {
+            out.println("\n]}]}");
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.ennic.freemarker.lint;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerRegistry;
+import com.ennic.freemarker.parser.FreeMarkerDirectives;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import static com.ennic.freemarker.lexer.FreeMarkerTokenTypes.*;
+
+/**
+ * Checks a template in one pass over the lexer tokens, with the block rules the parser uses.
+ * The parser itself needs a PsiBuilder and so a running platform, which a CI job does not have.
+ */
+public class TemplateChecker {
+
+    @NotNull
+    public List<LintProblem> check(@NotNull CharSequence text) {
+        List<LintProblem> problems = new ArrayList<>();
+        FreeMarkerLexer lexer = new FreeMarkerLexer();
+        lexer.start(text);
+
+        Deque<OpenBlock> open = new ArrayDeque<>();
+        while (lexer.getTokenType() != null) {
+            IElementType tokenType = lexer.getTokenType();
+            if (TAG_STARTS.contains(tokenType)) {
+                checkTag(lexer, text, open, problems);
+                continue;
+            }
+            if (tokenType == INTERPOLATION_START) {
+                checkInterpolation(lexer, text, problems);
+                continue;
+            }
+            if (tokenType == COMMENT) {
+                checkComment(lexer, text, problems);
+            }
+            lexer.advance();
+        }
+
+        for (OpenBlock block : open) {
+            if (FreeMarkerDirectives.isRequiredBlock(block.name)) {
+                problems.add(new LintProblem(LintProblem.Rule.UNCLOSED_DIRECTIVE, block.offset,
+                        "Missing closing tag </#" + block.name + ">"));
+            }
+        }
+        computePositions(text, problems);
+        return problems;
+    }
+
+    // <#, </#, <@ or </@, the directive name and everything up to > or />
+    private static void checkTag(FreeMarkerLexer lexer, CharSequence text, Deque<OpenBlock> open,
+                                 List<LintProblem> problems) {
+        int offset = lexer.getTokenStart();
+        boolean closing = lexer.getTokenType() == DIRECTIVE_CLOSING;
+        boolean macroCall = lexer.getTokenType() == MACRO_CALL_START || lexer.getTokenType() == MACRO_CALL_CLOSING;
+        lexer.advance();
+
+        String name = null;
+        IElementType nameType = lexer.getTokenType();
+        if (nameType == DIRECTIVE_NAME || nameType == IDENTIFIER || nameType == KEYWORD) {
+            name = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+            lexer.advance();
+        }
+        int assignment = FreeMarkerDirectives.TARGET;
+        boolean empty = false;
+        while (true) {
+            IElementType tokenType = lexer.getTokenType();
+            if (tokenType == DIRECTIVE_END || tokenType == EMPTY_DIRECTIVE_END) {
+                empty = tokenType == EMPTY_DIRECTIVE_END;
+                lexer.advance();
+                break;
+            }
+            if (tokenType == null || TAG_STARTS.contains(tokenType)) {
+                problems.add(new LintProblem(LintProblem.Rule.UNTERMINATED_TAG, offset, "'>' expected"));
+                break;
+            }
+            if (tokenType == INTERPOLATION_START) {
+                checkInterpolation(lexer, text, problems);
+                continue;
+            }
+            if (name != null) {
+                assignment = FreeMarkerDirectives.readAssignment(assignment, tokenType, text,
+                        lexer.getTokenStart(), lexer.getTokenEnd());
+            }
+            checkBuiltin(lexer, text, problems);
+            lexer.advance();
+        }
+
+        // Macro calls are checked like directives but do not open blocks
+        if (name == null || macroCall) {
+            return;
+        }
+        if (closing) {
+            close(open, name, offset, problems);
+        } else if (!empty && (FreeMarkerDirectives.isRequiredBlock(name) ||
+                FreeMarkerDirectives.isOptionalBlock(name) && assignment != FreeMarkerDirectives.ASSIGNMENT)) {
+            open.push(new OpenBlock(name, offset));
+        }
+    }
+
+    private static void close(Deque<OpenBlock> open, String name, int offset, List<LintProblem> problems) {
+        boolean matched = false;
+        for (OpenBlock block : open) {
+            if (block.name.equals(name)) {
+                matched = true;
+                break;
+            }
+        }
+        if (!matched) {
+            problems.add(new LintProblem(LintProblem.Rule.UNMATCHED_END_TAG, offset,
+                    "Closing tag without an open directive"));
+            return;
+        }
+        while (true) {
+            OpenBlock block = open.pop();
+            if (block.name.equals(name)) {
+                return;
+            }
+            if (FreeMarkerDirectives.isRequiredBlock(block.name)) {
+                problems.add(new LintProblem(LintProblem.Rule.UNCLOSED_DIRECTIVE, block.offset,
+                        "Missing closing tag </#" + block.name + ">"));
+            }
+        }
+    }
+
+    private static void checkInterpolation(FreeMarkerLexer lexer, CharSequence text, List<LintProblem> problems) {
+        int offset = lexer.getTokenStart();
+        lexer.advance();
+        boolean empty = true;
+        while (true) {
+            IElementType tokenType = lexer.getTokenType();
+            if (tokenType == INTERPOLATION_END) {
+                if (empty) {
+                    problems.add(new LintProblem(LintProblem.Rule.BAD_INTERPOLATION, offset, "Empty interpolation"));
+                }
+                lexer.advance();
+                return;
+            }
+            if (tokenType == null || TAG_STARTS.contains(tokenType) || tokenType == DIRECTIVE_END) {
+                problems.add(new LintProblem(LintProblem.Rule.BAD_INTERPOLATION, offset, "'}' expected"));
+                return;
+            }
+            if (tokenType == INTERPOLATION_START) {
+                checkInterpolation(lexer, text, problems);
+                empty = false;
+                continue;
+            }
+            if (tokenType != TEXT || !isBlank(text, lexer.getTokenStart(), lexer.getTokenEnd())) {
+                empty = false;
+            }
+            checkBuiltin(lexer, text, problems);
+            lexer.advance();
+        }
+    }
+
+    private static void checkComment(FreeMarkerLexer lexer, CharSequence text, List<LintProblem> problems) {
+        int offset = lexer.getTokenStart();
+        if (!FreeMarkerLexer.isClosedComment(text.subSequence(offset, lexer.getTokenEnd()))) {
+            problems.add(new LintProblem(LintProblem.Rule.UNCLOSED_COMMENT, offset, "Unclosed comment"));
+        }
+    }
+
+    // The lexer only marks known built-ins, any other name right after a single ? is unknown
+    private static void checkBuiltin(FreeMarkerLexer lexer, CharSequence text, List<LintProblem> problems) {
+        int start = lexer.getTokenStart();
+        if (lexer.getTokenType() != IDENTIFIER || start < 1 || text.charAt(start - 1) != '?' ||
+                start >= 2 && text.charAt(start - 2) == '?') {
+            return;
+        }
+        int end = lexer.getTokenEnd();
+        if (!FreeMarkerRegistry.isBuiltin(text, start, end)) {
+            problems.add(new LintProblem(LintProblem.Rule.UNKNOWN_BUILTIN, start,
+                    "Unknown built-in ?" + text.subSequence(start, end)));
+        }
+    }
+
+    private static boolean isBlank(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void computePositions(CharSequence text, List<LintProblem> problems) {
+        problems.sort(Comparator.comparingInt(problem -> problem.offset));
+        int line = 1;
+        int lineStart = 0;
+        int position = 0;
+        for (LintProblem problem : problems) {
+            for (; position < problem.offset; position++) {
+                if (text.charAt(position) == '\n') {
+                    line++;
+                    lineStart = position + 1;
+                }
+            }
+            problem.line = line;
+            problem.column = problem.offset - lineStart + 1;
+        }
+    }
+
+    private static class OpenBlock {
+        final String name;
+        final int offset;
+
+        OpenBlock(String name, int offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+}
@@ -1,24 +1,28 @@
 package com.ennic.freemarker;
 
 import com.ennic.freemarker.filetype.FreeMarkerFile;
-import com.ennic.freemarker.filetype.FreeMarkerLanguage;
 import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.parser.FreeMarkerParser;
+import com.ennic.freemarker.psi.*;
+import com.ennic.freemarker.stubs.FreeMarkerFileElementType;
 import com.intellij.lang.ASTNode;
 import com.intellij.lang.ParserDefinition;
-import com.intellij.lang.PsiBuilder;
 import com.intellij.lang.PsiParser;
 import com.intellij.lexer.Lexer;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.FileViewProvider;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IFileElementType;
 import com.intellij.psi.tree.TokenSet;
 import org.jetbrains.annotations.NotNull;
 
+import static com.ennic.freemarker.parser.FreeMarkerElementTypes.*;
+
 public class FreeMarkerParserDefinition implements ParserDefinition {
 
-    public static final IFileElementType FILE = new IFileElementType(FreeMarkerLanguage.INSTANCE);
+    public static final IFileElementType FILE = new FreeMarkerFileElementType();
 
     @Override
     public @NotNull Lexer createLexer(Project project) {
@@ -27,14 +31,7 @@ public class FreeMarkerParserDefinition implements ParserDefinition {
 
     @Override
     public PsiParser createParser(Project project) {
-        return (root, builder) -> {
-            PsiBuilder.Marker rootMarker = builder.mark();
-            while (!builder.eof()) {
-                builder.advanceLexer();
-            }
-            rootMarker.done(root);
-            return builder.getTreeBuilt();
-        };
+        return new FreeMarkerParser();
     }
     @Override
     public IFileElementType getFileNodeType() {
@@ -48,7 +45,7 @@ public class FreeMarkerParserDefinition implements ParserDefinition {
 
     @Override
     public @NotNull TokenSet getCommentTokens() {
-        return TokenSet.EMPTY;
+        return COMMENTS;
     }
 
     @Override
@@ -58,6 +55,26 @@ public class FreeMarkerParserDefinition implements ParserDefinition {
 
     @Override
     public @NotNull PsiElement createElement(ASTNode node) {
+        IElementType type = node.getElementType();
+        if (type == IF_BLOCK) {
+            return new FreeMarkerIfBlock(node);
+        } else if (type == LIST_BLOCK) {
+            return new FreeMarkerListBlock(node);
+        } else if (type == MACRO_BLOCK) {
+            return new FreeMarkerMacroBlock(node);
+        } else if (type == FUNCTION_BLOCK) {
+            return new FreeMarkerFunctionBlock(node);
+        } else if (type == BLOCK) {
+            return new FreeMarkerBlock(node);
+        } else if (type == ASSIGNMENT) {
+            return new FreeMarkerAssignment(node);
+        } else if (type == DIRECTIVE) {
+            return new FreeMarkerDirective(node);
+        } else if (type == INTERPOLATION) {
+            return new FreeMarkerInterpolation(node);
+        } else if (type == MACRO_CALL) {
+            return new FreeMarkerMacroCall(node);
+        }
         return new FreeMarkerPsiElement(node);
     }
 
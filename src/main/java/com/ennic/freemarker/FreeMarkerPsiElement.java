@@ -1,11 +1,18 @@
 package com.ennic.freemarker;
 
+import com.ennic.freemarker.reference.FreeMarkerReferences;
 import com.intellij.extapi.psi.ASTWrapperPsiElement;
 import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiReference;
 import org.jetbrains.annotations.NotNull;
 
 public class FreeMarkerPsiElement extends ASTWrapperPsiElement {
     public FreeMarkerPsiElement(@NotNull ASTNode node) {
         super(node);
     }
+
+    @Override
+    public PsiReference @NotNull [] getReferences() {
+        return FreeMarkerReferences.getReferences(this);
+    }
 }
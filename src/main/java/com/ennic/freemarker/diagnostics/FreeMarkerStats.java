@@ -0,0 +1,189 @@
+package com.ennic.freemarker.diagnostics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in counters for the lexer, parser and highlighter, enabled by starting the IDE with -Dfreemarker.stats=true.
+ * <p>
+ * {@link #ENABLED} is a constant, so when it is false the JIT drops every guarded call and the
+ * instrumentation costs nothing. The counters are read by {@link FreeMarkerStatsAction}.
+ */
+public final class FreeMarkerStats {
+    public static final boolean ENABLED = Boolean.getBoolean("freemarker.stats");
+
+    private static final int SLOWEST_FILES = 10;
+    // Upper bounds of the lexer run histogram buckets, in chars; the last bucket takes every longer run
+    private static final int[] RUN_BUCKETS = {64, 256, 1024, 4096, 16384, 65536};
+
+    private static final LongAdder lexerStarts = new LongAdder();
+    private static final LongAdder lexerRestarts = new LongAdder();
+    private static final LongAdder lexedChars = new LongAdder();
+    private static final LongAccumulator largestRelex = new LongAccumulator(Math::max, 0);
+    private static final LongAdder[] runs = new LongAdder[RUN_BUCKETS.length + 1];
+    private static final LongAdder tokens = new LongAdder();
+    private static final LongAdder lexerNanos = new LongAdder();
+    private static final LongAdder fileParses = new LongAdder();
+    private static final LongAdder bodyReparses = new LongAdder();
+    private static final LongAdder parsedChars = new LongAdder();
+    private static final LongAdder parserNanos = new LongAdder();
+    private static final LongAdder highlightLookups = new LongAdder();
+    private static final LongAdder highlighterNanos = new LongAdder();
+    private static final List<FileTiming> slowestFiles = new ArrayList<>();
+
+    static {
+        Arrays.setAll(runs, i -> new LongAdder());
+    }
+
+    private FreeMarkerStats() {
+    }
+
+    // A start anywhere but at the beginning of the text, or in a non-initial state, is an incremental relex.
+    // A lexer reports how far its previous run got when it is started again.
+    public static void lexerStarted(int startOffset, int initialState, int previousRunChars) {
+        lexerStarts.increment();
+        if (startOffset > 0 || initialState != 0) {
+            lexerRestarts.increment();
+        }
+        if (previousRunChars > 0) {
+            largestRelex.accumulate(previousRunChars);
+            runs[runBucket(previousRunChars)].increment();
+        }
+    }
+
+    public static void tokenLexed(int chars, long nanos) {
+        tokens.increment();
+        lexedChars.add(chars);
+        lexerNanos.add(nanos);
+    }
+
+    public static void parsed(boolean wholeFile, int chars, long nanos) {
+        (wholeFile ? fileParses : bodyReparses).increment();
+        parsedChars.add(chars);
+        parserNanos.add(nanos);
+    }
+
+    public static void fileParsed(@NotNull String name, int chars, long nanos) {
+        synchronized (slowestFiles) {
+            slowestFiles.add(new FileTiming(name, chars, nanos));
+            slowestFiles.sort(Comparator.comparingLong((FileTiming timing) -> timing.nanos).reversed());
+            if (slowestFiles.size() > SLOWEST_FILES) {
+                slowestFiles.remove(SLOWEST_FILES);
+            }
+        }
+    }
+
+    public static void highlightLookup(long nanos) {
+        highlightLookups.increment();
+        highlighterNanos.add(nanos);
+    }
+
+    public static void reset() {
+        for (LongAdder adder : List.of(lexerStarts, lexerRestarts, lexedChars, tokens, lexerNanos, fileParses,
+                bodyReparses, parsedChars, parserNanos, highlightLookups, highlighterNanos)) {
+            adder.reset();
+        }
+        for (LongAdder adder : runs) {
+            adder.reset();
+        }
+        largestRelex.reset();
+        synchronized (slowestFiles) {
+            slowestFiles.clear();
+        }
+    }
+
+    @NotNull
+    public static String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Lexer: %,d starts (%,d incremental), %,d chars, largest run %,d chars%n",
+                lexerStarts.sum(), lexerRestarts.sum(), lexedChars.sum(), largestRelex.get()));
+        builder.append(String.format("       %,d tokens in %.1f ms%n", tokens.sum(), lexerNanos.sum() / 1e6));
+        builder.append("       runs by length:");
+        for (int i = 0; i < runs.length; i++) {
+            builder.append(String.format(" %s %,d", runBucketLabel(i), runs[i].sum()));
+        }
+        builder.append(System.lineSeparator());
+        builder.append(String.format("Parser: %,d file parses, %,d block body reparses, %,d chars in %.1f ms%n",
+                fileParses.sum(), bodyReparses.sum(), parsedChars.sum(), parserNanos.sum() / 1e6));
+        builder.append(String.format("Highlighter: %,d token lookups in %.1f ms%n", highlightLookups.sum(),
+                highlighterNanos.sum() / 1e6));
+        builder.append("Slowest files:\n");
+        for (FileTiming timing : slowestFiles()) {
+            builder.append(String.format("  %8.2f ms  %s (%,d chars)%n", timing.nanos / 1e6, timing.name, timing.chars));
+        }
+        return builder.toString();
+    }
+
+    @NotNull
+    public static String toJson() {
+        StringBuilder builder = new StringBuilder("{\n");
+        builder.append("  \"lexer\": {\"starts\": ").append(lexerStarts.sum())
+                .append(", \"incrementalStarts\": ").append(lexerRestarts.sum())
+                .append(", \"chars\": ").append(lexedChars.sum())
+                .append(", \"largestRun\": ").append(largestRelex.get())
+                .append(", \"runsByLength\": {");
+        for (int i = 0; i < runs.length; i++) {
+            builder.append(i == 0 ? "\"" : ", \"").append(runBucketLabel(i)).append("\": ").append(runs[i].sum());
+        }
+        builder.append('}')
+                .append(", \"tokens\": ").append(tokens.sum())
+                .append(", \"nanos\": ").append(lexerNanos.sum()).append("},\n");
+        builder.append("  \"parser\": {\"fileParses\": ").append(fileParses.sum())
+                .append(", \"bodyReparses\": ").append(bodyReparses.sum())
+                .append(", \"chars\": ").append(parsedChars.sum())
+                .append(", \"nanos\": ").append(parserNanos.sum()).append("},\n");
+        builder.append("  \"highlighter\": {\"tokenLookups\": ").append(highlightLookups.sum())
+                .append(", \"nanos\": ").append(highlighterNanos.sum()).append("},\n");
+        builder.append("  \"slowestFiles\": [");
+        List<FileTiming> files = slowestFiles();
+        for (int i = 0; i < files.size(); i++) {
+            FileTiming timing = files.get(i);
+            builder.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"name\": \"").append(escape(timing.name))
+                    .append("\", \"chars\": ").append(timing.chars)
+                    .append(", \"nanos\": ").append(timing.nanos).append('}');
+        }
+        return builder.append(files.isEmpty() ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    private static int runBucket(int chars) {
+        int bucket = 0;
+        while (bucket < RUN_BUCKETS.length && chars > RUN_BUCKETS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    // "<=64", ..., ">65536"
+    private static String runBucketLabel(int bucket) {
+        return bucket < RUN_BUCKETS.length ? "<=" + RUN_BUCKETS[bucket] : ">" + RUN_BUCKETS[RUN_BUCKETS.length - 1];
+    }
+
+    private static List<FileTiming> slowestFiles() {
+        synchronized (slowestFiles) {
+            return new ArrayList<>(slowestFiles);
+        }
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static class FileTiming {
+        final String name;
+        final int chars;
+        final long nanos;
+
+        FileTiming(String name, int chars, long nanos) {
+            this.name = name;
+            this.chars = chars;
+            this.nanos = nanos;
+        }
+    }
+}
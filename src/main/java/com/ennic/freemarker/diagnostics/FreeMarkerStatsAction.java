@@ -0,0 +1,52 @@
+package com.ennic.freemarker.diagnostics;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.ide.CopyPasteManager;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Internal action showing {@link FreeMarkerStats}, with a JSON dump to attach to bug reports.
+ */
+public class FreeMarkerStatsAction extends AnAction implements DumbAware {
+    private static final String TITLE = "FreeMarker Lexing and Parsing Stats";
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        if (!FreeMarkerStats.ENABLED) {
+            Messages.showInfoMessage(e.getProject(),
+                    "Stats are collected only when the IDE is started with -Dfreemarker.stats=true.", TITLE);
+            return;
+        }
+        int choice = Messages.showDialog(e.getProject(), FreeMarkerStats.summary(), TITLE,
+                new String[]{"Dump JSON", "Reset", "Close"}, 0, Messages.getInformationIcon());
+        if (choice == 0) {
+            dumpJson(e);
+        } else if (choice == 1) {
+            FreeMarkerStats.reset();
+        }
+    }
+
+    // Written to the log directory, next to idea.log, and copied to the clipboard
+    private static void dumpJson(@NotNull AnActionEvent e) {
+        String json = FreeMarkerStats.toJson();
+        CopyPasteManager.getInstance().setContents(new StringSelection(json));
+        Path file = Path.of(PathManager.getLogPath(), "freemarker-stats.json");
+        try {
+            Files.writeString(file, json, StandardCharsets.UTF_8);
+            Messages.showInfoMessage(e.getProject(), "Saved to " + file + " and copied to the clipboard.", TITLE);
+        } catch (IOException exception) {
+            Messages.showErrorDialog(e.getProject(), "Copied to the clipboard, but could not write " + file +
+                    ": " + exception.getMessage(), TITLE);
+        }
+    }
+}
@@ -1,12 +1,13 @@
 package com.ennic.freemarker.filetype;
 
 import com.intellij.openapi.fileTypes.LanguageFileType;
+import com.intellij.openapi.fileTypes.TemplateLanguageFileType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 
-public class FreeMarkerFileType extends LanguageFileType {
+public class FreeMarkerFileType extends LanguageFileType implements TemplateLanguageFileType {
     public static final FreeMarkerFileType INSTANCE = new FreeMarkerFileType();
 
     private FreeMarkerFileType() {
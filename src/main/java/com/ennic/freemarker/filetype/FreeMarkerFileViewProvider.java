@@ -0,0 +1,98 @@
+package com.ennic.freemarker.filetype;
+
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.lang.Language;
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.lang.html.HTMLLanguage;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.LanguageSubstitutors;
+import com.intellij.psi.MultiplePsiFilesPerDocumentFileViewProvider;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.templateLanguages.TemplateDataLanguageMappings;
+import com.intellij.psi.templateLanguages.TemplateLanguageFileViewProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+
+/**
+ * Keeps two trees for a template: the FreeMarker tree, and a tree of the template data language
+ * (HTML unless mapped otherwise) built from the markup between the FreeMarker constructs.
+ * Files above the large file threshold get only the FreeMarker tree. Whether a file is large is decided once,
+ * here, and the parser and the features turned off for large files ask this provider.
+ */
+public class FreeMarkerFileViewProvider extends MultiplePsiFilesPerDocumentFileViewProvider
+        implements TemplateLanguageFileViewProvider {
+    private final Language dataLanguage;
+    private final boolean largeFile;
+
+    public FreeMarkerFileViewProvider(@NotNull PsiManager manager, @NotNull VirtualFile file, boolean eventSystemEnabled) {
+        this(manager, file, eventSystemEnabled, getTemplateDataLanguage(manager.getProject(), file));
+    }
+
+    private FreeMarkerFileViewProvider(@NotNull PsiManager manager, @NotNull VirtualFile file, boolean eventSystemEnabled,
+                                       @NotNull Language dataLanguage) {
+        super(manager, file, eventSystemEnabled);
+        this.dataLanguage = dataLanguage;
+        this.largeFile = FreeMarkerSettings.isLargeFile(file);
+    }
+
+    @NotNull
+    public static Language getTemplateDataLanguage(@NotNull Project project, @NotNull VirtualFile file) {
+        Language mapped = TemplateDataLanguageMappings.getInstance(project).getMapping(file);
+        Language language = mapped != null ? mapped : HTMLLanguage.INSTANCE;
+        Language substituted = LanguageSubstitutors.getInstance().substituteLanguage(language, file, project);
+        return TemplateDataLanguageMappings.getTemplateableLanguages().contains(substituted) ? substituted : language;
+    }
+
+    public boolean isLargeFile() {
+        return largeFile;
+    }
+
+    @NotNull
+    @Override
+    public Language getBaseLanguage() {
+        return FreeMarkerLanguage.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public Language getTemplateDataLanguage() {
+        return dataLanguage;
+    }
+
+    @NotNull
+    @Override
+    public Set<Language> getLanguages() {
+        return largeFile ? Set.of(FreeMarkerLanguage.INSTANCE) : Set.of(FreeMarkerLanguage.INSTANCE, dataLanguage);
+    }
+
+    @NotNull
+    @Override
+    protected MultiplePsiFilesPerDocumentFileViewProvider cloneInner(@NotNull VirtualFile fileCopy) {
+        return new FreeMarkerFileViewProvider(getManager(), fileCopy, false, dataLanguage);
+    }
+
+    @Nullable
+    @Override
+    protected PsiFile createFile(@NotNull Language language) {
+        ParserDefinition parserDefinition = LanguageParserDefinitions.INSTANCE.forLanguage(language);
+        if (parserDefinition == null) {
+            return null;
+        }
+        if (language == dataLanguage && !largeFile) {
+            PsiFileImpl file = (PsiFileImpl) parserDefinition.createFile(this);
+            file.setContentElementType(FreeMarkerElementTypes.TEMPLATE_DATA);
+            return file;
+        }
+        if (language == FreeMarkerLanguage.INSTANCE) {
+            return parserDefinition.createFile(this);
+        }
+        return null;
+    }
+}
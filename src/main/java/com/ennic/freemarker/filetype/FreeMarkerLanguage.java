@@ -1,8 +1,9 @@
 package com.ennic.freemarker.filetype;
 
 import com.intellij.lang.Language;
+import com.intellij.psi.templateLanguages.TemplateLanguage;
 
-public class FreeMarkerLanguage extends Language {
+public class FreeMarkerLanguage extends Language implements TemplateLanguage {
     public static final FreeMarkerLanguage INSTANCE = new FreeMarkerLanguage();
 
     private FreeMarkerLanguage() {
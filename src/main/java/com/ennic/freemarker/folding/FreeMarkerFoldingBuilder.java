@@ -0,0 +1,172 @@
+package com.ennic.freemarker.folding;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.parser.FreeMarkerDirectives;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.folding.FoldingBuilderEx;
+import com.intellij.lang.folding.FoldingDescriptor;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static com.ennic.freemarker.lexer.FreeMarkerTokenTypes.*;
+
+/**
+ * Folds multi-line directive blocks and comments. Regions come from one pass over the lexer tokens
+ * rather than from the tree, so folding works while indexing and never forces a block body to be parsed.
+ */
+public class FreeMarkerFoldingBuilder extends FoldingBuilderEx implements DumbAware {
+    private static final Key<Regions> REGIONS = Key.create("freemarker.folding.regions");
+
+    @Override
+    public FoldingDescriptor @NotNull [] buildFoldRegions(@NotNull PsiElement root, @NotNull Document document,
+                                                          boolean quick) {
+        PsiFile file = root.getContainingFile();
+        if (file == null || FreeMarkerSettings.isLargeFile(file)) {
+            return FoldingDescriptor.EMPTY_ARRAY;
+        }
+
+        Regions regions = document.getUserData(REGIONS);
+        if (regions == null || regions.stamp != document.getModificationStamp()) {
+            regions = computeRegions(document);
+            document.putUserData(REGIONS, regions);
+        }
+
+        ASTNode node = root.getNode();
+        FoldingDescriptor[] descriptors = new FoldingDescriptor[regions.ranges.size()];
+        for (int i = 0; i < descriptors.length; i++) {
+            descriptors[i] = new FoldingDescriptor(node, regions.ranges.get(i), null, regions.placeholders.get(i));
+        }
+        return descriptors;
+    }
+
+    @Nullable
+    @Override
+    public String getPlaceholderText(@NotNull ASTNode node) {
+        return "...";
+    }
+
+    @Override
+    public boolean isCollapsedByDefault(@NotNull ASTNode node) {
+        return false;
+    }
+
+    private static Regions computeRegions(@NotNull Document document) {
+        CharSequence text = document.getCharsSequence();
+        Regions regions = new Regions(document.getModificationStamp());
+        int syntax = FreeMarkerSyntax.get(document);
+        String commentPlaceholder = (syntax & FreeMarkerSyntax.SQUARE_TAGS) != 0 ? "[#--...--]" : "<#--...-->";
+        FreeMarkerLexer lexer = new FreeMarkerLexer(false, syntax);
+        lexer.start(text, 0, text.length(), lexer.getStartState());
+
+        Deque<OpenBlock> open = new ArrayDeque<>();
+        IElementType previous = null;
+        String startTagName = null;
+        String endTagName = null;
+        int tagStart = 0;
+        int assignment = FreeMarkerDirectives.TARGET;
+        while (lexer.getTokenType() != null) {
+            IElementType tokenType = lexer.getTokenType();
+            if (tokenType == COMMENT) {
+                CharSequence comment = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd());
+                if (FreeMarkerLexer.isClosedComment(comment)) {
+                    regions.add(text, lexer.getTokenStart(), lexer.getTokenEnd(), commentPlaceholder);
+                }
+            } else if (tokenType == DIRECTIVE_START || tokenType == DIRECTIVE_CLOSING) {
+                tagStart = lexer.getTokenStart();
+                startTagName = null;
+                endTagName = null;
+                assignment = FreeMarkerDirectives.TARGET;
+            } else if (previous == DIRECTIVE_START && FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(tokenType)) {
+                startTagName = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+            } else if (previous == DIRECTIVE_CLOSING && FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(tokenType)) {
+                endTagName = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+            } else if (startTagName != null && tokenType != DIRECTIVE_END && tokenType != EMPTY_DIRECTIVE_END) {
+                assignment = FreeMarkerDirectives.readAssignment(assignment, tokenType, text,
+                        lexer.getTokenStart(), lexer.getTokenEnd());
+            } else if (tokenType == DIRECTIVE_END && startTagName != null) {
+                if (FreeMarkerDirectives.isRequiredBlock(startTagName) ||
+                        FreeMarkerDirectives.isOptionalBlock(startTagName) &&
+                                assignment != FreeMarkerDirectives.ASSIGNMENT) {
+                    open.push(new OpenBlock(startTagName, lexer.getTokenEnd()));
+                }
+                startTagName = null;
+            } else if (tokenType == DIRECTIVE_END && endTagName != null) {
+                close(open, endTagName, tagStart, text, regions);
+                endTagName = null;
+            } else if (tokenType == EMPTY_DIRECTIVE_END) {
+                startTagName = null;
+                endTagName = null;
+            }
+            previous = tokenType;
+            lexer.advance();
+        }
+        return regions;
+    }
+
+    // Pops up to the innermost block with this name; unmatched end tags are ignored
+    private static void close(Deque<OpenBlock> open, String name, int endTagStart, CharSequence text, Regions regions) {
+        boolean matched = false;
+        for (OpenBlock block : open) {
+            if (block.name.equals(name)) {
+                matched = true;
+                break;
+            }
+        }
+        if (!matched) {
+            return;
+        }
+        while (true) {
+            OpenBlock block = open.pop();
+            if (block.name.equals(name)) {
+                regions.add(text, block.bodyStart, endTagStart, "...");
+                return;
+            }
+        }
+    }
+
+    private static class OpenBlock {
+        final String name;
+        final int bodyStart;
+
+        OpenBlock(String name, int bodyStart) {
+            this.name = name;
+            this.bodyStart = bodyStart;
+        }
+    }
+
+    private static class Regions {
+        final long stamp;
+        final List<TextRange> ranges = new ArrayList<>();
+        final List<String> placeholders = new ArrayList<>();
+
+        Regions(long stamp) {
+            this.stamp = stamp;
+        }
+
+        // Only regions spanning more than one line are worth folding
+        void add(CharSequence text, int start, int end, String placeholder) {
+            for (int i = start; i < end; i++) {
+                if (text.charAt(i) == '\n') {
+                    ranges.add(new TextRange(start, end));
+                    placeholders.add(placeholder);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ennic.freemarker.formatter;
+
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.intellij.formatting.Alignment;
+import com.intellij.formatting.Block;
+import com.intellij.formatting.Indent;
+import com.intellij.formatting.Spacing;
+import com.intellij.formatting.Wrap;
+import com.intellij.formatting.templateLanguages.BlockWithParent;
+import com.intellij.formatting.templateLanguages.DataLanguageBlockWrapper;
+import com.intellij.formatting.templateLanguages.TemplateLanguageBlock;
+import com.intellij.formatting.templateLanguages.TemplateLanguageBlockFactory;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.codeStyle.CodeStyleSettings;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Indents the bodies of directive blocks. Clauses such as {@code <#else>} sit between the bodies,
+ * so they line up with the start and end tags.
+ * <p>
+ * Markup inside a body is indented by the template data formatter. When the block is not inside
+ * any markup element, that markup is at the top level of its own tree, so the body carries the indent instead.
+ */
+public class FreeMarkerFormattingBlock extends TemplateLanguageBlock {
+
+    public FreeMarkerFormattingBlock(@NotNull ASTNode node, @Nullable Wrap wrap, @Nullable Alignment alignment,
+                                     @NotNull TemplateLanguageBlockFactory blockFactory,
+                                     @NotNull CodeStyleSettings settings,
+                                     @Nullable List<DataLanguageBlockWrapper> foreignChildren) {
+        super(node, wrap, alignment, blockFactory, settings, foreignChildren);
+    }
+
+    @Override
+    protected IElementType getTemplateTextElementType() {
+        return FreeMarkerTokenTypes.TEMPLATE_TEXT;
+    }
+
+    @Override
+    public Indent getIndent() {
+        if (isBody()) {
+            return isInsideMarkup() ? Indent.getNoneIndent() : Indent.getIndent(Indent.Type.NORMAL, false, true);
+        }
+        BlockWithParent parent = getParent();
+        if (parent instanceof DataLanguageBlockWrapper) {
+            return Indent.getNormalIndent();
+        }
+        if (parent instanceof FreeMarkerFormattingBlock && ((FreeMarkerFormattingBlock) parent).isBody()) {
+            return isInsideMarkup() ? Indent.getNormalIndent() : Indent.getNoneIndent();
+        }
+        return Indent.getNoneIndent();
+    }
+
+    // Indent of a line typed between the children
+    @Override
+    protected @Nullable Indent getChildIndent() {
+        if (isBody()) {
+            return isInsideMarkup() ? Indent.getNormalIndent() : Indent.getNoneIndent();
+        }
+        return myNode.findChildByType(FreeMarkerElementTypes.START_TAG) != null ?
+                Indent.getNormalIndent() :
+                Indent.getNoneIndent();
+    }
+
+    @Override
+    public @Nullable Spacing getSpacing(@Nullable Block child1, @NotNull Block child2) {
+        return null;
+    }
+
+    private boolean isBody() {
+        return myNode.getElementType() == FreeMarkerElementTypes.BLOCK_BODY;
+    }
+
+    private boolean isInsideMarkup() {
+        for (BlockWithParent block = getParent(); block != null; block = block.getParent()) {
+            if (block instanceof DataLanguageBlockWrapper) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,40 @@
+package com.ennic.freemarker.formatter;
+
+import com.intellij.formatting.Alignment;
+import com.intellij.formatting.Block;
+import com.intellij.formatting.Wrap;
+import com.intellij.formatting.templateLanguages.DataLanguageBlockWrapper;
+import com.intellij.formatting.templateLanguages.TemplateLanguageBlock;
+import com.intellij.formatting.templateLanguages.TemplateLanguageFormattingModelBuilder;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.FileViewProvider;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.codeStyle.CodeStyleSettings;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Formats a template by merging the FreeMarker blocks with the blocks of the template data language.
+ * Blocks are built on demand, so reformatting a range does not parse the bodies of directives outside it.
+ */
+public class FreeMarkerFormattingModelBuilder extends TemplateLanguageFormattingModelBuilder {
+
+    @Override
+    public TemplateLanguageBlock createTemplateLanguageBlock(@NotNull ASTNode node, @Nullable Wrap wrap,
+                                                             @Nullable Alignment alignment,
+                                                             @Nullable List<DataLanguageBlockWrapper> foreignChildren,
+                                                             @NotNull CodeStyleSettings codeStyleSettings) {
+        return new FreeMarkerFormattingBlock(node, wrap, alignment, this, codeStyleSettings, foreignChildren);
+    }
+
+    // Large files have no template data tree, the FreeMarker blocks are formatted on their own
+    @Override
+    protected Block getRootBlock(PsiElement element, FileViewProvider viewProvider, CodeStyleSettings settings) {
+        if (viewProvider.getLanguages().size() == 1) {
+            return createTemplateLanguageBlock(element.getNode(), null, null, null, settings);
+        }
+        return super.getRootBlock(element, viewProvider, settings);
+    }
+}
@@ -18,10 +18,12 @@ public class FreeMarkerColorSettingsPage implements ColorSettingsPage {
             new AttributesDescriptor("Comment", FreeMarkerSyntaxHighlighter.COMMENT),
             new AttributesDescriptor("String", FreeMarkerSyntaxHighlighter.STRING),
             new AttributesDescriptor("Number", FreeMarkerSyntaxHighlighter.NUMBER),
+            new AttributesDescriptor("Directive name", FreeMarkerSyntaxHighlighter.DIRECTIVE_NAME),
+            new AttributesDescriptor("Built-in", FreeMarkerSyntaxHighlighter.BUILTIN),
             new AttributesDescriptor("Keyword", FreeMarkerSyntaxHighlighter.KEYWORD),
             new AttributesDescriptor("Identifier", FreeMarkerSyntaxHighlighter.IDENTIFIER),
-            new AttributesDescriptor("HTML Tag", FreeMarkerSyntaxHighlighter.HTML_TAG),
             new AttributesDescriptor("Function Call", FreeMarkerSyntaxHighlighter.FUNCTION_CALL),
+            new AttributesDescriptor("Undefined variable", FreeMarkerSyntaxHighlighter.UNDEFINED_VARIABLE),
     };
 
     @Nullable
@@ -44,6 +46,8 @@ public class FreeMarkerColorSettingsPage implements ColorSettingsPage {
                 "    <#assign keyword = 'xyz' />\n"+
                 "    <#directive param=\"value\">\n" +
                 "    ${interpolation.withFunctionCall(1)}\n" +
+                "    <#list items as item>${item?upper_case}</#list>\n" +
+                "    ${<undefined>item</undefined>.name}\n" +
                 "    <#-- comment -->\n" +
                 "  </body>\n" +
                 "</html>";
@@ -52,7 +56,7 @@ public class FreeMarkerColorSettingsPage implements ColorSettingsPage {
     @Nullable
     @Override
     public Map<String, TextAttributesKey> getAdditionalHighlightingTagToDescriptorMap() {
-        return null;
+        return Map.of("undefined", FreeMarkerSyntaxHighlighter.UNDEFINED_VARIABLE);
     }
 
     @Override
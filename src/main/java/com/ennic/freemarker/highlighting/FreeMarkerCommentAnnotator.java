@@ -0,0 +1,25 @@
+package com.ennic.freemarker.highlighting;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.Annotator;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.psi.PsiComment;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Comments are skipped by the parser, so a comment the lexer had to end at its line is reported here.
+ */
+public class FreeMarkerCommentAnnotator implements Annotator, DumbAware {
+
+    @Override
+    public void annotate(@NotNull PsiElement element, @NotNull AnnotationHolder holder) {
+        if (element instanceof PsiComment && ((PsiComment) element).getTokenType() == FreeMarkerTokenTypes.COMMENT &&
+                !FreeMarkerLexer.isClosedComment(element.getText())) {
+            holder.newAnnotation(HighlightSeverity.ERROR, "Unclosed comment").create();
+        }
+    }
+}
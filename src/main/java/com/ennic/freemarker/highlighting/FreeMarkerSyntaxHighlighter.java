@@ -1,9 +1,12 @@
 package com.ennic.freemarker.highlighting;
 
+import com.ennic.freemarker.diagnostics.FreeMarkerStats;
 import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
 import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
 import com.intellij.lexer.Lexer;
 import com.intellij.openapi.editor.DefaultLanguageHighlighterColors;
+import com.intellij.openapi.editor.colors.CodeInsightColors;
 import com.intellij.openapi.editor.colors.TextAttributesKey;
 import com.intellij.openapi.editor.markup.TextAttributes;
 import com.intellij.openapi.fileTypes.SyntaxHighlighterBase;
@@ -22,9 +25,6 @@ public class FreeMarkerSyntaxHighlighter extends SyntaxHighlighterBase {
             createTextAttributesKey("FREEMARKER_INTERPOLATION", DefaultLanguageHighlighterColors.INSTANCE_FIELD);
     public static final TextAttributesKey COMMENT =
             createTextAttributesKey("FREEMARKER_COMMENT", DefaultLanguageHighlighterColors.LINE_COMMENT);
-    public static final TextAttributesKey COMMENT_TODO =
-            createTextAttributesKey("FREEMARKER_COMMENT_TODO",
-                new TextAttributes(new JBColor(new Color(179, 179, 0), new Color(118, 178, 56)), null, null, null, Font.BOLD));
     public static final TextAttributesKey FUNCTION_CALL =
             createTextAttributesKey("FREEMARKER_FUNCTION_CALL",
                 new TextAttributes(JBColor.BLUE, null, null, null, Font.PLAIN));
@@ -34,48 +34,74 @@ public class FreeMarkerSyntaxHighlighter extends SyntaxHighlighterBase {
             createTextAttributesKey("FREEMARKER_NUMBER", DefaultLanguageHighlighterColors.NUMBER);
     public static final TextAttributesKey KEYWORD =
             createTextAttributesKey("FREEMARKER_KEYWORD", DefaultLanguageHighlighterColors.KEYWORD);
+    public static final TextAttributesKey DIRECTIVE_NAME =
+            createTextAttributesKey("FREEMARKER_DIRECTIVE_NAME", DefaultLanguageHighlighterColors.KEYWORD);
+    public static final TextAttributesKey BUILTIN =
+            createTextAttributesKey("FREEMARKER_BUILTIN", DefaultLanguageHighlighterColors.STATIC_METHOD);
     public static final TextAttributesKey IDENTIFIER =
             createTextAttributesKey("FREEMARKER_IDENTIFIER", DefaultLanguageHighlighterColors.IDENTIFIER);
-    public static final TextAttributesKey HTML_TAG =
-            createTextAttributesKey("FREEMARKER_HTML_TAG",
-                    new TextAttributes(new JBColor(new Color(204, 102, 0), new Color(245, 200, 130)), null, null, null, Font.PLAIN));
+    // Not lexical: set by FreeMarkerUndefinedVariableAnnotator
+    public static final TextAttributesKey UNDEFINED_VARIABLE =
+            createTextAttributesKey("FREEMARKER_UNDEFINED_VARIABLE", CodeInsightColors.WRONG_REFERENCES_ATTRIBUTES);
 
 
     private static final TextAttributesKey[] DIRECTIVE_KEYS = new TextAttributesKey[]{DIRECTIVE};
     private static final TextAttributesKey[] INTERPOLATION_KEYS = new TextAttributesKey[]{INTERPOLATION};
     private static final TextAttributesKey[] COMMENT_KEYS = new TextAttributesKey[]{COMMENT};
-    private static final TextAttributesKey[] COMMENT_TODO_KEYS = new TextAttributesKey[]{COMMENT_TODO};
     private static final TextAttributesKey[] FUNCTION_CALL_KEYS = new TextAttributesKey[]{FUNCTION_CALL};
     private static final TextAttributesKey[] STRING_KEYS = new TextAttributesKey[]{STRING};
     private static final TextAttributesKey[] NUMBER_KEYS = new TextAttributesKey[]{NUMBER};
     private static final TextAttributesKey[] KEYWORD_KEYS = new TextAttributesKey[]{KEYWORD};
+    private static final TextAttributesKey[] DIRECTIVE_NAME_KEYS = new TextAttributesKey[]{DIRECTIVE_NAME};
+    private static final TextAttributesKey[] BUILTIN_KEYS = new TextAttributesKey[]{BUILTIN};
     private static final TextAttributesKey[] IDENTIFIER_KEYS = new TextAttributesKey[]{IDENTIFIER};
     private static final TextAttributesKey[] EMPTY_KEYS = new TextAttributesKey[0];
-    private static final TextAttributesKey[] HTML_TAG_KEYS = new TextAttributesKey[]{HTML_TAG};
+
+    private final boolean lightweight;
+    private final int syntax;
+
+    public FreeMarkerSyntaxHighlighter() {
+        this(false);
+    }
+
+    public FreeMarkerSyntaxHighlighter(boolean lightweight) {
+        this(lightweight, FreeMarkerSyntax.DETECT);
+    }
+
+    public FreeMarkerSyntaxHighlighter(boolean lightweight, int syntax) {
+        this.lightweight = lightweight;
+        this.syntax = syntax;
+    }
 
     @NotNull
     @Override
     public Lexer getHighlightingLexer() {
-        return new FreeMarkerLexer();
+        return new FreeMarkerLexer(lightweight, syntax);
     }
 
     @Override
     public TextAttributesKey @NotNull [] getTokenHighlights(IElementType tokenType) {
+        if (FreeMarkerStats.ENABLED) {
+            long start = System.nanoTime();
+            TextAttributesKey[] keys = highlights(tokenType);
+            FreeMarkerStats.highlightLookup(System.nanoTime() - start);
+            return keys;
+        }
+        return highlights(tokenType);
+    }
+
+    private static TextAttributesKey[] highlights(IElementType tokenType) {
         if (tokenType.equals(FreeMarkerTokenTypes.DIRECTIVE_START) ||
-                tokenType.equals(FreeMarkerTokenTypes.DIRECTIVE_END) || tokenType.equals(FreeMarkerTokenTypes.DIRECTIVE_CLOSING)) {
+                tokenType.equals(FreeMarkerTokenTypes.DIRECTIVE_END) || tokenType.equals(FreeMarkerTokenTypes.DIRECTIVE_CLOSING) ||
+                tokenType.equals(FreeMarkerTokenTypes.EMPTY_DIRECTIVE_END) ||
+                tokenType.equals(FreeMarkerTokenTypes.MACRO_CALL_START) ||
+                tokenType.equals(FreeMarkerTokenTypes.MACRO_CALL_CLOSING)) {
             return DIRECTIVE_KEYS;
-        } else if (tokenType.equals(FreeMarkerTokenTypes.HTML_TAG_START) ||
-                tokenType.equals(FreeMarkerTokenTypes.HTML_TAG_END) ||
-                tokenType.equals(FreeMarkerTokenTypes.HTML_TAG_CONTENT)) {
-            return HTML_TAG_KEYS;
         } else if (tokenType.equals(FreeMarkerTokenTypes.INTERPOLATION_START) ||
                 tokenType.equals(FreeMarkerTokenTypes.INTERPOLATION_END)) {
             return INTERPOLATION_KEYS;
-        } else if (tokenType.equals(FreeMarkerTokenTypes.COMMENT_START) ||
-                tokenType.equals(FreeMarkerTokenTypes.COMMENT_END)) {
+        } else if (tokenType.equals(FreeMarkerTokenTypes.COMMENT)) {
             return COMMENT_KEYS;
-        } else if(tokenType.equals(FreeMarkerTokenTypes.COMMENT_TODO)) {
-            return COMMENT_TODO_KEYS;
         } else if (tokenType.equals(FreeMarkerTokenTypes.FUNCTION_CALL)) {
             return FUNCTION_CALL_KEYS;
         } else if (tokenType.equals(FreeMarkerTokenTypes.STRING)) {
@@ -84,6 +110,10 @@ public class FreeMarkerSyntaxHighlighter extends SyntaxHighlighterBase {
             return NUMBER_KEYS;
         } else if (tokenType.equals(FreeMarkerTokenTypes.KEYWORD)) {
             return KEYWORD_KEYS;
+        } else if (tokenType.equals(FreeMarkerTokenTypes.DIRECTIVE_NAME)) {
+            return DIRECTIVE_NAME_KEYS;
+        } else if (tokenType.equals(FreeMarkerTokenTypes.BUILTIN)) {
+            return BUILTIN_KEYS;
         } else if (tokenType.equals(FreeMarkerTokenTypes.IDENTIFIER)) {
             return IDENTIFIER_KEYS;
         } else {
@@ -1,5 +1,6 @@
 package com.ennic.freemarker.highlighting;
 
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
 import com.intellij.openapi.fileTypes.SyntaxHighlighter;
 import com.intellij.openapi.fileTypes.SyntaxHighlighterFactory;
 import com.intellij.openapi.project.Project;
@@ -10,6 +11,6 @@ public class FreeMarkerSyntaxHighlighterFactory extends SyntaxHighlighterFactory
     @NotNull
     @Override
     public SyntaxHighlighter getSyntaxHighlighter(Project project, VirtualFile virtualFile) {
-        return new FreeMarkerSyntaxHighlighter();
+        return new FreeMarkerSyntaxHighlighter(false, FreeMarkerSyntax.get(virtualFile));
     }
 }
\ No newline at end of file
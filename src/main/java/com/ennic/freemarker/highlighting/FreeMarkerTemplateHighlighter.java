@@ -0,0 +1,44 @@
+package com.ennic.freemarker.highlighting;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileViewProvider;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.lang.Language;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.ex.util.LayerDescriptor;
+import com.intellij.openapi.editor.ex.util.LayeredLexerEditorHighlighter;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.fileTypes.FileTypes;
+import com.intellij.openapi.fileTypes.SyntaxHighlighter;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * FreeMarker highlighting with the template data language's highlighter layered over TEMPLATE_TEXT.
+ * Files above the large file threshold use the lightweight lexer and leave the markup plain.
+ */
+public class FreeMarkerTemplateHighlighter extends LayeredLexerEditorHighlighter {
+    public FreeMarkerTemplateHighlighter(@Nullable Project project, @Nullable VirtualFile file,
+                                         @NotNull EditorColorsScheme colors) {
+        super(new FreeMarkerSyntaxHighlighter(FreeMarkerSettings.isLargeFile(file), FreeMarkerSyntax.get(file)), colors);
+        if (FreeMarkerSettings.isLargeFile(file)) {
+            return;
+        }
+
+        FileType dataFileType = FileTypes.PLAIN_TEXT;
+        if (project != null && file != null) {
+            Language dataLanguage = FreeMarkerFileViewProvider.getTemplateDataLanguage(project, file);
+            if (dataLanguage.getAssociatedFileType() != null) {
+                dataFileType = dataLanguage.getAssociatedFileType();
+            }
+        }
+        SyntaxHighlighter dataHighlighter = SyntaxHighlighterFactory.getSyntaxHighlighter(dataFileType, project, file);
+        if (dataHighlighter != null) {
+            registerLayer(FreeMarkerTokenTypes.TEMPLATE_TEXT, new LayerDescriptor(dataHighlighter, ""));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.ennic.freemarker.highlighting;
+
+import com.ennic.freemarker.reference.FreeMarkerScopes;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.Annotator;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * Marks variables used where none of their definitions reaches, and members missing from an imported namespace.
+ * The analysis is cached per file by {@link FreeMarkerScopes}; each element only looks up its own name tokens.
+ */
+public class FreeMarkerUndefinedVariableAnnotator implements Annotator {
+
+    @Override
+    public void annotate(@NotNull PsiElement element, @NotNull AnnotationHolder holder) {
+        ASTNode node = element.getNode();
+        if (node == null || node.getFirstChildNode() == null) {
+            return;
+        }
+        Map<ASTNode, String> undefined = FreeMarkerScopes.getUndefinedUses(element.getContainingFile());
+        if (undefined.isEmpty()) {
+            return;
+        }
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            String message = undefined.get(child);
+            if (message != null) {
+                holder.newAnnotation(HighlightSeverity.WARNING, message)
+                        .range(child)
+                        .textAttributes(FreeMarkerSyntaxHighlighter.UNDEFINED_VARIABLE)
+                        .create();
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.ennic.freemarker.index;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Include/import graph of the project's templates, built from {@link FreeMarkerIncludeIndex}.
+ * <p>
+ * The resolved outgoing edges of a file are cached and reused until that file's content changes,
+ * so editing one template only re-resolves that template. Creating, deleting or moving a file drops
+ * only the cached edges it can affect. Incoming edges come from the index, which is itself updated
+ * per file. All queries need a read action.
+ */
+@Service(Service.Level.PROJECT)
+public final class FreeMarkerDependencyGraph implements Disposable {
+    private final Project project;
+    private final Map<VirtualFile, Edges> edges = new ConcurrentHashMap<>();
+
+    public FreeMarkerDependencyGraph(@NotNull Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                invalidate(events);
+            }
+        });
+    }
+
+    public static FreeMarkerDependencyGraph getInstance(@NotNull Project project) {
+        return project.getService(FreeMarkerDependencyGraph.class);
+    }
+
+    // Templates the file includes or imports directly
+    @NotNull
+    public List<VirtualFile> getIncludes(@NotNull VirtualFile file) {
+        long stamp = getStamp(file);
+        Edges cached = edges.get(file);
+        if (cached != null && cached.stamp == stamp) {
+            return cached.targets;
+        }
+        List<String> paths = new ArrayList<>();
+        List<VirtualFile> targets = new ArrayList<>();
+        Map<String, List<String>> data =
+                FileBasedIndex.getInstance().getFileData(FreeMarkerIncludeIndex.NAME, file, project);
+        for (List<String> filePaths : data.values()) {
+            for (String path : filePaths) {
+                paths.add(path);
+                VirtualFile target = resolve(file, path);
+                if (target != null && !targets.contains(target)) {
+                    targets.add(target);
+                }
+            }
+        }
+        edges.put(file, new Edges(stamp, paths, targets));
+        return targets;
+    }
+
+    // Creating, deleting, moving or renaming a file can change what an unchanged include resolves to. Only the
+    // cached edges that can be affected are dropped: those with an include path naming the file, those leading
+    // into a moved or deleted file or directory, and those of templates that were moved or deleted themselves.
+    private void invalidate(List<? extends VFileEvent> events) {
+        Set<String> names = new HashSet<>();
+        Set<VirtualFile> relocated = new HashSet<>();
+        for (VFileEvent event : events) {
+            if (event instanceof VFileCreateEvent) {
+                names.add(((VFileCreateEvent) event).getChildName());
+            } else if (event instanceof VFileCopyEvent) {
+                names.add(((VFileCopyEvent) event).getNewChildName());
+            } else if (event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent) {
+                names.add(event.getFile().getName());
+                relocated.add(event.getFile());
+            } else if (event instanceof VFilePropertyChangeEvent && ((VFilePropertyChangeEvent) event).isRename()) {
+                names.add(String.valueOf(((VFilePropertyChangeEvent) event).getOldValue()));
+                names.add(String.valueOf(((VFilePropertyChangeEvent) event).getNewValue()));
+                relocated.add(event.getFile());
+            }
+        }
+        if (!names.isEmpty()) {
+            edges.entrySet().removeIf(entry -> isUnder(entry.getKey(), relocated) ||
+                    namesAny(entry.getValue().paths, names) || isAnyUnder(entry.getValue().targets, relocated));
+        }
+    }
+
+    private static boolean isUnder(VirtualFile file, Set<VirtualFile> ancestors) {
+        for (VirtualFile ancestor = file; ancestor != null && !ancestors.isEmpty(); ancestor = ancestor.getParent()) {
+            if (ancestors.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAnyUnder(List<VirtualFile> files, Set<VirtualFile> ancestors) {
+        for (VirtualFile file : files) {
+            if (isUnder(file, ancestors)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True if a segment of one of the paths is one of the names
+    private static boolean namesAny(List<String> paths, Set<String> names) {
+        for (String path : paths) {
+            for (String segment : path.split("/")) {
+                if (names.contains(segment)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Templates that include or import the file directly
+    @NotNull
+    public List<VirtualFile> getDependents(@NotNull VirtualFile file) {
+        List<VirtualFile> dependents = new ArrayList<>();
+        Collection<VirtualFile> candidates = FileBasedIndex.getInstance()
+                .getContainingFiles(FreeMarkerIncludeIndex.NAME, file.getName(), GlobalSearchScope.projectScope(project));
+        for (VirtualFile candidate : candidates) {
+            if (getIncludes(candidate).contains(file)) {
+                dependents.add(candidate);
+            }
+        }
+        return dependents;
+    }
+
+    // Everything the file pulls in, directly or through other templates
+    @NotNull
+    public Set<VirtualFile> getTransitiveIncludes(@NotNull VirtualFile file) {
+        return walk(file, true);
+    }
+
+    // Everything affected by a change to the file
+    @NotNull
+    public Set<VirtualFile> getTransitiveDependents(@NotNull VirtualFile file) {
+        return walk(file, false);
+    }
+
+    public boolean isInCycle(@NotNull VirtualFile file) {
+        return getTransitiveIncludes(file).contains(file);
+    }
+
+    // Groups of templates that include each other, found with Tarjan's algorithm over the whole project
+    @NotNull
+    public List<List<VirtualFile>> findCycles() {
+        CycleFinder finder = new CycleFinder();
+        GlobalSearchScope scope = GlobalSearchScope.projectScope(project);
+        for (VirtualFile file : FileTypeIndex.getFiles(FreeMarkerFileType.INSTANCE, scope)) {
+            if (!finder.index.containsKey(file)) {
+                finder.visit(file);
+            }
+        }
+        return finder.cycles;
+    }
+
+    private Set<VirtualFile> walk(VirtualFile start, boolean forward) {
+        Set<VirtualFile> visited = new LinkedHashSet<>();
+        Deque<VirtualFile> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            VirtualFile file = queue.poll();
+            for (VirtualFile next : forward ? getIncludes(file) : getDependents(file)) {
+                if (visited.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return visited;
+    }
+
+    // "/a.ftl" is relative to the template root, which is taken to be the nearest ancestor directory
+    // that contains the path; anything else is relative to the including file
+    @Nullable
+    public static VirtualFile resolve(@NotNull VirtualFile from, @NotNull String path) {
+        VirtualFile dir = from.getParent();
+        if (!path.startsWith("/")) {
+            VirtualFile target = dir != null ? dir.findFileByRelativePath(path) : null;
+            return target != null && !target.isDirectory() ? target : null;
+        }
+        for (String relative = path.substring(1); dir != null; dir = dir.getParent()) {
+            VirtualFile target = dir.findFileByRelativePath(relative);
+            if (target != null && !target.isDirectory()) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    // Unsaved edits are indexed too, so an open document's stamp is the one to compare against
+    private static long getStamp(VirtualFile file) {
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        return document != null ? document.getModificationStamp() : file.getModificationStamp();
+    }
+
+    @Override
+    public void dispose() {
+        edges.clear();
+    }
+
+    private static class Edges {
+        final long stamp;
+        final List<String> paths;
+        final List<VirtualFile> targets;
+
+        Edges(long stamp, List<String> paths, List<VirtualFile> targets) {
+            this.stamp = stamp;
+            this.paths = paths;
+            this.targets = targets;
+        }
+    }
+
+    // Tarjan's algorithm with an explicit stack of visits, so that a long include chain cannot overflow the
+    // thread's stack
+    private class CycleFinder {
+        final Map<VirtualFile, Integer> index = new HashMap<>();
+        final Map<VirtualFile, Integer> lowLink = new HashMap<>();
+        final Deque<VirtualFile> stack = new ArrayDeque<>();
+        final Set<VirtualFile> onStack = new HashSet<>();
+        final List<List<VirtualFile>> cycles = new ArrayList<>();
+
+        void visit(VirtualFile root) {
+            Deque<Visit> visits = new ArrayDeque<>();
+            visits.push(enter(root));
+            while (!visits.isEmpty()) {
+                Visit visit = visits.peek();
+                if (visit.next < visit.targets.size()) {
+                    VirtualFile target = visit.targets.get(visit.next++);
+                    if (!index.containsKey(target)) {
+                        visits.push(enter(target));
+                    } else if (onStack.contains(target)) {
+                        lowLink.put(visit.file, Math.min(lowLink.get(visit.file), index.get(target)));
+                    }
+                    continue;
+                }
+                visits.pop();
+                leave(visit);
+                Visit parent = visits.peek();
+                if (parent != null) {
+                    lowLink.put(parent.file, Math.min(lowLink.get(parent.file), lowLink.get(visit.file)));
+                }
+            }
+        }
+
+        private Visit enter(VirtualFile file) {
+            index.put(file, index.size());
+            lowLink.put(file, index.get(file));
+            stack.push(file);
+            onStack.add(file);
+            return new Visit(file, getIncludes(file));
+        }
+
+        private void leave(Visit visit) {
+            if (lowLink.get(visit.file).equals(index.get(visit.file))) {
+                List<VirtualFile> component = new ArrayList<>();
+                VirtualFile member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (member != visit.file);
+                if (component.size() > 1 || visit.targets.contains(visit.file)) {
+                    cycles.add(component);
+                }
+            }
+        }
+    }
+
+    // A file whose targets are being visited, and the next target to look at
+    private static class Visit {
+        final VirtualFile file;
+        final List<VirtualFile> targets;
+        int next;
+
+        Visit(VirtualFile file, List<VirtualFile> targets) {
+            this.file = file;
+            this.targets = targets;
+        }
+    }
+}
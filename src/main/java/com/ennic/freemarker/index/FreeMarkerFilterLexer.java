@@ -0,0 +1,39 @@
+package com.ennic.freemarker.index;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.psi.impl.cache.impl.BaseFilterLexer;
+import com.intellij.psi.impl.cache.impl.OccurrenceConsumer;
+import com.intellij.psi.search.UsageSearchContext;
+import com.intellij.psi.tree.IElementType;
+
+/**
+ * Feeds the word and TODO indexes. A comment is one token, so its words and TODO items
+ * are scanned in a single pass over its text.
+ */
+public class FreeMarkerFilterLexer extends BaseFilterLexer {
+
+    public FreeMarkerFilterLexer(OccurrenceConsumer occurrenceConsumer) {
+        super(new FreeMarkerLexer(), occurrenceConsumer);
+    }
+
+    @Override
+    public void advance() {
+        IElementType tokenType = myDelegate.getTokenType();
+        if (tokenType == FreeMarkerTokenTypes.COMMENT) {
+            scanWordsInToken(UsageSearchContext.IN_COMMENTS, false, false);
+            advanceTodoItemCountsInToken();
+        } else if (tokenType == FreeMarkerTokenTypes.IDENTIFIER || tokenType == FreeMarkerTokenTypes.DIRECTIVE_NAME ||
+                tokenType == FreeMarkerTokenTypes.BUILTIN) {
+            addOccurrenceInToken(UsageSearchContext.IN_CODE);
+        } else if (tokenType == FreeMarkerTokenTypes.FUNCTION_CALL) {
+            // .name, the word is the name without its dot
+            scanWordsInToken(UsageSearchContext.IN_CODE, false, false);
+        } else if (tokenType == FreeMarkerTokenTypes.STRING) {
+            scanWordsInToken(UsageSearchContext.IN_STRINGS | UsageSearchContext.IN_FOREIGN_LANGUAGES, true, true);
+        } else if (tokenType == FreeMarkerTokenTypes.TEMPLATE_TEXT) {
+            scanWordsInToken(UsageSearchContext.IN_PLAIN_TEXT | UsageSearchContext.IN_FOREIGN_LANGUAGES, true, false);
+        }
+        myDelegate.advance();
+    }
+}
@@ -0,0 +1,182 @@
+package com.ennic.freemarker.index;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.indexing.DataIndexer;
+import com.intellij.util.indexing.DefaultFileTypeSpecificInputFilter;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.FileBasedIndexExtension;
+import com.intellij.util.indexing.FileContent;
+import com.intellij.util.indexing.ID;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.DataInputOutputUtil;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the file name of every template a file pulls in with <#include> or <#import> to the paths as written,
+ * e.g. "layout.ftl" -> ["/common/layout.ftl"]. Keying by file name lets the reverse lookup ("who includes
+ * layout.ftl") go straight to the candidate files. Paths built with ${...} are not indexed.
+ */
+public class FreeMarkerIncludeIndex extends FileBasedIndexExtension<String, List<String>> {
+    public static final ID<String, List<String>> NAME = ID.create("freemarker.includes");
+
+    private static final DataExternalizer<List<String>> PATHS_EXTERNALIZER = new DataExternalizer<>() {
+        @Override
+        public void save(@NotNull DataOutput out, List<String> paths) throws IOException {
+            DataInputOutputUtil.writeINT(out, paths.size());
+            for (String path : paths) {
+                IOUtil.writeUTF(out, path);
+            }
+        }
+
+        @Override
+        public List<String> read(@NotNull DataInput in) throws IOException {
+            int count = DataInputOutputUtil.readINT(in);
+            List<String> paths = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                paths.add(IOUtil.readUTF(in));
+            }
+            return paths;
+        }
+    };
+
+    @NotNull
+    @Override
+    public ID<String, List<String>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<String>, FileContent> getIndexer() {
+        return inputData -> {
+            Map<String, List<String>> result = new HashMap<>();
+            CharSequence text = inputData.getContentAsText();
+            for (String path : findIncludedPaths(text, FreeMarkerSyntax.getKnownOrDetect(inputData.getFile(), text))) {
+                result.computeIfAbsent(getFileName(path), name -> new ArrayList<>()).add(path);
+            }
+            return result;
+        };
+    }
+
+    @NotNull
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return EnumeratorStringDescriptor.INSTANCE;
+    }
+
+    @NotNull
+    @Override
+    public DataExternalizer<List<String>> getValueExternalizer() {
+        return PATHS_EXTERNALIZER;
+    }
+
+    @Override
+    public int getVersion() {
+        return 1;
+    }
+
+    @NotNull
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return new DefaultFileTypeSpecificInputFilter(FreeMarkerFileType.INSTANCE);
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @NotNull
+    public static String getFileName(@NotNull String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    // The literal paths of <#include "..."> and <#import "..." as x>, found with the lexer alone
+    @NotNull
+    static List<String> findIncludedPaths(@NotNull CharSequence text, int syntax) {
+        List<String> paths = new ArrayList<>();
+        FreeMarkerLexer lexer = new FreeMarkerLexer(false, syntax);
+        lexer.start(text, 0, text.length(), lexer.getStartState());
+        boolean afterDirectiveStart = false;
+        boolean expectPath = false;
+        for (IElementType tokenType; (tokenType = lexer.getTokenType()) != null; lexer.advance()) {
+            if (expectPath && tokenType != FreeMarkerTokenTypes.TEXT) {
+                String path = tokenType == FreeMarkerTokenTypes.STRING ?
+                        unquote(text, lexer.getTokenStart(), lexer.getTokenEnd()) :
+                        null;
+                if (path != null) {
+                    paths.add(path);
+                }
+                expectPath = false;
+            } else if (afterDirectiveStart && tokenType == FreeMarkerTokenTypes.DIRECTIVE_NAME) {
+                expectPath = isIncludeKeyword(text, lexer.getTokenStart(), lexer.getTokenEnd());
+            }
+            afterDirectiveStart = tokenType == FreeMarkerTokenTypes.DIRECTIVE_START;
+        }
+        return paths;
+    }
+
+    // Namespaces declared with <#import "path" as ns>, mapped to their literal paths
+    @NotNull
+    public static Map<String, String> findImportNamespaces(@NotNull CharSequence text, int syntax) {
+        Map<String, String> namespaces = new HashMap<>();
+        FreeMarkerLexer lexer = new FreeMarkerLexer(false, syntax);
+        lexer.start(text, 0, text.length(), lexer.getStartState());
+        boolean afterDirectiveStart = false;
+        boolean inImport = false;
+        String path = null;
+        boolean afterAs = false;
+        for (IElementType tokenType; (tokenType = lexer.getTokenType()) != null; lexer.advance()) {
+            if (tokenType == FreeMarkerTokenTypes.DIRECTIVE_END || tokenType == FreeMarkerTokenTypes.EMPTY_DIRECTIVE_END) {
+                inImport = false;
+            } else if (afterDirectiveStart && tokenType == FreeMarkerTokenTypes.DIRECTIVE_NAME) {
+                inImport = "import".contentEquals(text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()));
+                path = null;
+                afterAs = false;
+            } else if (inImport && tokenType == FreeMarkerTokenTypes.STRING && path == null) {
+                path = unquote(text, lexer.getTokenStart(), lexer.getTokenEnd());
+            } else if (inImport && tokenType == FreeMarkerTokenTypes.KEYWORD) {
+                afterAs = "as".contentEquals(text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()));
+            } else if (inImport && afterAs && tokenType == FreeMarkerTokenTypes.IDENTIFIER && path != null) {
+                namespaces.put(text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString(), path);
+                inImport = false;
+            }
+            afterDirectiveStart = tokenType == FreeMarkerTokenTypes.DIRECTIVE_START;
+        }
+        return namespaces;
+    }
+
+    private static boolean isIncludeKeyword(CharSequence text, int start, int end) {
+        CharSequence keyword = text.subSequence(start, end);
+        return "include".contentEquals(keyword) || "import".contentEquals(keyword);
+    }
+
+    // A complete quoted literal; a string interrupted by ${ does not end with its quote and is skipped
+    @Nullable
+    private static String unquote(CharSequence text, int start, int end) {
+        if (end - start < 3) {
+            return null;
+        }
+        char quote = text.charAt(start);
+        if ((quote != '"' && quote != '\'') || text.charAt(end - 1) != quote) {
+            return null;
+        }
+        return text.subSequence(start + 1, end - 1).toString();
+    }
+}
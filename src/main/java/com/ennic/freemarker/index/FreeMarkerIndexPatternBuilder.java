@@ -0,0 +1,44 @@
+package com.ennic.freemarker.index;
+
+import com.ennic.freemarker.filetype.FreeMarkerFile;
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.search.IndexPatternBuilder;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Lets the platform find TODO items inside comments, leaving out the {@code <#--} and {@code -->} delimiters.
+ */
+public class FreeMarkerIndexPatternBuilder implements IndexPatternBuilder {
+
+    @Override
+    public @Nullable Lexer getIndexingLexer(@NotNull PsiFile file) {
+        return file instanceof FreeMarkerFile ? new FreeMarkerLexer(false, FreeMarkerSyntax.get(file)) : null;
+    }
+
+    @Override
+    public @Nullable TokenSet getCommentTokenSet(@NotNull PsiFile file) {
+        return file instanceof FreeMarkerFile ? FreeMarkerElementTypes.COMMENTS : null;
+    }
+
+    @Override
+    public int getCommentStartDelta(IElementType tokenType) {
+        return 4;
+    }
+
+    @Override
+    public int getCommentEndDelta(IElementType tokenType) {
+        return 3;
+    }
+
+    @Override
+    public int getCommentEndDelta(IElementType tokenType, @NotNull CharSequence tokenText) {
+        return FreeMarkerLexer.isClosedComment(tokenText) ? 3 : 0;
+    }
+}
@@ -0,0 +1,14 @@
+package com.ennic.freemarker.index;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.impl.cache.impl.OccurrenceConsumer;
+import com.intellij.psi.impl.cache.impl.todo.LexerBasedTodoIndexer;
+import org.jetbrains.annotations.NotNull;
+
+public class FreeMarkerTodoIndexer extends LexerBasedTodoIndexer {
+
+    @Override
+    public @NotNull Lexer createLexer(@NotNull OccurrenceConsumer consumer) {
+        return new FreeMarkerFilterLexer(consumer);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ennic.freemarker.java;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.psi.FreeMarkerFtlVariables;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.patterns.PlatformPatterns;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.PsiReferenceContributor;
+import com.intellij.psi.PsiReferenceProvider;
+import com.intellij.psi.PsiReferenceRegistrar;
+import com.intellij.util.ProcessingContext;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds property references to the .name tokens of chains rooted at an {@code @ftlvariable} declaration.
+ */
+public class FreeMarkerJavaReferenceContributor extends PsiReferenceContributor {
+
+    @Override
+    public void registerReferenceProviders(@NotNull PsiReferenceRegistrar registrar) {
+        registrar.registerReferenceProvider(PlatformPatterns.psiElement().withLanguage(FreeMarkerLanguage.INSTANCE),
+                new PsiReferenceProvider() {
+                    @Override
+                    public PsiReference @NotNull [] getReferencesByElement(@NotNull PsiElement element,
+                                                                           @NotNull ProcessingContext context) {
+                        return getPropertyReferences(element);
+                    }
+                });
+    }
+
+    private static PsiReference[] getPropertyReferences(PsiElement element) {
+        ASTNode node = element.getNode();
+        if (node == null || node.findChildByType(FreeMarkerTokenTypes.FUNCTION_CALL) == null) {
+            return PsiReference.EMPTY_ARRAY;
+        }
+        Map<String, String> declared = FreeMarkerFtlVariables.getDeclaredTypes(element.getContainingFile());
+        if (declared.isEmpty()) {
+            return PsiReference.EMPTY_ARRAY;
+        }
+        List<PsiReference> references = new ArrayList<>();
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            if (child.getElementType() != FreeMarkerTokenTypes.FUNCTION_CALL) {
+                continue;
+            }
+            List<String> qualifier = FreeMarkerJavaTypes.getQualifier(child);
+            if (qualifier == null || !declared.containsKey(qualifier.get(0))) {
+                continue;
+            }
+            ASTNode next = child.getTreeNext();
+            boolean call = next != null && next.getElementType() == FreeMarkerTokenTypes.TEXT &&
+                    next.getText().startsWith("(");
+            // The dot is not part of the name
+            int start = child.getStartOffset() - node.getStartOffset() + 1;
+            TextRange range = new TextRange(start, start + child.getTextLength() - 1);
+            references.add(new FreeMarkerPropertyReference(element, child, range, qualifier, call));
+        }
+        return references.toArray(PsiReference.EMPTY_ARRAY);
+    }
+}
@@ -0,0 +1,160 @@
+package com.ennic.freemarker.java;
+
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.psi.FreeMarkerFtlVariables;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMember;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.InheritanceUtil;
+import com.intellij.psi.util.PropertyUtilBase;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.IncorrectOperationException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Java types of property chains like {@code order.customer.name}, starting from a variable declared
+ * with {@code @ftlvariable}. Properties follow the beans wrapper: getters are exposed as properties,
+ * public methods by name and public fields as they are.
+ * <p>
+ * Resolved chains are cached per file and dropped on any PSI change, in the template or in the Java code.
+ */
+public final class FreeMarkerJavaTypes {
+    private static final String CALL_SUFFIX = "()";
+
+    private FreeMarkerJavaTypes() {
+    }
+
+    // The chain before a .name token, e.g. [order, customer] for .name in order.customer.name,
+    // with "()" appended to the segments that are called. Null when the chain does not start at an identifier
+    @Nullable
+    public static List<String> getQualifier(@NotNull ASTNode name) {
+        Deque<String> chain = new ArrayDeque<>();
+        boolean call = false;
+        for (ASTNode node = name.getTreePrev(); node != null; node = node.getTreePrev()) {
+            IElementType type = node.getElementType();
+            if (type == FreeMarkerTokenTypes.TEXT && !call && node.getText().endsWith(")")) {
+                node = skipArguments(node);
+                if (node == null) {
+                    return null;
+                }
+                call = true;
+                continue;
+            }
+            if (type != FreeMarkerTokenTypes.FUNCTION_CALL && type != FreeMarkerTokenTypes.IDENTIFIER) {
+                return null;
+            }
+            String segment = type == FreeMarkerTokenTypes.FUNCTION_CALL ? node.getText().substring(1) : node.getText();
+            chain.addFirst(call ? segment + CALL_SUFFIX : segment);
+            call = false;
+            if (type == FreeMarkerTokenTypes.IDENTIFIER) {
+                return new ArrayList<>(chain);
+            }
+        }
+        return null;
+    }
+
+    // From the TEXT holding a ')' back to the one holding its '('
+    @Nullable
+    private static ASTNode skipArguments(@NotNull ASTNode closing) {
+        int depth = 0;
+        for (ASTNode node = closing; node != null; node = node.getTreePrev()) {
+            if (node.getElementType() == FreeMarkerTokenTypes.TEXT) {
+                for (char c : node.getText().toCharArray()) {
+                    depth += c == ')' ? 1 : c == '(' ? -1 : 0;
+                }
+                if (depth <= 0) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    public static PsiType getType(@NotNull PsiFile file, @NotNull List<String> chain) {
+        if (chain.isEmpty() || !FreeMarkerFtlVariables.getDeclaredTypes(file).containsKey(getName(chain.get(0)))) {
+            return null;
+        }
+        Map<String, Optional<PsiType>> cache = CachedValuesManager.getCachedValue(file, () ->
+                CachedValueProvider.Result.create(new ConcurrentHashMap<>(), PsiModificationTracker.MODIFICATION_COUNT));
+        String key = String.join(".", chain);
+        Optional<PsiType> type = cache.get(key);
+        if (type == null) {
+            type = Optional.ofNullable(computeType(file, chain));
+            cache.put(key, type);
+        }
+        return type.orElse(null);
+    }
+
+    @Nullable
+    private static PsiType computeType(PsiFile file, List<String> chain) {
+        if (chain.size() == 1) {
+            String text = FreeMarkerFtlVariables.getDeclaredTypes(file).get(getName(chain.get(0)));
+            try {
+                return JavaPsiFacade.getElementFactory(file.getProject()).createTypeFromText(text, file);
+            } catch (IncorrectOperationException e) {
+                return null;
+            }
+        }
+        PsiType qualifier = getType(file, chain.subList(0, chain.size() - 1));
+        if (!(qualifier instanceof PsiClassType)) {
+            return null;
+        }
+        PsiClassType.ClassResolveResult result = ((PsiClassType) qualifier).resolveGenerics();
+        PsiClass psiClass = result.getElement();
+        String last = chain.get(chain.size() - 1);
+        PsiMember member = psiClass != null ? findMember(psiClass, getName(last), last.endsWith(CALL_SUFFIX)) : null;
+        if (member instanceof PsiMethod) {
+            return result.getSubstitutor().substitute(((PsiMethod) member).getReturnType());
+        } else if (member instanceof PsiField) {
+            return result.getSubstitutor().substitute(((PsiField) member).getType());
+        }
+        return null;
+    }
+
+    @Nullable
+    public static PsiMember findMember(@NotNull PsiClass psiClass, @NotNull String name, boolean call) {
+        if (call) {
+            for (PsiMethod method : psiClass.findMethodsByName(name, true)) {
+                if (method.hasModifierProperty(PsiModifier.PUBLIC)) {
+                    return method;
+                }
+            }
+            return null;
+        }
+        PsiMethod getter = PropertyUtilBase.findPropertyGetter(psiClass, name, false, true);
+        if (getter != null) {
+            return getter;
+        }
+        PsiField field = psiClass.findFieldByName(name, true);
+        return field != null && field.hasModifierProperty(PsiModifier.PUBLIC) ? field : null;
+    }
+
+    // Maps are exposed as hashes, so any key may be valid
+    public static boolean hasFixedProperties(@NotNull PsiClass psiClass) {
+        return !InheritanceUtil.isInheritor(psiClass, "java.util.Map");
+    }
+
+    private static String getName(String segment) {
+        return segment.endsWith(CALL_SUFFIX) ? segment.substring(0, segment.length() - CALL_SUFFIX.length()) : segment;
+    }
+}
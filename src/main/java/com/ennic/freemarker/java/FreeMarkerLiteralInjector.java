@@ -0,0 +1,177 @@
+package com.ennic.freemarker.java;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.intellij.lang.injection.MultiHostInjector;
+import com.intellij.lang.injection.MultiHostRegistrar;
+import com.intellij.psi.ElementManipulators;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiLanguageInjectionHost;
+import com.intellij.psi.PsiLiteralExpression;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.PsiVariable;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.uast.UCallExpression;
+import org.jetbrains.uast.UElement;
+import org.jetbrains.uast.UExpression;
+import org.jetbrains.uast.UFile;
+import org.jetbrains.uast.UImportStatement;
+import org.jetbrains.uast.UInjectionHost;
+import org.jetbrains.uast.UParenthesizedExpression;
+import org.jetbrains.uast.UReferenceExpression;
+import org.jetbrains.uast.UVariable;
+import org.jetbrains.uast.UastCallKind;
+import org.jetbrains.uast.UastContextKt;
+import org.jetbrains.uast.UastUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Injects FreeMarker into Java and Kotlin string literals that are template sources:
+ * {@code new Template(name, new StringReader("..."))}, {@code new Template(name, "...", cfg)}
+ * and {@code StringTemplateLoader.putTemplate(name, "...")}, either directly or through a constant
+ * of the same file. Call sites are found through UAST; Kotlin string templates are handled by
+ * {@link com.ennic.freemarker.kotlin.FreeMarkerKotlinLiteralInjector} when the Kotlin plugin is installed.
+ * <p>
+ * The injected fragment is lexed by {@code FreeMarkerLexer} and kept by the platform between host edits,
+ * so typing in a literal only relexes that literal.
+ */
+public class FreeMarkerLiteralInjector implements MultiHostInjector {
+    private static final String TEMPLATE = "freemarker.template.Template";
+    private static final String STRING_READER = "java.io.StringReader";
+    private static final String STRING_TEMPLATE_LOADER = "freemarker.cache.StringTemplateLoader";
+
+    @Override
+    public void getLanguagesToInject(@NotNull MultiHostRegistrar registrar, @NotNull PsiElement context) {
+        PsiLanguageInjectionHost host = (PsiLanguageInjectionHost) context;
+        if (!host.isValidHost()) {
+            return;
+        }
+        UInjectionHost literal = UastContextKt.toUElement(host, UInjectionHost.class);
+        if (literal == null || literal.getEvaluateToString() == null) {
+            return;
+        }
+        if (isTemplateSource(literal) || isTemplateConstant(literal)) {
+            registrar.startInjecting(FreeMarkerLanguage.INSTANCE)
+                    .addPlace(null, null, host, ElementManipulators.getValueTextRange(host))
+                    .doneInjecting();
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<? extends Class<? extends PsiElement>> elementsToInjectIn() {
+        return List.of(PsiLiteralExpression.class);
+    }
+
+    private static boolean isTemplateSource(UExpression expression) {
+        UCallExpression call = getEnclosingCall(expression);
+        if (call == null) {
+            return false;
+        }
+        int index = call.getValueArguments().indexOf(skipParenthesesUp(expression));
+        if (isConstructorOf(call, STRING_READER)) {
+            // Template(String name, Reader reader, ...)
+            UCallExpression template = getEnclosingCall(call);
+            return index == 0 && template != null && isConstructorOf(template, TEMPLATE) &&
+                    template.getValueArguments().indexOf(skipParenthesesUp(call)) == 1;
+        } else if (isConstructorOf(call, TEMPLATE)) {
+            // Template(String name, String sourceCode, Configuration cfg)
+            return index == 1 && call.getValueArguments().size() >= 3;
+        } else if ("putTemplate".equals(call.getMethodName())) {
+            PsiMethod method = call.resolve();
+            PsiClass owner = method != null ? method.getContainingClass() : null;
+            return index == 1 && owner != null && STRING_TEMPLATE_LOADER.equals(owner.getQualifiedName());
+        }
+        return false;
+    }
+
+    // A literal initializing a variable that this file passes as a template source. The answers are kept
+    // on the file until it changes, since only its own text can pass the variable on.
+    private static boolean isTemplateConstant(UExpression literal) {
+        UElement parent = skipParenthesesUp(literal).getUastParent();
+        if (!(parent instanceof UVariable)) {
+            return false;
+        }
+        PsiVariable variable = ((UVariable) parent).getJavaPsi();
+        PsiElement source = parent.getSourcePsi();
+        PsiFile file = source != null ? source.getContainingFile() : null;
+        if (variable == null || file == null) {
+            return false;
+        }
+        Map<PsiVariable, Boolean> constants = CachedValuesManager.getCachedValue(file, () ->
+                CachedValueProvider.Result.create(new ConcurrentHashMap<PsiVariable, Boolean>(), file));
+        Boolean passed = constants.get(variable);
+        if (passed == null) {
+            passed = isPassedAsTemplateSource(variable, file);
+            constants.put(variable, passed);
+        }
+        return passed;
+    }
+
+    private static boolean isPassedAsTemplateSource(PsiVariable variable, PsiFile file) {
+        for (PsiReference reference : ReferencesSearch.search(variable, new LocalSearchScope(file))) {
+            UExpression usage = UastContextKt.toUElement(reference.getElement(), UExpression.class);
+            if (usage != null && isTemplateSource(usage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The outermost parenthesized expression around the element, or the element itself
+    private static UElement skipParenthesesUp(UElement element) {
+        while (element.getUastParent() instanceof UParenthesizedExpression) {
+            element = element.getUastParent();
+        }
+        return element;
+    }
+
+    @Nullable
+    private static UCallExpression getEnclosingCall(UElement argument) {
+        UElement parent = skipParenthesesUp(argument).getUastParent();
+        return parent instanceof UCallExpression ? (UCallExpression) parent : null;
+    }
+
+    // When the class does not resolve, e.g. without FreeMarker on the classpath, the name as written must be
+    // the qualified name, or a simple name that the file imports from the class's package
+    private static boolean isConstructorOf(UCallExpression call, String qualifiedName) {
+        if (call.getKind() != UastCallKind.CONSTRUCTOR_CALL) {
+            return false;
+        }
+        PsiMethod constructor = call.resolve();
+        PsiClass psiClass = constructor != null ? constructor.getContainingClass() : null;
+        if (psiClass != null) {
+            return qualifiedName.equals(psiClass.getQualifiedName());
+        }
+        UReferenceExpression reference = call.getClassReference();
+        String written = reference != null ? reference.asSourceString() : null;
+        return written != null && (qualifiedName.equals(written) ||
+                qualifiedName.endsWith("." + written) && written.indexOf('.') < 0 && isImported(call, qualifiedName));
+    }
+
+    private static boolean isImported(UElement element, String qualifiedName) {
+        UFile file = UastUtils.getContainingUFile(element);
+        if (file == null) {
+            return false;
+        }
+        String packageName = qualifiedName.substring(0, qualifiedName.lastIndexOf('.'));
+        for (UImportStatement statement : file.getImports()) {
+            UElement reference = statement.getImportReference();
+            String imported = reference != null ? reference.asSourceString() : null;
+            if (statement.isOnDemand() ? packageName.equals(imported) : qualifiedName.equals(imported)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ennic.freemarker.java;
+
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.annotation.AnnotationHolder;
+import com.intellij.lang.annotation.Annotator;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiReference;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Warns about a property the Java type of its qualifier does not have. Chains whose type is unknown,
+ * or is a map, are not checked.
+ */
+public class FreeMarkerPropertyAnnotator implements Annotator {
+
+    @Override
+    public void annotate(@NotNull PsiElement element, @NotNull AnnotationHolder holder) {
+        ASTNode node = element.getNode();
+        if (node == null || node.findChildByType(FreeMarkerTokenTypes.FUNCTION_CALL) == null) {
+            return;
+        }
+        for (PsiReference reference : element.getReferences()) {
+            if (!(reference instanceof FreeMarkerPropertyReference)) {
+                continue;
+            }
+            PsiClass psiClass = ((FreeMarkerPropertyReference) reference).getQualifierClass();
+            if (psiClass != null && FreeMarkerJavaTypes.hasFixedProperties(psiClass) && reference.resolve() == null) {
+                holder.newAnnotation(HighlightSeverity.WARNING,
+                                "Cannot resolve property '" + reference.getCanonicalText() + "' in " + psiClass.getName())
+                        .range(reference.getRangeInElement().shiftRight(element.getTextRange().getStartOffset()))
+                        .create();
+            }
+        }
+    }
+}
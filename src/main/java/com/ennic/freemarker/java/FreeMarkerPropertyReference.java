@@ -0,0 +1,100 @@
+package com.ennic.freemarker.java;
+
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiReferenceBase;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.util.PropertyUtilBase;
+import com.intellij.psi.util.PsiUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The .name part of a property chain whose root is declared with {@code @ftlvariable},
+ * resolved to the getter, method or field it reads.
+ */
+public class FreeMarkerPropertyReference extends PsiReferenceBase<PsiElement> {
+    private final ASTNode leaf;
+    private final List<String> qualifier;
+    private final boolean call;
+
+    FreeMarkerPropertyReference(@NotNull PsiElement element, @NotNull ASTNode leaf, @NotNull TextRange range,
+                                @NotNull List<String> qualifier, boolean call) {
+        super(element, range, true);
+        this.leaf = leaf;
+        this.qualifier = qualifier;
+        this.call = call;
+    }
+
+    // The class the name is looked up in, or null when the qualifier's type is unknown
+    @Nullable
+    public PsiClass getQualifierClass() {
+        PsiFile file = getElement().getContainingFile().getOriginalFile();
+        PsiType type = FreeMarkerJavaTypes.getType(file, qualifier);
+        return type != null ? PsiUtil.resolveClassInType(type) : null;
+    }
+
+    @Nullable
+    @Override
+    public PsiElement resolve() {
+        PsiClass psiClass = getQualifierClass();
+        return psiClass != null ? FreeMarkerJavaTypes.findMember(psiClass, getValue(), call) : null;
+    }
+
+    @Override
+    public Object @NotNull [] getVariants() {
+        PsiClass psiClass = getQualifierClass();
+        if (psiClass == null) {
+            return new Object[0];
+        }
+        Set<String> names = new LinkedHashSet<>();
+        List<LookupElementBuilder> variants = new ArrayList<>();
+        for (PsiMethod method : psiClass.getAllMethods()) {
+            PsiClass owner = method.getContainingClass();
+            if (!method.hasModifierProperty(PsiModifier.PUBLIC) || method.hasModifierProperty(PsiModifier.STATIC) ||
+                    method.isConstructor() || owner == null || "java.lang.Object".equals(owner.getQualifiedName())) {
+                continue;
+            }
+            boolean getter = PropertyUtilBase.isSimplePropertyGetter(method);
+            String name = getter ? PropertyUtilBase.getPropertyName(method) : method.getName();
+            if (name != null && names.add(name)) {
+                PsiType type = method.getReturnType();
+                variants.add(LookupElementBuilder.create(method, name)
+                        .withTailText(getter ? null : "()")
+                        .withTypeText(type != null ? type.getPresentableText() : null));
+            }
+        }
+        for (PsiField field : psiClass.getAllFields()) {
+            if (field.hasModifierProperty(PsiModifier.PUBLIC) && names.add(field.getName())) {
+                variants.add(LookupElementBuilder.create(field, field.getName())
+                        .withTypeText(field.getType().getPresentableText()));
+            }
+        }
+        return variants.toArray();
+    }
+
+    // Renaming getName() to getFullName() turns .name into .fullName
+    @Override
+    public PsiElement handleElementRename(@NotNull String newElementName) {
+        String name = newElementName;
+        if (!call && resolve() instanceof PsiMethod) {
+            String property = PropertyUtilBase.getPropertyName(newElementName);
+            name = property != null ? property : newElementName;
+        }
+        ((LeafElement) leaf).replaceWithText("." + name);
+        return getElement();
+    }
+}
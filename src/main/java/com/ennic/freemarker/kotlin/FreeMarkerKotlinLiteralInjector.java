@@ -0,0 +1,20 @@
+package com.ennic.freemarker.kotlin;
+
+import com.ennic.freemarker.java.FreeMarkerLiteralInjector;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.kotlin.psi.KtStringTemplateExpression;
+
+import java.util.List;
+
+/**
+ * The template source injection of {@link FreeMarkerLiteralInjector} for Kotlin string templates.
+ */
+public class FreeMarkerKotlinLiteralInjector extends FreeMarkerLiteralInjector {
+
+    @NotNull
+    @Override
+    public List<? extends Class<? extends PsiElement>> elementsToInjectIn() {
+        return List.of(KtStringTemplateExpression.class);
+    }
+}
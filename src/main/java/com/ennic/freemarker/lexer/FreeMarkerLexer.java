@@ -1,11 +1,14 @@
 package com.ennic.freemarker.lexer;
 
+import com.ennic.freemarker.diagnostics.FreeMarkerStats;
 import com.intellij.lexer.LexerBase;
+import com.intellij.lexer.RestartableLexer;
+import com.intellij.lexer.TokenIterator;
 import com.intellij.psi.tree.IElementType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public class FreeMarkerLexer extends LexerBase {
+public class FreeMarkerLexer extends LexerBase implements RestartableLexer {
 
     private CharSequence buffer;
     private int startOffset;
@@ -16,26 +19,173 @@ public class FreeMarkerLexer extends LexerBase {
     // Token states
     private static final int NORMAL = 0;
     private static final int IN_DIRECTIVE = 1;
-    private static final int IN_COMMENT = 2;
-    private static final int STARTING_HTML_TAG = 3;
-    private static final int IN_HTML_TAG = 4;
-    private static final int IN_TODO = 5;
     private int state = NORMAL;
+    private static final int MODE_MASK = 0x1;
+
+    // Context packed into the state next to the mode, so that lexing can restart at a token.
+    // The platform keeps the state in 16 bits, so the whole layout has to stay below bit 15.
+    // Bits 12 and 13 hold the file's syntax, see FreeMarkerSyntax.
+    private static final int BRACKET_SHIFT = 1; // open [ count inside a square bracket tag or interpolation
+    private static final int BRACKET_MASK = 0x3;
+    private static final int DEPTH_SHIFT = 3; // open ${ count
+    private static final int QUOTE_SHIFT = 6; // quote of the string interrupted by ${
+    private static final int RESUME_SHIFT = 8; // ${ count at which that string continues
+    private static final int DEPTH_MASK = 0x7;
+    private static final int QUOTE_MASK = 0x3;
+    private static final int PENDING = 1 << 11; // inside the lookahead window of a comment without an end
+    // Right after <#, </# or ?, where a name's type depends on the text before it (see identifierType)
+    private static final int AFTER_MARKER = 1 << 14;
+
+    // How far a comment start looks for its end. Without one in reach, the comment ends with its line
+    // instead of swallowing the rest of the file.
+    private static final int COMMENT_LOOKAHEAD = 1 << 16;
+
+    private int interpolationDepth;
+    private char pendingQuote;
+    private int resumeDepth;
+    private int pendingEnd = -1;
+    private int tokenState;
+
+    // Offset before which no comment end starts, from earlier comments of this run without one; keeps the
+    // lookahead of consecutive unterminated comments from scanning the same window over and over
+    private int commentEndSearched;
+
+    // Start of the current lexing run, for the instrumentation only
+    private int runStart;
+
+    // Fast path for very large files: names are classified by their position only, without registry lookups
+    private final boolean lightweight;
+
+    // The file's syntax, or DETECT to take it from the buffer when lexing starts at its beginning
+    private final int syntax;
+    private int syntaxBits;
+    private int bracketDepth;
+
+    // Delimiters of the current syntax, so that the hot path compares against one syntax only
+    private char tagOpen;
+    private char tagClose;
+    private char interpolationOpen;
+    private char interpolationOpenNext;
+    private char interpolationClose;
+    private String directiveStart;
+    private String directiveClosing;
+    private String macroCallStart;
+    private String macroCallClosing;
+    private String emptyDirectiveEnd;
+
+    public FreeMarkerLexer() {
+        this(false);
+    }
+
+    public FreeMarkerLexer(boolean lightweight) {
+        this(lightweight, FreeMarkerSyntax.DETECT);
+    }
 
+    public FreeMarkerLexer(boolean lightweight, int syntax) {
+        this.lightweight = lightweight;
+        this.syntax = syntax;
+    }
 
     @Override
     public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        if (FreeMarkerStats.ENABLED) {
+            FreeMarkerStats.lexerStarted(startOffset, initialState, this.buffer != null ? this.currentPosition - runStart : 0);
+            runStart = startOffset;
+        }
         this.buffer = buffer;
         this.startOffset = startOffset;
         this.endOffset = endOffset;
         this.currentPosition = startOffset;
-        this.state = initialState;
+        this.state = initialState & MODE_MASK;
+        this.bracketDepth = (initialState >> BRACKET_SHIFT) & BRACKET_MASK;
+        setSyntax(initialState & FreeMarkerSyntax.MASK);
+        this.interpolationDepth = (initialState >> DEPTH_SHIFT) & DEPTH_MASK;
+        this.pendingQuote = quoteChar((initialState >> QUOTE_SHIFT) & QUOTE_MASK);
+        this.resumeDepth = (initialState >> RESUME_SHIFT) & DEPTH_MASK;
+        // The window's real end is not part of the state; such states are not restartable, so this is a fallback
+        this.pendingEnd = (initialState & PENDING) != 0 ? startOffset + COMMENT_LOOKAHEAD : -1;
+        this.commentEndSearched = startOffset;
+        this.currentToken = null;
         advance();
     }
 
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState,
+                      TokenIterator tokenIterator) {
+        start(buffer, startOffset, endOffset, initialState);
+    }
+
+    // A state carrying a syntax wins; otherwise the fixed syntax, or the one detected from the whole buffer
+    private void setSyntax(int stateSyntax) {
+        if (stateSyntax != 0 || syntax != FreeMarkerSyntax.DETECT) {
+            syntaxBits = stateSyntax != 0 ? stateSyntax : syntax;
+        } else {
+            syntaxBits = startOffset == 0 ? FreeMarkerSyntax.detect(buffer) : FreeMarkerSyntax.ANGLE;
+        }
+        boolean squareTags = (syntaxBits & FreeMarkerSyntax.SQUARE_TAGS) != 0;
+        boolean squareInterpolation = (syntaxBits & FreeMarkerSyntax.SQUARE_INTERPOLATION) != 0;
+        tagOpen = squareTags ? '[' : '<';
+        tagClose = squareTags ? ']' : '>';
+        directiveStart = squareTags ? "[#" : "<#";
+        directiveClosing = squareTags ? "[/#" : "</#";
+        macroCallStart = squareTags ? "[@" : "<@";
+        macroCallClosing = squareTags ? "[/@" : "</@";
+        emptyDirectiveEnd = squareTags ? "/]" : "/>";
+        interpolationOpen = squareInterpolation ? '[' : '$';
+        interpolationOpenNext = squareInterpolation ? '=' : '{';
+        interpolationClose = squareInterpolation ? ']' : '}';
+    }
+
+    // The fixed syntax travels in the start state, so the editor highlighter starts with it
+    @Override
+    public int getStartState() {
+        return syntax != FreeMarkerSyntax.DETECT ? syntax : NORMAL;
+    }
+
+    // Lexing can restart anywhere outside the lookahead window of a comment without an end. Inside it an edit
+    // can give that comment an end, so relexing has to go back to the comment start. A name right after <#
+    // or ? is not a restart point either: an edit just before it can change its type without changing the state.
+    @Override
+    public boolean isRestartableState(int state) {
+        return (state & (PENDING | AFTER_MARKER)) == 0;
+    }
+
+    // State at the start of the current token; restarting there with this state reproduces the token.
+    // Once the lexer is exhausted this is the state at the end of the buffer.
     @Override
     public int getState() {
-        return state;
+        return tokenState;
+    }
+
+    // True if the state has nothing open: no directive, comment, interpolation or interrupted string
+    public static boolean isTopLevelState(int state) {
+        return (state & ~FreeMarkerSyntax.MASK) == NORMAL;
+    }
+
+    private int packState() {
+        int packed = state | syntaxBits;
+        packed |= bracketDepth << BRACKET_SHIFT;
+        packed |= interpolationDepth << DEPTH_SHIFT;
+        packed |= quoteIndex(pendingQuote) << QUOTE_SHIFT;
+        packed |= resumeDepth << RESUME_SHIFT;
+        if (currentPosition < pendingEnd) {
+            packed |= PENDING;
+        }
+        if ((state == IN_DIRECTIVE || interpolationDepth > 0) && currentPosition > 0) {
+            char previous = buffer.charAt(currentPosition - 1);
+            if (previous == '#' || previous == '?') {
+                packed |= AFTER_MARKER;
+            }
+        }
+        return packed;
+    }
+
+    private static int quoteIndex(char quote) {
+        return quote == '"' ? 1 : quote == '\'' ? 2 : 0;
+    }
+
+    private static char quoteChar(int index) {
+        return index == 1 ? '"' : index == 2 ? '\'' : 0;
     }
 
     @Nullable
@@ -56,6 +206,20 @@ public class FreeMarkerLexer extends LexerBase {
 
     @Override
     public void advance() {
+        if (FreeMarkerStats.ENABLED) {
+            long start = System.nanoTime();
+            lex();
+            if (currentToken != null) {
+                FreeMarkerStats.tokenLexed(currentPosition - startOffset, System.nanoTime() - start);
+            }
+        } else {
+            lex();
+        }
+    }
+
+    private void lex() {
+        tokenState = packState();
+
         if (currentPosition >= endOffset) {
             currentToken = null;
             return;
@@ -63,6 +227,10 @@ public class FreeMarkerLexer extends LexerBase {
 
         startOffset = currentPosition;
 
+        if (isStringContinuation()) {
+            return;
+        }
+
         if (isComment()) {
             return;
         }
@@ -75,34 +243,34 @@ public class FreeMarkerLexer extends LexerBase {
             return;
         }
 
-        if(isString()){
+        // Markup is left to the template data language
+        if (state == NORMAL && interpolationDepth == 0) {
+            consumeTemplateText();
+            return;
+        }
+
+        if (isFunctionCall()) {
             return;
         }
 
-        if(isHTML()){
+        if(isString()){
             return;
         }
 
+        if (isSquareBracket()) {
+            return;
+        }
 
         // Ending tag handling
-        if (buffer.charAt(currentPosition) == '>') {
+        if (buffer.charAt(currentPosition) == tagClose) {
             currentPosition++;
             if (state == IN_DIRECTIVE) {
                 currentToken = FreeMarkerTokenTypes.DIRECTIVE_END;
                 state = NORMAL;
-            } else if (state == IN_HTML_TAG) {
-                currentToken = FreeMarkerTokenTypes.HTML_TAG_END;
-                state = NORMAL;
             } else {
-                currentToken = FreeMarkerTokenTypes.TEXT;
+                consumeText();
             }
             return;
-        } else if (currentPosition < endOffset && state == IN_HTML_TAG &&
-                buffer.charAt(currentPosition) == '/' && buffer.charAt(currentPosition+1) == '>') {
-            currentPosition+=2;
-            currentToken = FreeMarkerTokenTypes.HTML_TAG_END;
-            state = NORMAL;
-            return;
         }
 
 
@@ -116,7 +284,7 @@ public class FreeMarkerLexer extends LexerBase {
 
         // Text
         currentPosition++;
-        currentToken = FreeMarkerTokenTypes.TEXT;
+        consumeText();
     }
 
     @NotNull
@@ -130,70 +298,57 @@ public class FreeMarkerLexer extends LexerBase {
         return endOffset;
     }
 
-    private boolean isComment(){
-
-        // Check if there's a comment start command (<#-- or <!--)
-        if (currentPosition + 3 < endOffset && buffer.charAt(currentPosition) == '<' &&
-                (buffer.charAt(currentPosition + 1) == '#' || buffer.charAt(currentPosition + 1) == '!') && buffer.charAt(currentPosition + 2) == '-' &&
-                buffer.charAt(currentPosition + 3) == '-') {
-            currentPosition += 4;
-            currentToken = FreeMarkerTokenTypes.COMMENT_START;
-            state = IN_COMMENT;
-            return true;
+    // A whole comment is one COMMENT token, up to and including --> (--] in square bracket syntax)
+    private boolean isComment() {
+        if (!isCommentStart(currentPosition)) {
+            return false;
         }
 
-        if (state == IN_COMMENT && buffer.charAt(currentPosition) != '-'){
-
-            if (isTodoComment()) {
-                currentPosition++;
-                state = IN_TODO;
-                currentToken = FreeMarkerTokenTypes.COMMENT_TODO;
-                return true;
+        int end = findCommentEnd(currentPosition + 4);
+        if (end < 0) {
+            // No end in reach: the comment ends with its line
+            pendingEnd = currentPosition + COMMENT_LOOKAHEAD;
+            end = currentPosition + 4;
+            while (end < endOffset && buffer.charAt(end) != '\n') {
+                end++;
             }
-
-            currentPosition++;
-            currentToken = FreeMarkerTokenTypes.COMMENT_START;
-            return true;
-        }
-
-        // Check if there's a comment end command (-->)
-        if (currentPosition + 2 < endOffset && buffer.charAt(currentPosition) == '-' &&
-                buffer.charAt(currentPosition + 1) == '-' && buffer.charAt(currentPosition + 2) == '>') {
-            currentPosition += 3;
-            currentToken = FreeMarkerTokenTypes.COMMENT_END;
-            state = NORMAL;
-            return true;
         }
+        currentPosition = end;
+        currentToken = FreeMarkerTokenTypes.COMMENT;
+        return true;
+    }
 
-        if (state == IN_TODO){
-            currentPosition++;
-            currentToken = FreeMarkerTokenTypes.COMMENT_TODO;
-            return true;
+    // True if the text of a COMMENT token has its --> or --], rather than ending with its line
+    public static boolean isClosedComment(@NotNull CharSequence comment) {
+        int length = comment.length();
+        if (length < 7 || comment.charAt(length - 3) != '-' || comment.charAt(length - 2) != '-') {
+            return false;
         }
-
-        return false;
+        char last = comment.charAt(length - 1);
+        return last == (comment.charAt(0) == '[' ? ']' : '>');
     }
 
-    // Check for "todo"
-    private boolean isTodoComment() {
-        int commentContentStart = currentPosition;
-
-        while (commentContentStart < endOffset &&
-               Character.isWhitespace(buffer.charAt(commentContentStart))) {
-            commentContentStart++;
-        }
+    private boolean isCommentStart(int position) {
+        return position + 3 < endOffset && buffer.charAt(position) == tagOpen && buffer.charAt(position + 1) == '#' &&
+                buffer.charAt(position + 2) == '-' && buffer.charAt(position + 3) == '-';
+    }
 
-        if (commentContentStart + 4 <= endOffset) {
-            String possibleTodo = buffer.subSequence(commentContentStart, commentContentStart + 4).toString().toLowerCase();
-            return "todo".equals(possibleTodo);
+    // Offset just past the first --> within the lookahead window, or -1
+    private int findCommentEnd(int position) {
+        int limit = Math.min(endOffset, position + COMMENT_LOOKAHEAD);
+        int from = Math.max(position, commentEndSearched);
+        for (int i = from; i + 2 < limit; i++) {
+            if (buffer.charAt(i) == '-' && buffer.charAt(i + 1) == '-' && buffer.charAt(i + 2) == tagClose) {
+                return i + 3;
+            }
         }
-
-        return false;
+        commentEndSearched = Math.max(from, limit - 2);
+        return -1;
     }
 
     private boolean isDirective() {
         // Check for directive start command (<#)
-        if (hasPattern("<#", 2)) {
+        if (hasPattern(directiveStart, 2)) {
             currentPosition += 2;
             currentToken = FreeMarkerTokenTypes.DIRECTIVE_START;
             state = IN_DIRECTIVE;
@@ -201,40 +356,82 @@ public class FreeMarkerLexer extends LexerBase {
         }
 
         // Check for inline directive closing command (/>)
-        if (state == IN_DIRECTIVE && hasPattern("/>", 2)) {
+        if (state == IN_DIRECTIVE && hasPattern(emptyDirectiveEnd, 2)) {
             currentPosition += 2;
-            currentToken = FreeMarkerTokenTypes.DIRECTIVE_START;
+            currentToken = FreeMarkerTokenTypes.EMPTY_DIRECTIVE_END;
             state = NORMAL;
             return true;
         }
 
         // Check for directive closing command (</#)
-        if (hasPattern("</#", 3)) {
+        if (hasPattern(directiveClosing, 3)) {
             currentPosition += 3;
             currentToken = FreeMarkerTokenTypes.DIRECTIVE_CLOSING;
             state = IN_DIRECTIVE;
             return true;
         }
+
+        // User-defined directive calls (<@ and </@) are lexed like directives
+        if (hasPattern(macroCallStart, 2)) {
+            currentPosition += 2;
+            currentToken = FreeMarkerTokenTypes.MACRO_CALL_START;
+            state = IN_DIRECTIVE;
+            return true;
+        }
+        if (hasPattern(macroCallClosing, 3)) {
+            currentPosition += 3;
+            currentToken = FreeMarkerTokenTypes.MACRO_CALL_CLOSING;
+            state = IN_DIRECTIVE;
+            return true;
+        }
         return false;
     }
 
     private boolean isInterpolation() {
-        // Check for starting interpolation command (${)
-        if (hasPattern("${", 2)) {
+        // Check for starting interpolation command (${, or [= in square bracket syntax)
+        if (isInterpolationStart(currentPosition)) {
             currentPosition += 2;
             currentToken = FreeMarkerTokenTypes.INTERPOLATION_START;
+            if (interpolationDepth < DEPTH_MASK) {
+                interpolationDepth++;
+            }
             return true;
         }
 
-        // Check for ending interpolation command (})
-        if (currentChar() == '}') {
+        // Check for ending interpolation command (}), a brace outside of ${...} is plain text.
+        // In square bracket syntax ] only ends it outside of nested brackets
+        if (currentChar() == interpolationClose && interpolationDepth > 0 && bracketDepth == 0) {
             currentPosition++;
+            interpolationDepth--;
             currentToken = FreeMarkerTokenTypes.INTERPOLATION_END;
             return true;
         }
+        return false;
+    }
 
-        // Check for function call
-        return isFunctionCall();
+    private boolean isInterpolationStart(int position) {
+        return buffer.charAt(position) == interpolationOpen && position + 1 < endOffset &&
+                buffer.charAt(position + 1) == interpolationOpenNext;
+    }
+
+    // [ and ] nest inside square bracket tags and interpolations, so the ] of xs[0] does not end them
+    private boolean isSquareBracket() {
+        if (syntaxBits == FreeMarkerSyntax.ANGLE) {
+            return false;
+        }
+        char c = currentChar();
+        if (c == '[') {
+            if (bracketDepth < BRACKET_MASK) {
+                bracketDepth++;
+            }
+        } else if (c == ']' && bracketDepth > 0) {
+            bracketDepth--;
+        } else {
+            return false;
+        }
+        currentPosition++;
+        currentToken = FreeMarkerTokenTypes.TEXT;
+        return true;
     }
 
     private boolean isFunctionCall() {
@@ -264,67 +461,53 @@ public class FreeMarkerLexer extends LexerBase {
             return false;
         }
 
-        // Handle interpolation inside quotes
-        if (isInterpolationContext()) {
-            currentToken = FreeMarkerTokenTypes.STRING;
-            currentPosition++;
-            return true;
+        currentPosition++; // Skip opening quote
+        // Only one interrupted string is tracked at a time, strings nested inside it are read in one piece
+        parseQuotedString(c, pendingQuote == 0);
+        currentToken = FreeMarkerTokenTypes.STRING;
+        return true;
+    }
+
+    // Continue a string that was interrupted by an interpolation, once that has ended
+    private boolean isStringContinuation() {
+        if (pendingQuote == 0 || interpolationDepth != resumeDepth) {
+            return false;
         }
 
-        return parseQuotedString(c);
+        int start = currentPosition;
+        parseQuotedString(pendingQuote, true);
+        if (currentPosition == start) {
+            return false;
+        }
+        currentToken = FreeMarkerTokenTypes.STRING;
+        return true;
     }
 
-    private boolean parseQuotedString(char quoteChar) {
-        currentPosition++; // Skip opening quote
-
+    // A string without a closing quote ends with its line, so an opening quote typed into a directive
+    // does not turn every later quote of the file inside out
+    private void parseQuotedString(char quoteChar, boolean interruptible) {
         while (currentPosition < endOffset) {
             char c = currentChar();
-            if (c == quoteChar) {
+            if (c == '\n') {
+                break;
+            } else if (c == quoteChar) {
                 currentPosition++; // Skip closing quote
                 break;
             } else if (c == '\\' && currentPosition + 1 < endOffset) {
                 currentPosition += 2; // Skip escape sequence
+            } else if (interruptible && isInterpolationStart(currentPosition)) {
+                pendingQuote = quoteChar;
+                resumeDepth = interpolationDepth;
+                return;
             } else {
                 currentPosition++;
             }
         }
 
-        currentToken = FreeMarkerTokenTypes.STRING;
-        return true;
-    }
-
-    private boolean isInterpolationContext() {
-        return (currentPosition + 2 < endOffset &&
-                buffer.charAt(currentPosition + 1) == '$' &&
-                buffer.charAt(currentPosition + 2) == '{') ||
-               (currentPosition > 0 && buffer.charAt(currentPosition - 1) == '}');
-    }
-
-    private boolean isHTML() {
-        // Check for HTML tag start (<)
-        if (currentChar() == '<' && state == NORMAL) {
-            currentPosition++;
-            currentToken = FreeMarkerTokenTypes.HTML_TAG_START;
-            state = STARTING_HTML_TAG;
-            return true;
+        if (interruptible) {
+            pendingQuote = 0;
+            resumeDepth = 0;
         }
-
-        // Parse HTML tag content
-        if (state == STARTING_HTML_TAG) {
-            int start = currentPosition;
-            while (currentPosition < endOffset &&
-                   currentChar() != '>' &&
-                   currentChar() != ' ') {
-                currentPosition++;
-            }
-
-            if (currentPosition > start) {
-                state = IN_HTML_TAG;
-                currentToken = FreeMarkerTokenTypes.HTML_TAG_CONTENT;
-                return true;
-            }
-        }
-        return false;
     }
 
     private boolean isKeyword() {
@@ -337,24 +520,97 @@ public class FreeMarkerLexer extends LexerBase {
             currentPosition++;
         }
 
-        String word = buffer.subSequence(start, currentPosition).toString();
-        currentToken = isFreemarkerKeyword(word) ?
+        currentToken = identifierType(start, currentPosition);
+        return true;
+    }
+
+    // Directive names follow <# or </#, built-ins follow ?. Looking back into the buffer instead of
+    // remembering the previous token keeps the state small and lets lexing restart at the name itself.
+    private IElementType identifierType(int start, int end) {
+        if (state != IN_DIRECTIVE && interpolationDepth == 0) {
+            return FreeMarkerTokenTypes.IDENTIFIER;
+        }
+        if (lightweight) {
+            if (state == IN_DIRECTIVE && isAfterDirectiveStart(start)) {
+                return FreeMarkerTokenTypes.DIRECTIVE_NAME;
+            }
+            return start > 0 && buffer.charAt(start - 1) == '?' ?
+                FreeMarkerTokenTypes.BUILTIN :
+                FreeMarkerTokenTypes.IDENTIFIER;
+        }
+        if (state == IN_DIRECTIVE && isAfterDirectiveStart(start)) {
+            return FreeMarkerRegistry.isDirective(buffer, start, end) ?
+                FreeMarkerTokenTypes.DIRECTIVE_NAME :
+                FreeMarkerTokenTypes.IDENTIFIER;
+        }
+        if (start > 0 && buffer.charAt(start - 1) == '?') {
+            return FreeMarkerRegistry.isBuiltin(buffer, start, end) ?
+                FreeMarkerTokenTypes.BUILTIN :
+                FreeMarkerTokenTypes.IDENTIFIER;
+        }
+        return FreeMarkerRegistry.isKeyword(buffer, start, end) ?
             FreeMarkerTokenTypes.KEYWORD :
             FreeMarkerTokenTypes.IDENTIFIER;
+    }
 
-        return true;
+    private boolean isAfterDirectiveStart(int position) {
+        return position >= 2 && buffer.charAt(position - 1) == '#' &&
+            (buffer.charAt(position - 2) == tagOpen ||
+                position >= 3 && buffer.charAt(position - 2) == '/' && buffer.charAt(position - 3) == tagOpen);
     }
 
-    private boolean isFreemarkerKeyword(String word) {
-        if (state == IN_HTML_TAG || state == IN_COMMENT || currentToken == FreeMarkerTokenTypes.TEXT) {
-            return false;
+    // One TEMPLATE_TEXT token up to the next <#, </#, <@, </@ or ${, or their square bracket forms
+    private void consumeTemplateText() {
+        while (currentPosition < endOffset) {
+            char c = buffer.charAt(currentPosition);
+            if ((c == tagOpen && isTagStart(currentPosition + 1)) ||
+                    (c == interpolationOpen && isInterpolationStart(currentPosition))) {
+                break;
+            }
+            currentPosition++;
         }
+        currentToken = FreeMarkerTokenTypes.TEMPLATE_TEXT;
+    }
 
-        return switch (word) {
-            case "if", "else", "elseif", "list", "assign", "include", "import", "macro", "function", "return", "switch",
-                 "case", "default", "ftl", "setting", "escape", "stop", "attempt", "recover", "items", "as"  -> true;
-            default -> false;
-        };
+    private boolean isTagStart(int position) {
+        if (position < endOffset && buffer.charAt(position) == '/') {
+            position++;
+        }
+        return position < endOffset && (buffer.charAt(position) == '#' || buffer.charAt(position) == '@');
+    }
+
+    // Extend a TEXT token over every following character that would also lex as a single TEXT token
+    private void consumeText() {
+        while (currentPosition < endOffset && isTextChar(currentPosition)) {
+            currentPosition++;
+        }
+        currentToken = FreeMarkerTokenTypes.TEXT;
+    }
+
+    private boolean isTextChar(int position) {
+        char c = buffer.charAt(position);
+        if (c == tagClose) {
+            return state == NORMAL && tagClose == '>';
+        }
+
+        switch (c) {
+            case '<', '"', '\'' -> {
+                return false;
+            }
+            case '[', ']' -> {
+                return syntaxBits == FreeMarkerSyntax.ANGLE;
+            }
+            case '}' -> {
+                return interpolationDepth == 0 || interpolationClose != '}';
+            }
+            case '$' -> {
+                return !isInterpolationStart(position);
+            }
+            case '.' -> {
+                return position + 1 >= endOffset || !isIdentifierStart(buffer.charAt(position + 1));
+            }
+        }
+        return !isIdentifierStart(c) && !Character.isDigit(c) && !isOperatorChar(c);
     }
 
     private boolean isOperator() {
@@ -392,8 +648,17 @@ public class FreeMarkerLexer extends LexerBase {
     }
 
     private boolean hasPattern(String pattern, int length) {
-        return currentPosition + length - 1 < endOffset &&
-               buffer.toString().startsWith(pattern, currentPosition);
+        return currentPosition + length - 1 < endOffset && matches(currentPosition, pattern);
+    }
+
+    // Compares the buffer against a literal in place, without materializing the buffer or a substring
+    private boolean matches(int offset, String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (buffer.charAt(offset + i) != pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private boolean isIdentifierStart(char c) {
@@ -0,0 +1,207 @@
+package com.ennic.freemarker.lexer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every FreeMarker directive, built-in and expression keyword, looked up straight from a range of the
+ * lexer buffer. The names sit in a collision-free table built at class load with hash-and-displace:
+ * a first hash picks a bucket, the bucket's displacement picks the slot, so a lookup is one pass over the
+ * characters, two array reads and one comparison, without allocating.
+ */
+public final class FreeMarkerRegistry {
+    public static final int DIRECTIVE = 1;
+    public static final int BUILTIN = 2;
+    public static final int KEYWORD = 4;
+
+    private static final String[] DIRECTIVES = {
+            "assign", "attempt", "autoesc", "break", "case", "comment", "compress", "continue", "default", "else",
+            "elseif", "escape", "fallback", "flush", "foreach", "ftl", "function", "global", "if", "import",
+            "include", "items", "list", "local", "lt", "macro", "nested", "noautoesc", "noescape", "noparse", "nt",
+            "on", "outputformat", "recover", "recurse", "return", "rt", "sep", "setting", "stop", "switch", "t",
+            "transform", "visit",
+            "autoEsc", "elseIf", "forEach", "noAutoEsc", "noEscape", "noParse", "outputFormat"
+    };
+
+    // Multi-word built-ins are also registered in their camelCase form, e.g. upperCase
+    private static final String[] BUILTINS = {
+            "abs", "absolute_template_name", "ancestors", "api", "blank_to_null", "boolean", "byte", "c", "c_lower_case",
+            "c_upper_case", "cap_first", "capitalize", "ceiling", "children", "chop_linebreak", "chunk", "cn",
+            "contains", "counter", "date", "date_if_unknown", "datetime", "datetime_if_unknown", "default", "double",
+            "drop_while", "empty_to_null", "ends_with", "ensure_ends_with", "ensure_starts_with", "esc", "eval",
+            "eval_json", "exists", "filter", "first", "float", "floor", "groups", "has_api", "has_content", "has_next",
+            "html", "if_exists", "index", "index_of", "int", "interpret", "is_boolean", "is_collection",
+            "is_collection_ex", "is_date", "is_date_like", "is_date_only", "is_datetime", "is_directive",
+            "is_enumerable", "is_even_item", "is_first", "is_hash", "is_hash_ex", "is_indexable", "is_infinite",
+            "is_last", "is_macro", "is_markup_output", "is_method", "is_nan", "is_node", "is_number", "is_odd_item",
+            "is_sequence", "is_string", "is_time", "is_transform", "is_unknown_date_like", "iso", "iso_h", "iso_h_nz",
+            "iso_local", "iso_local_h", "iso_local_h_nz", "iso_local_m", "iso_local_m_nz", "iso_local_ms",
+            "iso_local_ms_nz", "iso_local_nz", "iso_m", "iso_m_nz", "iso_ms", "iso_ms_nz", "iso_nz", "iso_utc",
+            "iso_utc_h", "iso_utc_h_nz", "iso_utc_m", "iso_utc_m_nz", "iso_utc_ms", "iso_utc_ms_nz", "iso_utc_nz",
+            "item_cycle", "item_parity", "item_parity_cap", "j_string", "join", "js_string", "json_string",
+            "keep_after", "keep_after_last", "keep_before", "keep_before_last", "keys", "last", "last_index_of",
+            "left_pad", "length", "long", "lower_abc", "lower_case", "map", "markup_string", "matches", "max", "min",
+            "namespace", "new", "next_sibling", "no_esc", "node_name", "node_namespace", "node_type", "number",
+            "number_to_date", "number_to_datetime", "number_to_time", "parent", "previous_sibling", "remove_beginning",
+            "remove_ending", "replace", "reverse", "right_pad", "root", "round", "rtf", "seq_contains",
+            "seq_index_of", "seq_last_index_of", "sequence", "short", "size", "sort", "sort_by", "split",
+            "starts_with", "string", "substring", "switch", "take_while", "then", "time", "time_if_unknown", "trim",
+            "trim_to_null", "truncate", "truncate_c", "truncate_c_m", "truncate_m", "truncate_w", "truncate_w_m",
+            "uncap_first", "upper_abc", "upper_case", "url", "url_path", "values", "web_safe", "with_args",
+            "with_args_last", "word_list", "xhtml", "xml"
+    };
+
+    // Reserved words inside expressions and directive parameters
+    private static final String[] KEYWORDS = {
+            "as", "false", "gt", "gte", "in", "lt", "lte", "true", "using"
+    };
+
+    private static final String[] NAMES;
+    private static final byte[] KINDS;
+    private static final int[] DISPLACEMENTS;
+    private static final int SLOT_MASK;
+
+    static {
+        Map<String, Integer> kinds = new LinkedHashMap<>();
+        for (String name : DIRECTIVES) {
+            kinds.merge(name, DIRECTIVE, (a, b) -> a | b);
+        }
+        for (String name : BUILTINS) {
+            kinds.merge(name, BUILTIN, (a, b) -> a | b);
+            kinds.merge(toCamelCase(name), BUILTIN, (a, b) -> a | b);
+        }
+        for (String name : KEYWORDS) {
+            kinds.merge(name, KEYWORD, (a, b) -> a | b);
+        }
+
+        String[] names = kinds.keySet().toArray(new String[0]);
+        int slots = Integer.highestOneBit(names.length * 2 - 1) << 1;
+        int buckets = slots / 4;
+        SLOT_MASK = slots - 1;
+        NAMES = new String[slots];
+        KINDS = new byte[slots];
+        DISPLACEMENTS = new int[buckets];
+
+        List<List<String>> byBucket = new ArrayList<>();
+        for (int i = 0; i < buckets; i++) {
+            byBucket.add(new ArrayList<>());
+        }
+        for (String name : names) {
+            byBucket.get(hash(name, 0, name.length()) & (buckets - 1)).add(name);
+        }
+        // Place the crowded buckets first, while most slots are still free
+        Integer[] order = new Integer[buckets];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> byBucket.get(b).size() - byBucket.get(a).size());
+
+        int[] taken = new int[slots];
+        int attempt = 0;
+        for (int bucket : order) {
+            List<String> members = byBucket.get(bucket);
+            if (members.isEmpty()) {
+                break;
+            }
+            for (int displacement = 1; ; displacement++) {
+                if (place(members, displacement, taken, ++attempt)) {
+                    DISPLACEMENTS[bucket] = displacement;
+                    for (String name : members) {
+                        int slot = slot(hash(name, 0, name.length()), displacement);
+                        NAMES[slot] = name;
+                        KINDS[slot] = (byte) (int) kinds.get(name);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private FreeMarkerRegistry() {
+    }
+
+    // DIRECTIVE, BUILTIN and KEYWORD flags of the name in buffer[start, end), or 0 for an unknown name
+    public static int lookup(@NotNull CharSequence buffer, int start, int end) {
+        int hash = hash(buffer, start, end);
+        int slot = slot(hash, DISPLACEMENTS[hash & (DISPLACEMENTS.length - 1)]);
+        String name = NAMES[slot];
+        if (name == null || name.length() != end - start) {
+            return 0;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (buffer.charAt(start + i) != name.charAt(i)) {
+                return 0;
+            }
+        }
+        return KINDS[slot];
+    }
+
+    public static boolean isDirective(@NotNull CharSequence buffer, int start, int end) {
+        return (lookup(buffer, start, end) & DIRECTIVE) != 0;
+    }
+
+    public static boolean isBuiltin(@NotNull CharSequence buffer, int start, int end) {
+        return (lookup(buffer, start, end) & BUILTIN) != 0;
+    }
+
+    public static boolean isKeyword(@NotNull CharSequence buffer, int start, int end) {
+        return (lookup(buffer, start, end) & KEYWORD) != 0;
+    }
+
+    public static boolean isDirective(@NotNull String name) {
+        return isDirective(name, 0, name.length());
+    }
+
+    public static boolean isBuiltin(@NotNull String name) {
+        return isBuiltin(name, 0, name.length());
+    }
+
+    // Whether the displacement sends all of a bucket's members to distinct free slots
+    private static boolean place(List<String> members, int displacement, int[] taken, int attempt) {
+        for (String name : members) {
+            int slot = slot(hash(name, 0, name.length()), displacement);
+            if (taken[slot] == attempt || NAMES[slot] != null) {
+                return false;
+            }
+            taken[slot] = attempt;
+        }
+        return true;
+    }
+
+    // FNV-1a
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    // Murmur3 finalizer over the hash mixed with the displacement
+    private static int slot(int hash, int displacement) {
+        int h = hash ^ displacement * 0x9e3779b9;
+        h = (h ^ (h >>> 16)) * 0x85ebca6b;
+        h = (h ^ (h >>> 13)) * 0xc2b2ae35;
+        return (h ^ (h >>> 16)) & SLOT_MASK;
+    }
+
+    // upper_case -> upperCase, iso_utc_nz -> isoUtcNZ
+    private static String toCamelCase(String name) {
+        StringBuilder camel = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '_' && i + 1 < name.length()) {
+                if (name.startsWith("nz", i + 1) && i + 3 == name.length()) {
+                    return camel.append("NZ").toString();
+                }
+                camel.append(Character.toUpperCase(name.charAt(++i)));
+            } else {
+                camel.append(c);
+            }
+        }
+        return camel.toString();
+    }
+}
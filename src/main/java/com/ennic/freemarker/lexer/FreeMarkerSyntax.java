@@ -0,0 +1,159 @@
+package com.ennic.freemarker.lexer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Tag syntax ({@code <#if>} or {@code [#if]}) and interpolation syntax ({@code ${x}} or {@code [=x]}) of a template.
+ * <p>
+ * Both are detected from the first tag (an {@code <#ftl>} or {@code [#ftl]} header included) and the first
+ * interpolation, and kept in the file's user data. {@link FreeMarkerSyntaxUpdater} keeps them in step with the
+ * document: an edit only looks at the changed text, unless it touches the first tag or interpolation. The result
+ * is handed to the lexer through its start state, so the lexer only ever looks for one set of delimiters.
+ */
+public final class FreeMarkerSyntax {
+    public static final int ANGLE = 0;
+    public static final int SQUARE_TAGS = 1 << 12;
+    public static final int SQUARE_INTERPOLATION = 1 << 13;
+    public static final int MASK = SQUARE_TAGS | SQUARE_INTERPOLATION;
+
+    // Not a syntax: the lexer detects the syntax from its buffer
+    public static final int DETECT = -1;
+
+    private static final Key<Detected> KEY = Key.create("freemarker.syntax");
+    // "<#", "</#", "${" and "[=" need at most this many characters
+    private static final int LOOKAHEAD = 3;
+
+    private FreeMarkerSyntax() {
+    }
+
+    public static int get(@NotNull PsiFile file) {
+        return get(file.getViewProvider().getVirtualFile(), file.getViewProvider().getContents());
+    }
+
+    public static int get(@Nullable VirtualFile file) {
+        if (file == null) {
+            return ANGLE;
+        }
+        Detected cached = file.getUserData(KEY);
+        if (cached != null) {
+            return cached.syntax;
+        }
+        Document document = FileDocumentManager.getInstance().getDocument(file);
+        return document != null ? get(file, document.getImmutableCharSequence()) : ANGLE;
+    }
+
+    public static int get(@NotNull Document document) {
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        return file != null ? get(file, document.getImmutableCharSequence()) : detect(document.getCharsSequence());
+    }
+
+    // For indexers, which see the file's content but must not load its document: the file's syntax if it is
+    // known, otherwise the one detected from the content
+    public static int getKnownOrDetect(@NotNull VirtualFile file, @NotNull CharSequence content) {
+        Detected cached = file.getUserData(KEY);
+        return cached != null ? cached.syntax : detect(content);
+    }
+
+    private static int get(@Nullable VirtualFile file, @NotNull CharSequence text) {
+        Detected cached = file != null ? file.getUserData(KEY) : null;
+        if (cached != null) {
+            return cached.syntax;
+        }
+        Detected detected = Detected.find(text, findTag(text, 0, text.length()),
+                findInterpolation(text, 0, text.length()));
+        if (file != null) {
+            file.putUserData(KEY, detected);
+        }
+        return detected.syntax;
+    }
+
+    public static int detect(@NotNull CharSequence text) {
+        return Detected.find(text, findTag(text, 0, text.length()), findInterpolation(text, 0, text.length())).syntax;
+    }
+
+    /**
+     * Updates the file's syntax after an edit of its document and returns true if it changed. A first tag or
+     * interpolation that ends before the edit stays the first one. Otherwise the first one is looked for from just
+     * before the edit: up to the end of the text if there was one, since it may have moved, and only through the
+     * changed text if there was none, since a new one has to be there.
+     */
+    static boolean documentChanged(@NotNull VirtualFile file, @NotNull CharSequence text, int offset, int newLength) {
+        Detected old = file.getUserData(KEY);
+        if (old == null) {
+            return false;
+        }
+        boolean keepTag = old.tagAt >= 0 && old.tagAt + LOOKAHEAD <= offset;
+        boolean keepInterpolation = old.interpolationAt >= 0 && old.interpolationAt + LOOKAHEAD <= offset;
+        if (keepTag && keepInterpolation) {
+            return false;
+        }
+        int from = Math.max(0, offset - LOOKAHEAD);
+        int changeEnd = Math.min(text.length(), offset + newLength + LOOKAHEAD);
+        int tagAt = keepTag ? old.tagAt : findTag(text, from, old.tagAt >= 0 ? text.length() : changeEnd);
+        int interpolationAt = keepInterpolation ? old.interpolationAt :
+                findInterpolation(text, from, old.interpolationAt >= 0 ? text.length() : changeEnd);
+        Detected updated = Detected.find(text, tagAt, interpolationAt);
+        file.putUserData(KEY, updated);
+        return updated.syntax != old.syntax;
+    }
+
+    // Offset of the first "<#", "</#", "<@" or "</@" (or their square bracket forms) between the offsets, or -1
+    private static int findTag(CharSequence text, int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            char c = text.charAt(i);
+            if ((c == '<' || c == '[') && isTagStart(text, i + 1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Offset of the first "${" or "[=" between the offsets, or -1
+    private static int findInterpolation(CharSequence text, int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            char c = text.charAt(i);
+            char next = text.charAt(i + 1);
+            if (c == '$' && next == '{' || c == '[' && next == '=') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isTagStart(CharSequence text, int position) {
+        if (position < text.length() && text.charAt(position) == '/') {
+            position++;
+        }
+        return position < text.length() && (text.charAt(position) == '#' || text.charAt(position) == '@');
+    }
+
+    // Where the first tag and interpolation are, -1 if there is none, and the syntax they give
+    private static final class Detected {
+        final int tagAt;
+        final int interpolationAt;
+        final int syntax;
+
+        private Detected(int tagAt, int interpolationAt, int syntax) {
+            this.tagAt = tagAt;
+            this.interpolationAt = interpolationAt;
+            this.syntax = syntax;
+        }
+
+        static Detected find(CharSequence text, int tagAt, int interpolationAt) {
+            int syntax = ANGLE;
+            if (tagAt >= 0 && text.charAt(tagAt) == '[') {
+                syntax |= SQUARE_TAGS;
+            }
+            if (interpolationAt >= 0 && text.charAt(interpolationAt) == '[') {
+                syntax |= SQUARE_INTERPOLATION;
+            }
+            return new Detected(tagAt, interpolationAt, syntax);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.ennic.freemarker.lexer;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.EditorHighlighterFactory;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.FileContentUtilCore;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps each template's {@link FreeMarkerSyntax} in step with its document. Registered to run before the
+ * other document listeners, so that they see the syntax of the new text.
+ * <p>
+ * When the syntax changes, the file is reparsed and its editors get a new highlighter, since both lex with
+ * the syntax they were created with.
+ */
+public class FreeMarkerSyntaxUpdater implements DocumentListener {
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        Document document = event.getDocument();
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (file != null && FreeMarkerSyntax.documentChanged(file, document.getImmutableCharSequence(),
+                event.getOffset(), event.getNewLength())) {
+            ApplicationManager.getApplication().invokeLater(() -> syntaxChanged(file, document));
+        }
+    }
+
+    private static void syntaxChanged(VirtualFile file, Document document) {
+        if (!file.isValid()) {
+            return;
+        }
+        FileContentUtilCore.reparseFiles(file);
+        for (Editor editor : EditorFactory.getInstance().getEditors(document)) {
+            if (editor instanceof EditorEx && !editor.isDisposed()) {
+                ((EditorEx) editor).setHighlighter(
+                        EditorHighlighterFactory.getInstance().createEditorHighlighter(editor.getProject(), file));
+            }
+        }
+    }
+}
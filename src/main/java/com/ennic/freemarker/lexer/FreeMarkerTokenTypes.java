@@ -1,24 +1,29 @@
 package com.ennic.freemarker.lexer;
 
 import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
 
 public interface FreeMarkerTokenTypes {
-    IElementType TEXT = new FreeMarkerElementType("TEXT");
+    IElementType TEMPLATE_TEXT = new FreeMarkerElementType("TEMPLATE_TEXT"); // markup, parsed by the template data language
+    IElementType TEXT = new FreeMarkerElementType("TEXT"); // whitespace and other characters inside FreeMarker constructs
     IElementType DIRECTIVE_START = new FreeMarkerElementType("DIRECTIVE_START"); // <#
     IElementType DIRECTIVE_CLOSING = new FreeMarkerElementType("DIRECTIVE_CLOSING"); // </#
+    IElementType MACRO_CALL_START = new FreeMarkerElementType("MACRO_CALL_START"); // <@
+    IElementType MACRO_CALL_CLOSING = new FreeMarkerElementType("MACRO_CALL_CLOSING"); // </@
     IElementType DIRECTIVE_END = new FreeMarkerElementType("DIRECTIVE_END"); // >
+    IElementType EMPTY_DIRECTIVE_END = new FreeMarkerElementType("EMPTY_DIRECTIVE_END"); // />
     IElementType INTERPOLATION_START = new FreeMarkerElementType("INTERPOLATION_START"); // ${
     IElementType INTERPOLATION_END = new FreeMarkerElementType("INTERPOLATION_END"); // }
-    IElementType COMMENT_START = new FreeMarkerElementType("COMMENT_START"); // <#--
-    IElementType COMMENT_END = new FreeMarkerElementType("COMMENT_END"); // -->
-    IElementType COMMENT_TODO = new FreeMarkerElementType("COMMENT_TODO"); //  "todo"
+    IElementType COMMENT = new FreeMarkerElementType("COMMENT"); // <#-- ... -->
     IElementType FUNCTION_CALL = new FreeMarkerElementType("FUNCTION_CALL"); // function calls
     IElementType IDENTIFIER = new FreeMarkerElementType("IDENTIFIER");
     IElementType STRING = new FreeMarkerElementType("STRING");
     IElementType NUMBER = new FreeMarkerElementType("NUMBER");
-    IElementType KEYWORD = new FreeMarkerElementType("KEYWORD");
+    IElementType KEYWORD = new FreeMarkerElementType("KEYWORD"); // as, in, using, true, gt, ...
+    IElementType DIRECTIVE_NAME = new FreeMarkerElementType("DIRECTIVE_NAME"); // if in <#if
+    IElementType BUILTIN = new FreeMarkerElementType("BUILTIN"); // upper_case in ?upper_case
     IElementType OPERATOR = new FreeMarkerElementType("OPERATOR");
-    IElementType HTML_TAG_START = new FreeMarkerElementType("HTML_TAG_START");
-    IElementType HTML_TAG_END = new FreeMarkerElementType("HTML_TAG_END");
-    IElementType HTML_TAG_CONTENT = new FreeMarkerElementType("HTML_TAG_CONTENT");
+
+    // Where a tag or an interpolation that is missing its end stops, for the parser and the headless linter alike
+    TokenSet TAG_STARTS = TokenSet.create(DIRECTIVE_START, DIRECTIVE_CLOSING, MACRO_CALL_START, MACRO_CALL_CLOSING);
 }
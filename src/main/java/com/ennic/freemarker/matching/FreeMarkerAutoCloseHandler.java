@@ -0,0 +1,128 @@
+package com.ennic.freemarker.matching;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.codeInsight.editorActions.TypedHandlerDelegate;
+import com.intellij.lang.injection.InjectedLanguageManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorModificationUtil;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.xml.XmlTokenType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Inserts </#list> after a typed <#list ...>, and completes a typed </ to the end tag of the innermost
+ * open directive. The open directives come from {@link FreeMarkerBlockPairs}, which the edit has already
+ * updated incrementally, so typing neither commits the document nor parses it. Whether the </ is template
+ * text, rather than part of a comment, string or expression, and whether it closes markup opened inside the
+ * directive instead, comes from the editor's highlighter, which has already relexed the edit too.
+ */
+public class FreeMarkerAutoCloseHandler extends TypedHandlerDelegate {
+    private static final Set<String> VOID_ELEMENTS = Set.of(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "source", "track", "wbr");
+
+    @NotNull
+    @Override
+    public Result charTyped(char c, @NotNull Project project, @NotNull Editor editor, @NotNull PsiFile file) {
+        if (c != '>' && c != ']' && c != '/') {
+            return Result.CONTINUE;
+        }
+        if (file.getViewProvider().getBaseLanguage() != FreeMarkerLanguage.INSTANCE || FreeMarkerSettings.isLargeFile(file) ||
+                InjectedLanguageManager.getInstance(project).isInjectedFragment(file)) {
+            return Result.CONTINUE;
+        }
+        Document document = editor.getDocument();
+        CharSequence text = document.getImmutableCharSequence();
+        int offset = editor.getCaretModel().getOffset();
+        FreeMarkerBlockPairs pairs = FreeMarkerBlockPairs.forDocument(document);
+
+        if (c != '/') {
+            TextRange startTag = pairs.findUnclosedBlock(offset);
+            if (startTag == null) {
+                return Result.CONTINUE;
+            }
+            EditorModificationUtil.insertStringAtCaret(editor, endTag(text, startTag), false, 0);
+            return Result.STOP;
+        }
+
+        if (offset < 2 || text.charAt(offset - 2) != '<' && text.charAt(offset - 2) != '[' ||
+                !isTemplateText(editor, offset - 2)) {
+            return Result.CONTINUE;
+        }
+        TextRange startTag = pairs.findOpenBlock(offset - 2);
+        // Only a tag of the directive's own syntax, and not when markup opened inside the directive is what </ closes
+        if (startTag == null || text.charAt(startTag.getStartOffset()) != text.charAt(offset - 2) ||
+                text.charAt(offset - 2) == '<' && hasOpenMarkup(editor, startTag.getEndOffset(), offset - 2)) {
+            return Result.CONTINUE;
+        }
+        String endTag = endTag(text, startTag);
+        // The typed "</" is already in the document
+        EditorModificationUtil.insertStringAtCaret(editor, endTag.substring(2));
+        return Result.STOP;
+    }
+
+    // "</#name>" or "[/#name]" for the "<#name" or "[#name" part of a start tag
+    private static String endTag(CharSequence text, TextRange startTag) {
+        char open = text.charAt(startTag.getStartOffset());
+        CharSequence name = text.subSequence(startTag.getStartOffset() + 2, startTag.getEndOffset());
+        return open + "/#" + name + (open == '<' ? ">" : "]");
+    }
+
+    // Whether the markup tags highlighted between the offsets leave an element open; end tags close up to the
+    // innermost element of their name
+    private static boolean hasOpenMarkup(Editor editor, int start, int end) {
+        if (!(editor instanceof EditorEx)) {
+            return false;
+        }
+        CharSequence text = editor.getDocument().getImmutableCharSequence();
+        Deque<String> open = new ArrayDeque<>();
+        IElementType tagStart = null;
+        String name = null;
+        for (HighlighterIterator iterator = ((EditorEx) editor).getHighlighter().createIterator(start);
+             !iterator.atEnd() && iterator.getStart() < end; iterator.advance()) {
+            IElementType tokenType = iterator.getTokenType();
+            if (tokenType == XmlTokenType.XML_START_TAG_START || tokenType == XmlTokenType.XML_END_TAG_START) {
+                tagStart = tokenType;
+                name = null;
+            } else if (tagStart != null && name == null &&
+                    (tokenType == XmlTokenType.XML_NAME || tokenType == XmlTokenType.XML_TAG_NAME)) {
+                name = text.subSequence(iterator.getStart(), iterator.getEnd()).toString().toLowerCase();
+            } else if (tokenType == XmlTokenType.XML_EMPTY_ELEMENT_END) {
+                tagStart = null;
+            } else if (tokenType == XmlTokenType.XML_TAG_END && tagStart != null && name != null) {
+                if (tagStart == XmlTokenType.XML_START_TAG_START) {
+                    if (!VOID_ELEMENTS.contains(name)) {
+                        open.push(name);
+                    }
+                } else if (open.contains(name)) {
+                    while (!open.pop().equals(name)) {
+                        // Elements left open inside the closed one end with it
+                    }
+                }
+                tagStart = null;
+            }
+        }
+        return !open.isEmpty();
+    }
+
+    // Template text is lexed by the data language's layer, or left as TEMPLATE_TEXT when there is none
+    private static boolean isTemplateText(Editor editor, int offset) {
+        if (!(editor instanceof EditorEx)) {
+            return true;
+        }
+        IElementType tokenType = ((EditorEx) editor).getHighlighter().createIterator(offset).getTokenType();
+        return tokenType == null || tokenType == FreeMarkerTokenTypes.TEMPLATE_TEXT ||
+                tokenType.getLanguage() != FreeMarkerLanguage.INSTANCE;
+    }
+}
@@ -0,0 +1,456 @@
+package com.ennic.freemarker.matching;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.parser.FreeMarkerDirectives;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.ennic.freemarker.lexer.FreeMarkerTokenTypes.*;
+
+/**
+ * Every directive tag of a document, sorted by offset, and the groups of tags that belong together:
+ * a block's start and end tag and its clauses such as <#else> or <#sep>.
+ * <p>
+ * The tags are kept in a gap buffer that follows the edits: tags before the gap hold document offsets, tags after
+ * it hold offsets from the end of the document, so an edit shifts no tag. After an edit only the text from the last
+ * tag before the edit up to the first unchanged tag after it is lexed again, and the groups are redone from there
+ * until the blocks open after a tag are the ones that were open after it before the edit. Each tag keeps the blocks
+ * open after it, so every lookup is a binary search.
+ */
+public final class FreeMarkerBlockPairs {
+    private static final Key<FreeMarkerBlockPairs> KEY = Key.create("freemarker.block.pairs");
+
+    private Tag[] buffer = new Tag[16];
+    private int gapStart;
+    private int gapEnd = buffer.length;
+    // The document length that the offsets of the tags after the gap count back from
+    private int length;
+
+    // The document's syntax, which all tags were lexed with
+    private final int syntax;
+
+    private FreeMarkerBlockPairs(@NotNull CharSequence text, int syntax) {
+        this.syntax = syntax;
+        update(text, 0, 0, text.length());
+    }
+
+    @NotNull
+    public static FreeMarkerBlockPairs forDocument(@NotNull Document document) {
+        synchronized (KEY) {
+            FreeMarkerBlockPairs pairs = document.getUserData(KEY);
+            if (pairs == null) {
+                pairs = new FreeMarkerBlockPairs(document.getImmutableCharSequence(), FreeMarkerSyntax.get(document));
+                document.putUserData(KEY, pairs);
+            }
+            return pairs;
+        }
+    }
+
+    // Documents that were never queried have no index and nothing to update. An edit that changes the syntax
+    // changes how every tag is lexed, so the index is built again.
+    static void documentChanged(@NotNull Document document, int offset, int oldLength, int newLength) {
+        synchronized (KEY) {
+            FreeMarkerBlockPairs pairs = document.getUserData(KEY);
+            if (pairs == null) {
+                return;
+            }
+            int syntax = FreeMarkerSyntax.get(document);
+            if (syntax != pairs.syntax) {
+                document.putUserData(KEY, new FreeMarkerBlockPairs(document.getImmutableCharSequence(), syntax));
+            } else {
+                pairs.update(document.getImmutableCharSequence(), offset, oldLength, newLength);
+            }
+        }
+    }
+
+    /**
+     * The "<#name" parts of the tags grouped with the tag at the offset, or null if the offset is not
+     * in a tag that belongs to a block.
+     */
+    @Nullable
+    public synchronized List<TextRange> findPairedTags(int offset) {
+        Tag tag = findTag(offset);
+        Tag block = tag != null ? groupOf(tag) : null;
+        if (block == null || block.endTag == null && block.clauses == null) {
+            return null;
+        }
+        List<Tag> members = new ArrayList<>();
+        members.add(block);
+        if (block.clauses != null) {
+            members.addAll(block.clauses);
+        }
+        if (block.endTag != null) {
+            members.add(block.endTag);
+        }
+        // A clause grouped again after an edit is appended to its block's clauses, not put back in place
+        members.sort(Comparator.comparingInt(this::start));
+        List<TextRange> ranges = new ArrayList<>(members.size());
+        for (Tag member : members) {
+            ranges.add(new TextRange(start(member), start(member) + member.nameLength));
+        }
+        return ranges;
+    }
+
+    /**
+     * The "<#name" part of a block's start tag that ends exactly at the offset, if the block or an enclosing
+     * block of the same name has no end tag; null otherwise.
+     */
+    @Nullable
+    public synchronized TextRange findUnclosedBlock(int offset) {
+        int index = firstTagAtOrAfter(offset) - 1;
+        if (index < 0) {
+            return null;
+        }
+        Tag tag = tag(index);
+        if (tag.closing || tag.empty || !tag.complete || start(tag) + tag.tagLength != offset ||
+                !FreeMarkerDirectives.isRequiredBlock(tag.name)) {
+            return null;
+        }
+        // A new block inside one of the same name takes over that block's end tag
+        for (Open open = openAt(offset); open != null; open = open.next) {
+            // The block's own end tag, not its group's: a new <#items> in a closed <#list> still needs one
+            if (open.block.name.equals(tag.name) && open.block.endTag == null) {
+                return new TextRange(start(tag), start(tag) + tag.nameLength);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The "<#name" part of the start tag of the innermost block still open at the offset, or null.
+     * Blocks that may end without an end tag, like <#sep>, are skipped.
+     */
+    @Nullable
+    public synchronized TextRange findOpenBlock(int offset) {
+        for (Open open = openAt(offset); open != null; open = open.next) {
+            if (FreeMarkerDirectives.isRequiredBlock(open.block.name)) {
+                return new TextRange(start(open.block), start(open.block) + open.block.nameLength);
+            }
+        }
+        return null;
+    }
+
+    // Blocks started before the offset and not ended before it, innermost first: those open after the last tag
+    // starting before the offset, or after the tag before it when the offset is still inside that end tag
+    @Nullable
+    private Open openAt(int offset) {
+        int index = firstTagAtOrAfter(offset) - 1;
+        if (index >= 0 && tag(index).closing && start(tag(index)) + tag(index).tagLength > offset) {
+            index--;
+        }
+        return index >= 0 ? tag(index).open : null;
+    }
+
+    // The start tag of the block whose group the tag is highlighted with, or null
+    @Nullable
+    private static Tag groupOf(Tag tag) {
+        if (tag.closing || !opensBlock(tag)) {
+            return tag.owner;
+        }
+        // A clause left open, like a <#sep> ended by its list, belongs only to the enclosing block
+        return tag.endTag == null && tag.clauses == null && tag.owner != null && tag.owner.endTag != null ?
+                tag.owner :
+                tag;
+    }
+
+    private static boolean opensBlock(Tag tag) {
+        return !tag.closing && !tag.empty && (FreeMarkerDirectives.isRequiredBlock(tag.name) ||
+                FreeMarkerDirectives.isOptionalBlock(tag.name) && tag.assignment != FreeMarkerDirectives.ASSIGNMENT);
+    }
+
+    @Nullable
+    private Tag findTag(int offset) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Tag tag = tag(middle);
+            if (start(tag) + tag.tagLength < offset) {
+                low = middle + 1;
+            } else if (start(tag) > offset) {
+                high = middle - 1;
+            } else {
+                // The caret right after one tag and right before the next one is on the next one
+                if (start(tag) + tag.tagLength == offset && middle + 1 < size() && start(tag(middle + 1)) == offset) {
+                    return tag(middle + 1);
+                }
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void update(@NotNull CharSequence text, int offset, int oldLength, int newLength) {
+        int delta = newLength - oldLength;
+        int newChangeEnd = offset + newLength;
+
+        // Restart at the last restartable tag starting before the change: the text before it is unchanged,
+        // so the lexer state recorded there is still valid. The tag before it must be complete, since one without
+        // its ">" runs up to the next tag and can take in the changed text. Until the gap is moved to the restart,
+        // offsets are the old ones.
+        FreeMarkerLexer lexer = new FreeMarkerLexer(false, syntax);
+        int keep = firstTagAtOrAfter(offset);
+        while (keep > 0 && (!lexer.isRestartableState(tag(keep - 1).state) || keep > 1 && !tag(keep - 2).complete)) {
+            keep--;
+        }
+        int restartOffset = 0;
+        int restartState = 0;
+        if (keep > 0) {
+            keep--;
+            restartOffset = start(tag(keep));
+            restartState = tag(keep).state;
+        }
+        int resume = firstTagAtOrAfter(offset + oldLength);
+        moveGap(keep);
+
+        lexer.start(text, restartOffset, text.length(), restartState);
+        List<Tag> lexed = new ArrayList<>();
+        Tag current = null;
+        IElementType previous = null;
+        boolean converged = false;
+        while (lexer.getTokenType() != null) {
+            IElementType tokenType = lexer.getTokenType();
+            if (tokenType == DIRECTIVE_START || tokenType == DIRECTIVE_CLOSING) {
+                int start = lexer.getTokenStart();
+                if (start >= newChangeEnd) {
+                    // Past the change, the first old tag met again in the same lexer state ends the relexing
+                    while (resume < size() && start(tag(resume)) + delta < start) {
+                        resume++;
+                    }
+                    if (resume < size() && start(tag(resume)) + delta == start &&
+                            tag(resume).state == lexer.getState() && lexer.isRestartableState(lexer.getState())) {
+                        converged = true;
+                        break;
+                    }
+                }
+                current = new Tag(start, lexer.getState(), tokenType == DIRECTIVE_CLOSING);
+                lexed.add(current);
+            } else if (current != null) {
+                if ((previous == DIRECTIVE_START || previous == DIRECTIVE_CLOSING) &&
+                        FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(tokenType)) {
+                    current.name = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+                    current.nameLength = lexer.getTokenEnd() - current.start;
+                } else if (tokenType == EMPTY_DIRECTIVE_END) {
+                    current.empty = true;
+                } else if (current.name != null && tokenType != DIRECTIVE_END) {
+                    current.assignment = FreeMarkerDirectives.readAssignment(current.assignment, tokenType, text,
+                            lexer.getTokenStart(), lexer.getTokenEnd());
+                }
+            }
+            if (current != null) {
+                current.tagLength = lexer.getTokenEnd() - current.start;
+                if (tokenType == DIRECTIVE_END || tokenType == EMPTY_DIRECTIVE_END) {
+                    current.complete = true;
+                    current = null;
+                }
+            }
+            previous = tokenType;
+            lexer.advance();
+        }
+        if (!converged) {
+            resume = size();
+        }
+        lexed.removeIf(tag -> tag.name == null);
+
+        // Tags before the change that lexed the same keep their place in the groups
+        int same = 0;
+        while (same < lexed.size() && keep + same < resume && isSame(tag(keep + same), lexed.get(same), offset)) {
+            same++;
+        }
+        moveGap(keep + same);
+        length = text.length();
+
+        int removed = resume - keep - same;
+        for (int i = 0; i < removed; i++) {
+            detach(buffer[gapEnd]);
+            buffer[gapEnd++] = null;
+        }
+        for (Tag tag : lexed.subList(same, lexed.size())) {
+            if (gapStart == gapEnd) {
+                grow();
+            }
+            buffer[gapStart++] = tag;
+        }
+        if (removed > 0 || same < lexed.size()) {
+            regroup(keep + same, lexed.size() - same);
+        }
+    }
+
+    // An old tag, not yet moved before the gap, that ends before the change and lexed again unchanged
+    private boolean isSame(Tag old, Tag lexed, int changeOffset) {
+        return start(old) == lexed.start && lexed.start + lexed.tagLength <= changeOffset &&
+                old.state == lexed.state && old.closing == lexed.closing && old.name.equals(lexed.name) &&
+                old.nameLength == lexed.nameLength && old.tagLength == lexed.tagLength &&
+                old.assignment == lexed.assignment && old.empty == lexed.empty && old.complete == lexed.complete;
+    }
+
+    // Groups the inserted tags starting at the index, then the old tags after them until the blocks open after
+    // one of them are again the blocks that were open after it: from there on the groups are unchanged
+    private void regroup(int index, int inserted) {
+        Open open = index > 0 ? tag(index - 1).open : null;
+        for (int i = index; i < size(); i++) {
+            Tag tag = tag(i);
+            Open before = tag.open;
+            boolean old = i >= index + inserted;
+            if (old) {
+                detach(tag);
+            }
+            open = attach(tag, open);
+            tag.open = open;
+            if (old && isSameBlocks(open, before)) {
+                return;
+            }
+        }
+    }
+
+    // Adds the tag to the group of the innermost open block it ends or continues, and returns the blocks open
+    // after it. An end tag pops up to the innermost block with its name, ending the blocks left open inside it;
+    // an end tag without a block stays ungrouped.
+    private static Open attach(Tag tag, @Nullable Open open) {
+        if (tag.closing) {
+            for (Open block = open; block != null; block = block.next) {
+                if (block.block.name.equals(tag.name)) {
+                    tag.owner = block.block;
+                    block.block.endTag = tag;
+                    return block.next;
+                }
+            }
+            return open;
+        }
+        if (open != null && FreeMarkerDirectives.isClauseOf(tag.name, open.block.name)) {
+            tag.owner = open.block;
+            if (open.block.clauses == null) {
+                open.block.clauses = new ArrayList<>();
+            }
+            open.block.clauses.add(tag);
+        }
+        // A clause that is also a block, like <#items>, is highlighted with its own end tag
+        return opensBlock(tag) ? new Open(tag, open) : open;
+    }
+
+    private static void detach(Tag tag) {
+        Tag block = tag.owner;
+        if (block == null) {
+            return;
+        }
+        if (!tag.closing && block.clauses != null) {
+            block.clauses.remove(tag);
+            if (block.clauses.isEmpty()) {
+                block.clauses = null;
+            }
+        } else if (tag.closing && block.endTag == tag) {
+            block.endTag = null;
+        }
+        tag.owner = null;
+    }
+
+    private static boolean isSameBlocks(@Nullable Open open, @Nullable Open other) {
+        while (open != other) {
+            if (open == null || other == null || open.block != other.block) {
+                return false;
+            }
+            open = open.next;
+            other = other.next;
+        }
+        return true;
+    }
+
+    private int firstTagAtOrAfter(int offset) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (start(tag(middle)) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int size() {
+        return buffer.length - gapEnd + gapStart;
+    }
+
+    private Tag tag(int index) {
+        return buffer[index < gapStart ? index : index + gapEnd - gapStart];
+    }
+
+    // A tag after the gap starts before the end of the document, so its offset from the end is negative
+    private int start(Tag tag) {
+        return tag.start < 0 ? tag.start + length : tag.start;
+    }
+
+    // Tags crossing the gap switch between counting from the start and counting from the end of the document
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            Tag tag = buffer[--gapStart];
+            buffer[gapStart] = null;
+            tag.start -= length;
+            buffer[--gapEnd] = tag;
+        }
+        while (gapStart < index) {
+            Tag tag = buffer[gapEnd];
+            buffer[gapEnd++] = null;
+            tag.start += length;
+            buffer[gapStart++] = tag;
+        }
+    }
+
+    private void grow() {
+        Tag[] grown = new Tag[buffer.length * 2];
+        int tail = buffer.length - gapEnd;
+        System.arraycopy(buffer, 0, grown, 0, gapStart);
+        System.arraycopy(buffer, gapEnd, grown, grown.length - tail, tail);
+        gapEnd = grown.length - tail;
+        buffer = grown;
+    }
+
+    private static class Tag {
+        // From the start of the document before the gap, from its end after the gap
+        int start;
+        int nameLength;
+        int tagLength;
+        final int state;
+        final boolean closing;
+        String name;
+        int assignment = FreeMarkerDirectives.TARGET;
+        boolean empty;
+        boolean complete;
+        // The blocks open after this tag
+        Open open;
+        // The block this end tag or clause belongs to
+        Tag owner;
+        // For a block's start tag, its end tag and clauses
+        Tag endTag;
+        List<Tag> clauses;
+
+        Tag(int start, int state, boolean closing) {
+            this.start = start;
+            this.state = state;
+            this.closing = closing;
+        }
+    }
+
+    // A stack of open blocks that shares its tail with the stacks of the tags before
+    private static class Open {
+        final Tag block;
+        final Open next;
+
+        Open(Tag block, Open next) {
+            this.block = block;
+            this.next = next;
+        }
+    }
+}
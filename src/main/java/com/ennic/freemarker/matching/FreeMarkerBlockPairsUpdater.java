@@ -0,0 +1,16 @@
+package com.ennic.freemarker.matching;
+
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Keeps the block pair index of every indexed document in step with its edits.
+ */
+public class FreeMarkerBlockPairsUpdater implements DocumentListener {
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        FreeMarkerBlockPairs.documentChanged(event.getDocument(), event.getOffset(), event.getOldLength(),
+                event.getNewLength());
+    }
+}
@@ -0,0 +1,40 @@
+package com.ennic.freemarker.matching;
+
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.lang.BracePair;
+import com.intellij.lang.PairedBraceMatcher;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Matches the delimiters of a single tag or interpolation. Start and end tags of a block are matched
+ * by {@link FreeMarkerPairedTagsHighlighterFactory}.
+ */
+public class FreeMarkerBraceMatcher implements PairedBraceMatcher {
+    private static final BracePair[] PAIRS = new BracePair[]{
+            new BracePair(FreeMarkerTokenTypes.DIRECTIVE_START, FreeMarkerTokenTypes.DIRECTIVE_END, false),
+            new BracePair(FreeMarkerTokenTypes.DIRECTIVE_CLOSING, FreeMarkerTokenTypes.DIRECTIVE_END, false),
+            new BracePair(FreeMarkerTokenTypes.DIRECTIVE_START, FreeMarkerTokenTypes.EMPTY_DIRECTIVE_END, false),
+            new BracePair(FreeMarkerTokenTypes.MACRO_CALL_START, FreeMarkerTokenTypes.DIRECTIVE_END, false),
+            new BracePair(FreeMarkerTokenTypes.MACRO_CALL_CLOSING, FreeMarkerTokenTypes.DIRECTIVE_END, false),
+            new BracePair(FreeMarkerTokenTypes.MACRO_CALL_START, FreeMarkerTokenTypes.EMPTY_DIRECTIVE_END, false),
+            new BracePair(FreeMarkerTokenTypes.INTERPOLATION_START, FreeMarkerTokenTypes.INTERPOLATION_END, false)
+    };
+
+    @Override
+    public BracePair @NotNull [] getPairs() {
+        return PAIRS;
+    }
+
+    @Override
+    public boolean isPairedBracesAllowedBeforeType(@NotNull IElementType lbraceType, @Nullable IElementType contextType) {
+        return true;
+    }
+
+    @Override
+    public int getCodeConstructStart(PsiFile file, int openingBraceOffset) {
+        return openingBraceOffset;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ennic.freemarker.matching;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.codeInsight.highlighting.HighlightUsagesHandlerBase;
+import com.intellij.codeInsight.highlighting.HighlightUsagesHandlerFactoryBase;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * With the caret on a directive tag, highlights the other tags of its block: <#if>, <#elseif>, <#else>, </#if>.
+ */
+public class FreeMarkerPairedTagsHighlighterFactory extends HighlightUsagesHandlerFactoryBase {
+
+    @Nullable
+    @Override
+    public HighlightUsagesHandlerBase<?> createHighlightUsagesHandler(@NotNull Editor editor, @NotNull PsiFile file,
+                                                                      @NotNull PsiElement target) {
+        if (file.getViewProvider().getBaseLanguage() != FreeMarkerLanguage.INSTANCE || FreeMarkerSettings.isLargeFile(file)) {
+            return null;
+        }
+        List<TextRange> tags = FreeMarkerBlockPairs.forDocument(editor.getDocument())
+                .findPairedTags(editor.getCaretModel().getOffset());
+        if (tags == null) {
+            return null;
+        }
+        return new HighlightUsagesHandlerBase<>(editor, file) {
+            @NotNull
+            @Override
+            public List<PsiElement> getTargets() {
+                return List.of(target);
+            }
+
+            @Override
+            protected void selectTargets(@NotNull List<? extends PsiElement> targets,
+                                         @NotNull Consumer<? super List<? extends PsiElement>> selectionConsumer) {
+                selectionConsumer.consume(targets);
+            }
+
+            @Override
+            public void computeUsages(@NotNull List<? extends PsiElement> targets) {
+                myReadUsages.addAll(tags);
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.ennic.freemarker.navigation;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.psi.FreeMarkerBinding;
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.psi.FreeMarkerFunctionBlock;
+import com.ennic.freemarker.psi.FreeMarkerMacroBlock;
+import com.intellij.lang.cacheBuilder.DefaultWordsScanner;
+import com.intellij.lang.cacheBuilder.WordsScanner;
+import com.intellij.lang.findUsages.FindUsagesProvider;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.TokenSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Find Usages for macros, functions and variables. Candidate files come from the word index
+ * built by {@link com.ennic.freemarker.index.FreeMarkerIdIndexer}, so only templates containing
+ * the name are parsed, and only the lazily parsed bodies that contain it.
+ */
+public class FreeMarkerFindUsagesProvider implements FindUsagesProvider {
+
+    // Words of code, comments and strings, for the searches that ask the provider rather than the id index
+    @Nullable
+    @Override
+    public WordsScanner getWordsScanner() {
+        return new DefaultWordsScanner(new FreeMarkerLexer(),
+                TokenSet.create(FreeMarkerTokenTypes.IDENTIFIER, FreeMarkerTokenTypes.FUNCTION_CALL),
+                TokenSet.create(FreeMarkerTokenTypes.COMMENT), TokenSet.create(FreeMarkerTokenTypes.STRING));
+    }
+
+    @Override
+    public boolean canFindUsagesFor(@NotNull PsiElement element) {
+        return element instanceof FreeMarkerDefinition || element instanceof FreeMarkerBinding;
+    }
+
+    @Nullable
+    @Override
+    public String getHelpId(@NotNull PsiElement element) {
+        return null;
+    }
+
+    @NotNull
+    @Override
+    public String getType(@NotNull PsiElement element) {
+        if (element instanceof FreeMarkerMacroBlock) {
+            return "macro";
+        } else if (element instanceof FreeMarkerFunctionBlock) {
+            return "function";
+        } else if (element instanceof FreeMarkerDefinition || element instanceof FreeMarkerBinding) {
+            return "variable";
+        }
+        return "";
+    }
+
+    @NotNull
+    @Override
+    public String getDescriptiveName(@NotNull PsiElement element) {
+        String name = element instanceof FreeMarkerDefinition ? ((FreeMarkerDefinition) element).getName() :
+                element instanceof FreeMarkerBinding ? ((FreeMarkerBinding) element).getName() : null;
+        return name != null ? name : "";
+    }
+
+    @NotNull
+    @Override
+    public String getNodeText(@NotNull PsiElement element, boolean useFullName) {
+        return getDescriptiveName(element);
+    }
+}
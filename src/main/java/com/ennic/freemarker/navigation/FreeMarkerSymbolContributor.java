@@ -0,0 +1,47 @@
+package com.ennic.freemarker.navigation;
+
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.stubs.FreeMarkerFunctionIndex;
+import com.ennic.freemarker.stubs.FreeMarkerMacroIndex;
+import com.ennic.freemarker.stubs.FreeMarkerVariableIndex;
+import com.intellij.navigation.ChooseByNameContributorEx;
+import com.intellij.navigation.NavigationItem;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.FindSymbolParameters;
+import com.intellij.util.indexing.IdFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Go to Symbol over macro, function and global variable definitions, answered from the stub indexes.
+ */
+public class FreeMarkerSymbolContributor implements ChooseByNameContributorEx {
+    private static final List<StubIndexKey<String, FreeMarkerDefinition>> KEYS =
+            List.of(FreeMarkerMacroIndex.KEY, FreeMarkerFunctionIndex.KEY, FreeMarkerVariableIndex.KEY);
+
+    @Override
+    public void processNames(@NotNull Processor<? super String> processor, @NotNull GlobalSearchScope scope,
+                             @Nullable IdFilter filter) {
+        for (StubIndexKey<String, FreeMarkerDefinition> key : KEYS) {
+            if (!StubIndex.getInstance().processAllKeys(key, processor, scope, filter)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void processElementsWithName(@NotNull String name, @NotNull Processor<? super NavigationItem> processor,
+                                        @NotNull FindSymbolParameters parameters) {
+        for (StubIndexKey<String, FreeMarkerDefinition> key : KEYS) {
+            if (!StubIndex.getInstance().processElements(key, name, parameters.getProject(), parameters.getSearchScope(),
+                    parameters.getIdFilter(), FreeMarkerDefinition.class, processor)) {
+                return;
+            }
+        }
+    }
+}
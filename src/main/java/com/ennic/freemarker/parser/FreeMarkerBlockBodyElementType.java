@@ -0,0 +1,116 @@
+package com.ennic.freemarker.parser;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.psi.FreeMarkerPsiUtil;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.IReparseableElementType;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static com.ennic.freemarker.lexer.FreeMarkerTokenTypes.*;
+
+/**
+ * Content between a start and an end tag. It is parsed only when first accessed,
+ * and an edit inside it reparses just this body when the edit keeps it self-contained.
+ */
+public class FreeMarkerBlockBodyElementType extends IReparseableElementType {
+
+    public FreeMarkerBlockBodyElementType(@NotNull @NonNls String debugName) {
+        super(debugName, FreeMarkerLanguage.INSTANCE);
+    }
+
+    // The new text must close every directive it opens, close no directive it did not open,
+    // not add a clause that would split the enclosing block into more bodies,
+    // and not leave a tag, comment, interpolation or string open at its end
+    @Override
+    public boolean isParsable(@Nullable ASTNode parent, @NotNull CharSequence buffer,
+                              @NotNull Language fileLanguage, @NotNull Project project) {
+        String blockName = parent != null ?
+                FreeMarkerPsiUtil.getDirectiveName(parent.findChildByType(FreeMarkerElementTypes.START_TAG)) : null;
+        FreeMarkerLexer lexer = new FreeMarkerLexer(false, getSyntax(parent != null ? parent.getPsi() : null));
+        lexer.start(buffer);
+
+        Deque<String> open = new ArrayDeque<>();
+        IElementType previous = null;
+        String startTagName = null;
+        int assignment = FreeMarkerDirectives.TARGET;
+        while (lexer.getTokenType() != null) {
+            IElementType tokenType = lexer.getTokenType();
+            if (tokenType == DIRECTIVE_START || tokenType == DIRECTIVE_CLOSING) {
+                startTagName = null;
+                assignment = FreeMarkerDirectives.TARGET;
+            } else if (previous == DIRECTIVE_START && FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(tokenType)) {
+                startTagName = buffer.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+            } else if (previous == DIRECTIVE_CLOSING && FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(tokenType)) {
+                if (!close(open, buffer.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString())) {
+                    return false;
+                }
+            } else if (startTagName != null && tokenType != DIRECTIVE_END && tokenType != EMPTY_DIRECTIVE_END) {
+                assignment = FreeMarkerDirectives.readAssignment(assignment, tokenType, buffer,
+                        lexer.getTokenStart(), lexer.getTokenEnd());
+            } else if ((tokenType == DIRECTIVE_END || tokenType == EMPTY_DIRECTIVE_END) && startTagName != null &&
+                    open.isEmpty() && blockName != null && FreeMarkerDirectives.isBodySeparator(startTagName, blockName)) {
+                return false;
+            } else if (tokenType == DIRECTIVE_END && startTagName != null) {
+                if (FreeMarkerDirectives.isRequiredBlock(startTagName) ||
+                        FreeMarkerDirectives.isOptionalBlock(startTagName) &&
+                                assignment != FreeMarkerDirectives.ASSIGNMENT) {
+                    open.push(startTagName);
+                }
+                startTagName = null;
+            } else if (tokenType == EMPTY_DIRECTIVE_END) {
+                startTagName = null;
+            }
+            previous = tokenType;
+            lexer.advance();
+        }
+
+        for (String name : open) {
+            if (FreeMarkerDirectives.isRequiredBlock(name)) {
+                return false;
+            }
+        }
+        return FreeMarkerLexer.isTopLevelState(lexer.getState());
+    }
+
+    // A body is lexed on its own, so the file's syntax has to be given to the lexer
+    @Override
+    protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(psi.getProject(), chameleon,
+                new FreeMarkerLexer(false, getSyntax(psi)), getLanguage(), chameleon.getChars());
+        return new FreeMarkerParser().parse(this, builder).getFirstChildNode();
+    }
+
+    private static int getSyntax(@Nullable PsiElement element) {
+        PsiFile file = element != null ? element.getContainingFile() : null;
+        return file != null ? FreeMarkerSyntax.get(file) : FreeMarkerSyntax.DETECT;
+    }
+
+    private static boolean close(Deque<String> open, String name) {
+        if (!open.contains(name)) {
+            return false;
+        }
+        while (true) {
+            String innermost = open.pop();
+            if (innermost.equals(name)) {
+                return true;
+            }
+            if (FreeMarkerDirectives.isRequiredBlock(innermost)) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ennic.freemarker.parser;
+
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which directives open a block that is closed by a matching end tag.
+ */
+public final class FreeMarkerDirectives {
+
+    // Always closed by an end tag, in both the lower case and the camelCase spelling
+    private static final Set<String> REQUIRED_BLOCKS = Set.of(
+            "if", "list", "items", "macro", "function", "switch", "attempt", "compress", "escape", "noescape",
+            "autoesc", "noautoesc", "outputformat", "noparse",
+            "noEscape", "autoEsc", "noAutoEsc", "outputFormat", "noParse");
+
+    // Closed by an end tag only in some forms: <#sep> may end with its list, <#assign x>...</#assign> captures output
+    private static final Set<String> OPTIONAL_BLOCKS = Set.of("sep", "assign", "global", "local");
+
+    // Directives that continue the enclosing block, mapped to the blocks they can appear in
+    private static final Map<String, Set<String>> CLAUSES = Map.of(
+            "else", Set.of("if", "list"),
+            "elseif", Set.of("if"),
+            "elseIf", Set.of("if"),
+            "items", Set.of("list"),
+            "sep", Set.of("list", "items"),
+            "recover", Set.of("attempt"),
+            "case", Set.of("switch"),
+            "on", Set.of("switch"),
+            "default", Set.of("switch"));
+
+    // How far a start tag has been read towards telling <#assign x = 1> from the capturing <#assign x>
+    public static final int TARGET = 0; // nothing after the directive name yet
+    private static final int OPERATOR = 1; // the target name, an operator may follow
+    public static final int ASSIGNMENT = 2;
+    private static final int OTHER = 3;
+
+    private FreeMarkerDirectives() {
+    }
+
+    public static boolean isRequiredBlock(@NotNull String name) {
+        return REQUIRED_BLOCKS.contains(name);
+    }
+
+    public static boolean isOptionalBlock(@NotNull String name) {
+        return OPTIONAL_BLOCKS.contains(name);
+    }
+
+    public static boolean isClauseOf(@NotNull String clause, @NotNull String block) {
+        Set<String> blocks = CLAUSES.get(clause);
+        return blocks != null && blocks.contains(block);
+    }
+
+    // A clause that ends one body of the block and starts the next, like <#else>.
+    // <#items> and <#sep> are not separators, they can have end tags of their own.
+    public static boolean isBodySeparator(@NotNull String clause, @NotNull String block) {
+        return isClauseOf(clause, block) && !isRequiredBlock(clause) && !isOptionalBlock(clause);
+    }
+
+    // Reads the next token of a start tag after its name, starting from TARGET. Only a single =, or a compound
+    // operator such as += or ++, directly after the target name makes the tag an ASSIGNMENT, so the == of a
+    // comparison does not.
+    public static int readAssignment(int state, @NotNull IElementType tokenType, @NotNull CharSequence text,
+                                     int start, int end) {
+        if (state == ASSIGNMENT || state == OTHER) {
+            return state;
+        }
+        if (tokenType == FreeMarkerTokenTypes.TEXT && isBlank(text, start, end)) {
+            return state;
+        }
+        if (state == TARGET) {
+            return tokenType == FreeMarkerTokenTypes.IDENTIFIER || tokenType == FreeMarkerTokenTypes.STRING ?
+                    OPERATOR :
+                    OTHER;
+        }
+        if (tokenType != FreeMarkerTokenTypes.OPERATOR) {
+            return OTHER;
+        }
+        char operator = text.charAt(start);
+        char next = end < text.length() ? text.charAt(end) : 0;
+        if (operator == '=') {
+            return next != '=' ? ASSIGNMENT : OTHER;
+        }
+        if ("+-*/%".indexOf(operator) >= 0 && next == '=' || (operator == '+' || operator == '-') && next == operator) {
+            return ASSIGNMENT;
+        }
+        return OTHER;
+    }
+
+    private static boolean isBlank(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    public static IElementType blockType(@NotNull String name) {
+        return switch (name) {
+            case "if" -> FreeMarkerElementTypes.IF_BLOCK;
+            case "list" -> FreeMarkerElementTypes.LIST_BLOCK;
+            case "macro" -> FreeMarkerElementTypes.MACRO_BLOCK;
+            case "function" -> FreeMarkerElementTypes.FUNCTION_BLOCK;
+            case "assign", "global" -> FreeMarkerElementTypes.ASSIGNMENT;
+            default -> FreeMarkerElementTypes.BLOCK;
+        };
+    }
+
+    // Element type of a directive without a body
+    @NotNull
+    public static IElementType directiveType(@Nullable String name) {
+        return "assign".equals(name) || "global".equals(name) ?
+                FreeMarkerElementTypes.ASSIGNMENT :
+                FreeMarkerElementTypes.DIRECTIVE;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ennic.freemarker.parser;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.lexer.FreeMarkerElementType;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.psi.FreeMarkerAssignment;
+import com.ennic.freemarker.psi.FreeMarkerFunctionBlock;
+import com.ennic.freemarker.psi.FreeMarkerMacroBlock;
+import com.ennic.freemarker.stubs.FreeMarkerDefinitionElementType;
+import com.ennic.freemarker.stubs.FreeMarkerFunctionIndex;
+import com.ennic.freemarker.stubs.FreeMarkerMacroIndex;
+import com.ennic.freemarker.stubs.FreeMarkerVariableIndex;
+import com.intellij.psi.templateLanguages.OuterLanguageElementType;
+import com.intellij.psi.templateLanguages.TemplateDataElementType;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+
+public interface FreeMarkerElementTypes {
+    IElementType DIRECTIVE = new FreeMarkerElementType("DIRECTIVE"); // <#include "a.ftl">, <#else>, ...
+    IElementType START_TAG = new FreeMarkerElementType("START_TAG"); // <#if cond>
+    IElementType END_TAG = new FreeMarkerElementType("END_TAG"); // </#if>
+    IElementType IF_BLOCK = new FreeMarkerElementType("IF_BLOCK");
+    IElementType LIST_BLOCK = new FreeMarkerElementType("LIST_BLOCK");
+    IElementType BLOCK = new FreeMarkerElementType("BLOCK"); // any other directive with a closing tag
+    IElementType BLOCK_BODY = new FreeMarkerBlockBodyElementType("BLOCK_BODY"); // content between the tags
+    IElementType INTERPOLATION = new FreeMarkerElementType("INTERPOLATION"); // ${...}
+    IElementType MACRO_CALL = new FreeMarkerElementType("MACRO_CALL"); // <@greet name="x"/>, <@lib.greet>, </@greet>
+
+    // The template data (HTML) tree sees every FreeMarker construct as an outer fragment
+    IElementType OUTER_FRAGMENT = new OuterLanguageElementType("FREEMARKER_FRAGMENT", FreeMarkerLanguage.INSTANCE);
+    IElementType TEMPLATE_DATA = new TemplateDataElementType("FREEMARKER_TEMPLATE_DATA", FreeMarkerLanguage.INSTANCE,
+            FreeMarkerTokenTypes.TEMPLATE_TEXT, OUTER_FRAGMENT);
+
+    // Definitions, kept in the stub tree and indexed by name
+    FreeMarkerDefinitionElementType MACRO_BLOCK =
+            new FreeMarkerDefinitionElementType("MACRO_BLOCK", FreeMarkerMacroIndex.KEY, FreeMarkerMacroBlock::new);
+    FreeMarkerDefinitionElementType FUNCTION_BLOCK =
+            new FreeMarkerDefinitionElementType("FUNCTION_BLOCK", FreeMarkerFunctionIndex.KEY, FreeMarkerFunctionBlock::new);
+    FreeMarkerDefinitionElementType ASSIGNMENT = // <#assign x = 1>, <#global x>...</#global>
+            new FreeMarkerDefinitionElementType("ASSIGNMENT", FreeMarkerVariableIndex.KEY, FreeMarkerAssignment::new);
+
+    // Tokens that can name a directive or a definition; unknown directives lex as identifiers
+    TokenSet DIRECTIVE_NAMES = TokenSet.create(FreeMarkerTokenTypes.DIRECTIVE_NAME, FreeMarkerTokenTypes.IDENTIFIER,
+            FreeMarkerTokenTypes.KEYWORD);
+    TokenSet COMMENTS = TokenSet.create(FreeMarkerTokenTypes.COMMENT);
+    TokenSet BLOCKS = TokenSet.create(IF_BLOCK, LIST_BLOCK, MACRO_BLOCK, FUNCTION_BLOCK, BLOCK);
+}
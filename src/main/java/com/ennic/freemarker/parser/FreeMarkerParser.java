@@ -0,0 +1,225 @@
+package com.ennic.freemarker.parser;
+
+import com.ennic.freemarker.diagnostics.FreeMarkerStats;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiParser;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.ennic.freemarker.lexer.FreeMarkerTokenTypes.*;
+import static com.ennic.freemarker.parser.FreeMarkerElementTypes.*;
+
+/**
+ * Builds directive blocks and interpolations. Block bodies are collapsed into lazily parsed
+ * BLOCK_BODY chameleons, which this parser parses again on demand with the body as root.
+ */
+public class FreeMarkerParser implements PsiParser {
+
+    @NotNull
+    @Override
+    public ASTNode parse(@NotNull IElementType root, @NotNull PsiBuilder builder) {
+        if (FreeMarkerStats.ENABLED) {
+            long start = System.nanoTime();
+            ASTNode tree = parseRoot(root, builder);
+            FreeMarkerStats.parsed(root != BLOCK_BODY, builder.getOriginalText().length(), System.nanoTime() - start);
+            return tree;
+        }
+        return parseRoot(root, builder);
+    }
+
+    private ASTNode parseRoot(IElementType root, PsiBuilder builder) {
+        Map<Integer, Block> blocks = matchBlocks(builder);
+        PsiBuilder.Marker rootMarker = builder.mark();
+        while (!builder.eof()) {
+            parseContent(builder, blocks);
+        }
+        rootMarker.done(root);
+        return builder.getTreeBuilt();
+    }
+
+    private void parseContent(PsiBuilder builder, Map<Integer, Block> blocks) {
+        IElementType tokenType = builder.getTokenType();
+        if (tokenType == DIRECTIVE_START) {
+            parseDirective(builder, blocks);
+        } else if (tokenType == DIRECTIVE_CLOSING) {
+            PsiBuilder.Marker endTag = builder.mark();
+            parseTag(builder);
+            endTag.error("Closing tag without an open directive");
+        } else if (tokenType == MACRO_CALL_START || tokenType == MACRO_CALL_CLOSING) {
+            PsiBuilder.Marker call = builder.mark();
+            parseTag(builder);
+            call.done(MACRO_CALL);
+        } else if (tokenType == INTERPOLATION_START) {
+            parseInterpolation(builder);
+        } else {
+            builder.advanceLexer();
+        }
+    }
+
+
+    private void parseDirective(PsiBuilder builder, Map<Integer, Block> blocks) {
+        Block block = blocks.get(builder.getCurrentOffset());
+        PsiBuilder.Marker directive = builder.mark();
+        PsiBuilder.Marker startTag = builder.mark();
+        Tag tag = parseTag(builder);
+        String name = tag.name;
+
+        if (block != null && block.end >= 0) {
+            startTag.done(START_TAG);
+            for (int separatorOffset : block.separators) {
+                parseBody(builder, separatorOffset);
+                PsiBuilder.Marker separator = builder.mark();
+                parseTag(builder);
+                separator.done(DIRECTIVE);
+            }
+            parseBody(builder, block.end);
+            PsiBuilder.Marker endTag = builder.mark();
+            parseTag(builder);
+            endTag.done(END_TAG);
+            directive.done(FreeMarkerDirectives.blockType(block.name));
+            return;
+        }
+        startTag.drop();
+        if (block != null && FreeMarkerDirectives.isRequiredBlock(block.name)) {
+            builder.error("Missing closing tag </#" + block.name + ">");
+            directive.done(DIRECTIVE);
+            return;
+        }
+        directive.done(FreeMarkerDirectives.directiveType(name));
+    }
+
+    private void parseBody(PsiBuilder builder, int endOffset) {
+        if (builder.getCurrentOffset() < endOffset) {
+            PsiBuilder.Marker body = builder.mark();
+            while (builder.getCurrentOffset() < endOffset) {
+                builder.advanceLexer();
+            }
+            body.collapse(BLOCK_BODY);
+        }
+    }
+
+    // Every start tag that opens a block, by offset, with its end tag and the clauses such as <#else> that split
+    // it into several bodies. One pass over the text with a stack of open blocks: an end tag closes the innermost
+    // open block of its name, leaving the blocks opened inside it unclosed, and an end tag of no open block is
+    // left alone. A clause belongs to the innermost open block.
+    private Map<Integer, Block> matchBlocks(PsiBuilder builder) {
+        PsiBuilder.Marker lookahead = builder.mark();
+        Map<Integer, Block> blocks = new HashMap<>();
+        Deque<Block> open = new ArrayDeque<>();
+        Map<String, Integer> openNames = new HashMap<>();
+        while (!builder.eof()) {
+            IElementType tokenType = builder.getTokenType();
+            if (tokenType == DIRECTIVE_START) {
+                int offset = builder.getCurrentOffset();
+                Tag tag = parseTag(builder);
+                if (tag.name == null) {
+                    continue;
+                }
+                if (!tag.empty && (FreeMarkerDirectives.isRequiredBlock(tag.name) ||
+                        FreeMarkerDirectives.isOptionalBlock(tag.name) && !tag.assignment)) {
+                    Block block = new Block(tag.name);
+                    blocks.put(offset, block);
+                    open.push(block);
+                    openNames.merge(tag.name, 1, Integer::sum);
+                } else if (!open.isEmpty() && FreeMarkerDirectives.isBodySeparator(tag.name, open.peek().name)) {
+                    open.peek().separators.add(offset);
+                }
+            } else if (tokenType == DIRECTIVE_CLOSING) {
+                int offset = builder.getCurrentOffset();
+                Tag tag = parseTag(builder);
+                if (tag.name != null && openNames.containsKey(tag.name)) {
+                    Block block;
+                    do {
+                        block = open.pop();
+                        openNames.computeIfPresent(block.name, (name, count) -> count > 1 ? count - 1 : null);
+                    } while (!block.name.equals(tag.name));
+                    block.end = offset;
+                }
+            } else {
+                builder.advanceLexer();
+            }
+        }
+        lookahead.rollbackTo();
+        return blocks;
+    }
+
+    // <#, </#, <@ or </@, the directive name and everything up to > or />
+    private Tag parseTag(PsiBuilder builder) {
+        Tag tag = new Tag();
+        builder.advanceLexer();
+        if (DIRECTIVE_NAMES.contains(builder.getTokenType())) {
+            tag.name = builder.getTokenText();
+            builder.advanceLexer();
+        }
+        int assignment = FreeMarkerDirectives.TARGET;
+        while (true) {
+            IElementType tokenType = builder.getTokenType();
+            tag.assignment = assignment == FreeMarkerDirectives.ASSIGNMENT;
+            if (tokenType == DIRECTIVE_END || tokenType == EMPTY_DIRECTIVE_END) {
+                tag.empty = tokenType == EMPTY_DIRECTIVE_END;
+                builder.advanceLexer();
+                return tag;
+            }
+            if (tokenType == null || TAG_STARTS.contains(tokenType)) {
+                builder.error("'>' expected");
+                return tag;
+            }
+            if (tokenType == INTERPOLATION_START) {
+                parseInterpolation(builder);
+                continue;
+            }
+            if (tag.name != null) {
+                assignment = FreeMarkerDirectives.readAssignment(assignment, tokenType, builder.getOriginalText(),
+                        builder.getCurrentOffset(), builder.rawTokenTypeStart(1));
+            }
+            builder.advanceLexer();
+        }
+    }
+
+    private void parseInterpolation(PsiBuilder builder) {
+        PsiBuilder.Marker interpolation = builder.mark();
+        builder.advanceLexer();
+        while (true) {
+            IElementType tokenType = builder.getTokenType();
+            if (tokenType == INTERPOLATION_END) {
+                builder.advanceLexer();
+                break;
+            }
+            if (tokenType == null || TAG_STARTS.contains(tokenType) || tokenType == DIRECTIVE_END) {
+                builder.error("'}' expected");
+                break;
+            }
+            if (tokenType == INTERPOLATION_START) {
+                parseInterpolation(builder);
+                continue;
+            }
+            builder.advanceLexer();
+        }
+        interpolation.done(INTERPOLATION);
+    }
+
+    private static class Block {
+        final String name;
+        final List<Integer> separators = new ArrayList<>();
+        int end = -1;
+
+        Block(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Tag {
+        @Nullable String name;
+        boolean empty;
+        boolean assignment;
+    }
+}
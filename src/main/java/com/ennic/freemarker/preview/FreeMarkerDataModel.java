@@ -0,0 +1,91 @@
+package com.ennic.freemarker.preview;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Data model for previewing a template, read from {@code name.json}, {@code name.yaml} or {@code name.yml}
+ * next to {@code name.ftl}. The parsed model is kept until the data file changes.
+ */
+public final class FreeMarkerDataModel {
+    private static final String[] EXTENSIONS = {"json", "yaml", "yml"};
+
+    private VirtualFile cachedFile;
+    private long cachedStamp = -1;
+    private Map<String, Object> cachedModel = Collections.emptyMap();
+
+    @Nullable
+    public static VirtualFile findDataFile(@NotNull VirtualFile template) {
+        VirtualFile dir = template.getParent();
+        if (dir == null) {
+            return null;
+        }
+        for (String extension : EXTENSIONS) {
+            VirtualFile file = dir.findChild(template.getNameWithoutExtension() + "." + extension);
+            if (file != null && !file.isDirectory()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    // An empty model when there is no data file, so templates that need no data still render
+    @NotNull
+    public synchronized Map<String, Object> load(@NotNull VirtualFile template) throws IOException {
+        VirtualFile file = findDataFile(template);
+        if (file == null) {
+            return Collections.emptyMap();
+        }
+        long stamp = ReadAction.compute(() -> getStamp(file));
+        if (file.equals(cachedFile) && stamp == cachedStamp) {
+            return cachedModel;
+        }
+        String text = ReadAction.compute(() -> {
+            Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+            return document != null ? document.getText() : VfsUtilCore.loadText(file).toString();
+        });
+        Map<String, Object> model = parse(text, "json".equals(file.getExtension()));
+        cachedFile = file;
+        cachedStamp = stamp;
+        cachedModel = model;
+        return model;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(String text, boolean json) throws IOException {
+        Object data;
+        try {
+            data = json ? new Gson().fromJson(text, Object.class)
+                    : new Yaml(new SafeConstructor(new LoaderOptions())).load(text);
+        } catch (JsonParseException | YAMLException e) {
+            throw new IOException("Cannot read the data model: " + e.getMessage(), e);
+        }
+        if (data == null) {
+            return Collections.emptyMap();
+        }
+        if (!(data instanceof Map)) {
+            throw new IOException("The data model must be an object at the top level");
+        }
+        return (Map<String, Object>) data;
+    }
+
+    private static long getStamp(VirtualFile file) {
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        return document != null ? document.getModificationStamp() : file.getModificationStamp();
+    }
+}
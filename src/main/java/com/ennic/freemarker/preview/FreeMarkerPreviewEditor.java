@@ -0,0 +1,330 @@
+package com.ennic.freemarker.preview;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileViewProvider;
+import com.ennic.freemarker.index.FreeMarkerDependencyGraph;
+import com.intellij.ide.impl.TrustedProjects;
+import com.intellij.lang.html.HTMLLanguage;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileEditor.FileEditorState;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.JBUI;
+import freemarker.template.TemplateException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.awt.*;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Output of the template rendered with its data model, shown beside the text editor.
+ * <p>
+ * Edits to the template, its data file or anything it includes are debounced and then rendered on a single
+ * background thread. A newer edit supersedes the render in progress, and a render that runs longer than
+ * {@link #RENDER_LIMIT_MS} times out. Either way its thread is interrupted, which stops the template at its next
+ * write or loop iteration, so the thread is free for the next render.
+ */
+public class FreeMarkerPreviewEditor extends UserDataHolderBase implements FileEditor {
+    private static final int DEBOUNCE_MS = 300;
+    private static final long RENDER_LIMIT_MS = 5000;
+    private static final long WATCHDOG_MS = 50;
+    // Shared by all previews, one render at a time
+    private static final ExecutorService EXECUTOR =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("FreeMarker Preview", 1);
+
+    private final Project project;
+    private final VirtualFile file;
+    private final boolean html;
+    private final FreeMarkerDataModel dataModel = new FreeMarkerDataModel();
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile Set<VirtualFile> watched;
+    private volatile boolean disposed;
+
+    private final JPanel component = new JPanel(new BorderLayout());
+    private final JEditorPane output = new JEditorPane();
+    private final JBLabel status = new JBLabel();
+
+    public FreeMarkerPreviewEditor(@NotNull Project project, @NotNull VirtualFile file) {
+        this.project = project;
+        this.file = file;
+        this.html = FreeMarkerFileViewProvider.getTemplateDataLanguage(project, file).isKindOf(HTMLLanguage.INSTANCE);
+        this.watched = Set.of(file);
+
+        output.setEditable(false);
+        output.setContentType(html ? "text/html" : "text/plain");
+        status.setBorder(JBUI.Borders.empty(2, 6));
+        component.add(status, BorderLayout.NORTH);
+        component.add(new JBScrollPane(output), BorderLayout.CENTER);
+
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                VirtualFile changed = FileDocumentManager.getInstance().getFile(event.getDocument());
+                if (changed != null && isWatched(changed)) {
+                    scheduleRender();
+                }
+            }
+        }, this);
+        // Changes made outside the IDE
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    VirtualFile changed = event.getFile();
+                    if (changed != null && isWatched(changed)) {
+                        scheduleRender();
+                        return;
+                    }
+                }
+            }
+        });
+        scheduleRender();
+    }
+
+    private boolean isWatched(VirtualFile changed) {
+        // The data file is any sibling with the template's name, so one created later is picked up too
+        return watched.contains(changed) || changed.getParent() != null && changed.getParent().equals(file.getParent()) &&
+                changed.getNameWithoutExtension().equals(file.getNameWithoutExtension());
+    }
+
+    private void scheduleRender() {
+        if (disposed) {
+            return;
+        }
+        // Supersede the render in progress right away rather than after the delay
+        int current = generation.incrementAndGet();
+        alarm.cancelAllRequests();
+        alarm.addRequest(() -> EXECUTOR.execute(() -> render(current)), DEBOUNCE_MS);
+    }
+
+    private void render(int current) {
+        if (isSuperseded(current)) {
+            return;
+        }
+        // Rendering runs the template and reads its data file, so it waits until the project is trusted
+        if (!TrustedProjects.isTrusted(project)) {
+            ApplicationManager.getApplication().invokeLater(() -> {
+                if (!isSuperseded(current)) {
+                    show("", false, "The preview is off until the project is trusted");
+                }
+            });
+            return;
+        }
+        FreeMarkerTemplateEngine engine = FreeMarkerTemplateEngine.getInstance(project);
+        StringWriter text = new StringWriter();
+        String error = null;
+        long start = System.nanoTime();
+        Watchdog watchdog = new Watchdog(current, start);
+        try {
+            engine.render(file, dataModel.load(file), new CancellableWriter(text, current));
+        } catch (IOException | TemplateException e) {
+            error = e.getMessage();
+        } catch (RuntimeException e) {
+            // The interruption checks stop a template with an unchecked exception
+            if (!watchdog.isFired()) {
+                throw e;
+            }
+        } finally {
+            watchdog.stop();
+        }
+        if (isSuperseded(current)) {
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        watched = findWatchedFiles();
+
+        boolean timedOut = watchdog.isFired();
+        String result = timedOut ? "" : error != null ? error : text.toString();
+        boolean failed = error != null && !timedOut;
+        String summary = timedOut ? "Render timed out after " + RENDER_LIMIT_MS + " ms" :
+                (failed ? "Failed in " : "Rendered in ") + elapsed + " ms, template cache hits " +
+                        Math.round(engine.getCacheHitRate() * 100) + "%";
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (!isSuperseded(current)) {
+                show(result, failed, summary);
+            }
+        });
+    }
+
+    private void show(String result, boolean failed, String summary) {
+        if (html) {
+            output.setText(failed ? "<pre>" + StringUtil.escapeXmlEntities(result) + "</pre>" : result);
+        } else {
+            output.setText(result);
+        }
+        output.setCaretPosition(0);
+        status.setText(summary);
+    }
+
+    private Set<VirtualFile> findWatchedFiles() {
+        Set<VirtualFile> files = new HashSet<>();
+        files.add(file);
+        ReadAction.run(() -> {
+            if (!DumbService.isDumb(project) && file.isValid()) {
+                files.addAll(FreeMarkerDependencyGraph.getInstance(project).getTransitiveIncludes(file));
+            }
+        });
+        return files;
+    }
+
+    private boolean isSuperseded(int current) {
+        return disposed || generation.get() != current;
+    }
+
+    @NotNull
+    @Override
+    public JComponent getComponent() {
+        return component;
+    }
+
+    @Nullable
+    @Override
+    public JComponent getPreferredFocusedComponent() {
+        return output;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return "Preview";
+    }
+
+    @Override
+    public void setState(@NotNull FileEditorState state) {
+    }
+
+    @Override
+    public boolean isModified() {
+        return false;
+    }
+
+    @Override
+    public boolean isValid() {
+        return file.isValid();
+    }
+
+    @Override
+    public void addPropertyChangeListener(@NotNull PropertyChangeListener listener) {
+    }
+
+    @Override
+    public void removePropertyChangeListener(@NotNull PropertyChangeListener listener) {
+    }
+
+    @NotNull
+    @Override
+    public VirtualFile getFile() {
+        return file;
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+    }
+
+    // Interrupts the rendering thread once a newer edit supersedes the render or it runs out of time
+    private class Watchdog {
+        private final Thread thread = Thread.currentThread();
+        private final int current;
+        private final long start;
+        private final ScheduledFuture<?> check;
+        private boolean stopped;
+        private volatile boolean fired;
+
+        Watchdog(int current, long start) {
+            this.current = current;
+            this.start = start;
+            check = AppExecutorUtil.getAppScheduledExecutorService()
+                    .scheduleWithFixedDelay(this::check, WATCHDOG_MS, WATCHDOG_MS, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void check() {
+            if (stopped || fired) {
+                return;
+            }
+            if (isSuperseded(current) || System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(RENDER_LIMIT_MS)) {
+                fired = true;
+                thread.interrupt();
+            }
+        }
+
+        boolean isFired() {
+            return fired;
+        }
+
+        void stop() {
+            synchronized (this) {
+                stopped = true;
+            }
+            check.cancel(false);
+            // The executor thread renders again, so an interrupt that came after the render ended must not stay
+            Thread.interrupted();
+        }
+    }
+
+    // Stops the render once a newer edit has superseded it
+    private class CancellableWriter extends Writer {
+        private final Writer out;
+        private final int current;
+
+        CancellableWriter(Writer out, int current) {
+            this.out = out;
+            this.current = current;
+        }
+
+        @Override
+        public void write(char @NotNull [] buffer, int offset, int length) throws IOException {
+            if (isSuperseded(current)) {
+                throw new InterruptedIOException("Superseded by a newer edit");
+            }
+            out.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(@NotNull String text, int offset, int length) throws IOException {
+            if (isSuperseded(current)) {
+                throw new InterruptedIOException("Superseded by a newer edit");
+            }
+            out.write(text, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ennic.freemarker.preview;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileEditor.FileEditorPolicy;
+import com.intellij.openapi.fileEditor.FileEditorProvider;
+import com.intellij.openapi.fileEditor.TextEditor;
+import com.intellij.openapi.fileEditor.TextEditorWithPreview;
+import com.intellij.openapi.fileEditor.impl.text.TextEditorProvider;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Opens templates in a split editor with the rendered output beside the text. Templates above the large file
+ * threshold open in the plain text editor only.
+ */
+public class FreeMarkerPreviewEditorProvider implements FileEditorProvider, DumbAware {
+    @Override
+    public boolean accept(@NotNull Project project, @NotNull VirtualFile file) {
+        return file.getFileType() == FreeMarkerFileType.INSTANCE && !FreeMarkerSettings.isLargeFile(file);
+    }
+
+    @NotNull
+    @Override
+    public FileEditor createEditor(@NotNull Project project, @NotNull VirtualFile file) {
+        TextEditor textEditor = (TextEditor) TextEditorProvider.getInstance().createEditor(project, file);
+        return new TextEditorWithPreview(textEditor, new FreeMarkerPreviewEditor(project, file), "FreeMarker Preview");
+    }
+
+    @NotNull
+    @Override
+    public String getEditorTypeId() {
+        return "freemarker-preview-editor";
+    }
+
+    // Replaces the plain text editor, so templates open with the preview beside them
+    @NotNull
+    @Override
+    public FileEditorPolicy getPolicy() {
+        return FileEditorPolicy.HIDE_DEFAULT_EDITOR;
+    }
+}
@@ -0,0 +1,172 @@
+package com.ennic.freemarker.preview;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import freemarker.cache.TemplateLoader;
+import freemarker.core.TemplateClassResolver;
+import freemarker.core._CoreAPI;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Renders templates with the FreeMarker engine for the preview.
+ * <p>
+ * There is one {@link Configuration} per template root, kept for the life of the project. Each configuration's
+ * template cache holds the parsed templates and checks a template's modification stamp on every lookup,
+ * so an edit reparses only the edited template. Includes are looked up through the same cache
+ * and are reparsed only when they changed themselves. Unsaved edits are read from the open documents.
+ * <p>
+ * Templates come from the project, so they may not create Java objects with {@code ?new} or reach the
+ * Java API of the data model with {@code ?api}.
+ * <p>
+ * Every template, included ones too, gets interruption checks in its loops and macros when it is first looked up,
+ * so interrupting the rendering thread stops a render even while it produces no output.
+ */
+@Service(Service.Level.PROJECT)
+public final class FreeMarkerTemplateEngine implements Disposable {
+    private final Project project;
+    private final Map<VirtualFile, Configuration> configurations = new ConcurrentHashMap<>();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong parses = new AtomicLong();
+
+    public FreeMarkerTemplateEngine(@NotNull Project project) {
+        this.project = project;
+    }
+
+    public static FreeMarkerTemplateEngine getInstance(@NotNull Project project) {
+        return project.getService(FreeMarkerTemplateEngine.class);
+    }
+
+    public void render(@NotNull VirtualFile file, @NotNull Object model, @NotNull Writer out)
+            throws IOException, TemplateException {
+        VirtualFile root = getRoot(file);
+        String name = VfsUtilCore.getRelativePath(file, root);
+        if (name == null) {
+            throw new IOException("Not under its template root: " + file.getPath());
+        }
+        Template template = configurations.computeIfAbsent(root, this::createConfiguration)
+                .getTemplate(name);
+        template.process(model, out);
+    }
+
+    // Share of template lookups answered without parsing, over the life of the project
+    public double getCacheHitRate() {
+        long total = lookups.get();
+        return total == 0 ? 0 : 1 - (double) parses.get() / total;
+    }
+
+    // Include paths are relative to the content root, or to the template's directory outside of one
+    private VirtualFile getRoot(VirtualFile file) {
+        VirtualFile root = ReadAction.compute(() -> ProjectFileIndex.getInstance(project).getContentRootForFile(file));
+        return root != null ? root : file.getParent();
+    }
+
+    private Configuration createConfiguration(VirtualFile root) {
+        Configuration configuration = new InterruptibleConfiguration();
+        configuration.setTemplateLoader(new Loader(root));
+        configuration.setTemplateUpdateDelayMilliseconds(0);
+        configuration.setLocalizedLookup(false);
+        // Templates starting with [#ftl] use square bracket tags, like the editor
+        configuration.setTagSyntax(Configuration.AUTO_DETECT_TAG_SYNTAX);
+        configuration.setDefaultEncoding("UTF-8");
+        configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        configuration.setLogTemplateExceptions(false);
+        configuration.setNewBuiltinClassResolver(TemplateClassResolver.ALLOWS_NOTHING_RESOLVER);
+        configuration.setAPIBuiltinEnabled(false);
+        return configuration;
+    }
+
+    @Override
+    public void dispose() {
+        configurations.clear();
+    }
+
+    private static class InterruptibleConfiguration extends Configuration {
+        // Templates that already have their checks, as the template cache hands out the same one until it changes
+        private final Set<Template> checked = Collections.newSetFromMap(new WeakHashMap<>());
+
+        InterruptibleConfiguration() {
+            super(VERSION_2_3_32);
+        }
+
+        // Every other getTemplate, and the lookups of <#include> and <#import>, end up here
+        @Override
+        public Template getTemplate(String name, Locale locale, Object customLookupCondition, String encoding,
+                                    boolean parseAsFTL, boolean ignoreMissing) throws IOException {
+            Template template = super.getTemplate(name, locale, customLookupCondition, encoding, parseAsFTL,
+                    ignoreMissing);
+            if (template != null) {
+                synchronized (checked) {
+                    if (checked.add(template)) {
+                        _CoreAPI.addThreadInterruptedChecks(template);
+                    }
+                }
+            }
+            return template;
+        }
+    }
+
+    // Reads templates from the VFS and the open documents, with the modification stamp as the last modified time
+    private class Loader implements TemplateLoader {
+        private final VirtualFile root;
+
+        Loader(VirtualFile root) {
+            this.root = root;
+        }
+
+        @Nullable
+        @Override
+        public Object findTemplateSource(String name) {
+            lookups.incrementAndGet();
+            VirtualFile file = root.findFileByRelativePath(name);
+            return file != null && !file.isDirectory() ? file : null;
+        }
+
+        @Override
+        public long getLastModified(Object source) {
+            return ReadAction.compute(() -> {
+                VirtualFile file = (VirtualFile) source;
+                Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+                return document != null ? document.getModificationStamp() : file.getModificationStamp();
+            });
+        }
+
+        @Override
+        public Reader getReader(Object source, String encoding) throws IOException {
+            parses.incrementAndGet();
+            VirtualFile file = (VirtualFile) source;
+            CharSequence text = ReadAction.compute(() -> {
+                Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+                return document != null ? document.getImmutableCharSequence() : VfsUtilCore.loadText(file);
+            });
+            return new StringReader(text.toString());
+        }
+
+        @Override
+        public void closeTemplateSource(Object source) {
+        }
+    }
+}
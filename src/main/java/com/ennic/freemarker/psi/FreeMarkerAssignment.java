@@ -0,0 +1,35 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.stubs.FreeMarkerDefinitionStub;
+import com.intellij.icons.AllIcons;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.stubs.IStubElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+/**
+ * An <#assign> or <#global>, either as a single directive or capturing its body as in <#assign x>...</#assign>.
+ */
+public class FreeMarkerAssignment extends FreeMarkerDefinitionElement implements FreeMarkerBlockElement {
+    public FreeMarkerAssignment(@NotNull FreeMarkerDefinitionStub stub, @NotNull IStubElementType<?, ?> nodeType) {
+        super(stub, nodeType);
+    }
+
+    public FreeMarkerAssignment(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    @Nullable
+    @Override
+    public String getDirectiveName() {
+        ASTNode startTag = getStartTag();
+        return FreeMarkerPsiUtil.getDirectiveName(startTag != null ? startTag : getNode());
+    }
+
+    @Override
+    public Icon getIcon(int flags) {
+        return AllIcons.Nodes.Variable;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.intellij.lang.Language;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.impl.FakePsiElement;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.SearchScope;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The name that binds a loop variable, macro or function parameter or {@code <#local>}, which is what its uses
+ * resolve to. The name is a plain token in the tree; this gives it a name that rename and find usages can work
+ * with, within its own file.
+ */
+public class FreeMarkerBinding extends FakePsiElement {
+    private final PsiElement name;
+
+    public FreeMarkerBinding(@NotNull PsiElement name) {
+        this.name = name;
+    }
+
+    @Override
+    public PsiElement getParent() {
+        return name.getParent();
+    }
+
+    @NotNull
+    @Override
+    public PsiElement getNavigationElement() {
+        return name;
+    }
+
+    @Override
+    public String getName() {
+        return name.getText();
+    }
+
+    @Override
+    public PsiElement setName(@NotNull String newName) {
+        return new FreeMarkerBinding(((LeafElement) name.getNode()).replaceWithText(newName).getPsi());
+    }
+
+    @Override
+    public String getText() {
+        return name.getText();
+    }
+
+    @Override
+    public TextRange getTextRange() {
+        return name.getTextRange();
+    }
+
+    @Override
+    public int getTextOffset() {
+        return name.getTextOffset();
+    }
+
+    @Override
+    public boolean isValid() {
+        return name.isValid();
+    }
+
+    @NotNull
+    @Override
+    public Language getLanguage() {
+        return FreeMarkerLanguage.INSTANCE;
+    }
+
+    // Loop variables, parameters and locals are not seen outside their template
+    @NotNull
+    @Override
+    public SearchScope getUseScope() {
+        return new LocalSearchScope(name.getContainingFile());
+    }
+
+    // Every resolve makes a new binding, so bindings of the same token are the same element
+    @Override
+    public boolean isEquivalentTo(PsiElement another) {
+        return equals(another);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FreeMarkerBinding && ((FreeMarkerBinding) o).name.equals(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
@@ -0,0 +1,11 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.FreeMarkerPsiElement;
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+
+public class FreeMarkerBlock extends FreeMarkerPsiElement implements FreeMarkerBlockElement {
+    public FreeMarkerBlock(@NotNull ASTNode node) {
+        super(node);
+    }
+}
@@ -0,0 +1,33 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A directive with a start tag, a body and an end tag.
+ */
+public interface FreeMarkerBlockElement extends PsiElement {
+
+    @Nullable
+    default String getDirectiveName() {
+        return FreeMarkerPsiUtil.getDirectiveName(getStartTag());
+    }
+
+    @Nullable
+    default ASTNode getStartTag() {
+        return getNode().findChildByType(FreeMarkerElementTypes.START_TAG);
+    }
+
+    // The body before the first clause such as <#else>, null if empty; touching its children parses it
+    @Nullable
+    default ASTNode getBody() {
+        return getNode().findChildByType(FreeMarkerElementTypes.BLOCK_BODY);
+    }
+
+    @Nullable
+    default ASTNode getEndTag() {
+        return getNode().findChildByType(FreeMarkerElementTypes.END_TAG);
+    }
+}
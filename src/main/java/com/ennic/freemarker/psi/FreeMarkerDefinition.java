@@ -0,0 +1,28 @@
+package com.ennic.freemarker.psi;
+
+import com.intellij.psi.NavigatablePsiElement;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiNameIdentifierOwner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A macro, function or variable definition. Backed by a stub while the file is not parsed.
+ */
+public interface FreeMarkerDefinition extends NavigatablePsiElement, PsiNameIdentifierOwner {
+
+    // The first defined name
+    @Nullable
+    @Override
+    String getName();
+
+    // <#assign a = 1 b = 2> defines more than one name
+    @NotNull
+    List<String> getDefinedNames();
+
+    @Nullable
+    @Override
+    PsiElement getNameIdentifier();
+}
@@ -0,0 +1,92 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.reference.FreeMarkerReferences;
+import com.ennic.freemarker.stubs.FreeMarkerDefinitionStub;
+import com.intellij.extapi.psi.StubBasedPsiElementBase;
+import com.intellij.ide.projectView.PresentationData;
+import com.intellij.lang.ASTNode;
+import com.intellij.navigation.ItemPresentation;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.stubs.IStubElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class FreeMarkerDefinitionElement extends StubBasedPsiElementBase<FreeMarkerDefinitionStub>
+        implements FreeMarkerDefinition {
+
+    protected FreeMarkerDefinitionElement(@NotNull FreeMarkerDefinitionStub stub, @NotNull IStubElementType<?, ?> nodeType) {
+        super(stub, nodeType);
+    }
+
+    protected FreeMarkerDefinitionElement(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    @Nullable
+    @Override
+    public String getName() {
+        List<String> names = getDefinedNames();
+        return names.isEmpty() ? null : names.get(0);
+    }
+
+    @NotNull
+    @Override
+    public List<String> getDefinedNames() {
+        FreeMarkerDefinitionStub stub = getGreenStub();
+        if (stub != null) {
+            return stub.getNames();
+        }
+        List<String> names = new ArrayList<>();
+        for (ASTNode name : FreeMarkerPsiUtil.getDefinedNameNodes(getNode())) {
+            names.add(name.getText());
+        }
+        return names;
+    }
+
+    @Nullable
+    @Override
+    public PsiElement getNameIdentifier() {
+        List<ASTNode> names = FreeMarkerPsiUtil.getDefinedNameNodes(getNode());
+        return names.isEmpty() ? null : names.get(0).getPsi();
+    }
+
+    // Renames the first defined name; references to it are updated by the rename refactoring
+    @Override
+    public PsiElement setName(@NotNull String name) {
+        List<ASTNode> names = FreeMarkerPsiUtil.getDefinedNameNodes(getNode());
+        if (!names.isEmpty()) {
+            ((LeafElement) names.get(0)).replaceWithText(name);
+        }
+        return this;
+    }
+
+    // The single-tag <#assign a = b> has its tokens directly under it, so b is referenced from here
+    @Override
+    public PsiReference @NotNull [] getReferences() {
+        return FreeMarkerReferences.getReferences(this);
+    }
+
+    // Navigation lands on the name rather than on <#
+    @Override
+    public int getTextOffset() {
+        PsiElement name = getNameIdentifier();
+        return name != null ? name.getTextOffset() : super.getTextOffset();
+    }
+
+    @Override
+    public ItemPresentation getPresentation() {
+        PsiFile file = getContainingFile();
+        return new PresentationData(getName(), file != null ? file.getName() : null, getIcon(0), null);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + getElementType() + ")";
+    }
+}
@@ -0,0 +1,20 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.FreeMarkerPsiElement;
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A directive without a body, like <#assign x = 1>, <#include "a.ftl"> or <#else>.
+ */
+public class FreeMarkerDirective extends FreeMarkerPsiElement {
+    public FreeMarkerDirective(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    @Nullable
+    public String getDirectiveName() {
+        return FreeMarkerPsiUtil.getDirectiveName(getNode());
+    }
+}
@@ -0,0 +1,74 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Data-model types declared in comments, as in {@code <#-- @ftlvariable name="order" type="com.shop.Order" -->}.
+ */
+public final class FreeMarkerFtlVariables {
+    private static final String TAG = "@ftlvariable";
+
+    private FreeMarkerFtlVariables() {
+    }
+
+    // Declared variable names mapped to their type text, cached until the file changes
+    @NotNull
+    public static Map<String, String> getDeclaredTypes(@NotNull PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(
+                findDeclaredTypes(file.getViewProvider().getContents(), FreeMarkerSyntax.get(file)), file));
+    }
+
+    @NotNull
+    public static Map<String, String> findDeclaredTypes(@NotNull CharSequence text, int syntax) {
+        Map<String, String> types = new HashMap<>();
+        FreeMarkerLexer lexer = new FreeMarkerLexer(false, syntax);
+        lexer.start(text, 0, text.length(), lexer.getStartState());
+        for (IElementType tokenType; (tokenType = lexer.getTokenType()) != null; lexer.advance()) {
+            if (tokenType == FreeMarkerTokenTypes.COMMENT) {
+                parseComment(text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString(), types);
+            }
+        }
+        return types;
+    }
+
+    // Each @ftlvariable is followed by key="value" attributes; name and type are required
+    private static void parseComment(String comment, Map<String, String> types) {
+        for (int at = comment.indexOf(TAG); at >= 0; at = comment.indexOf(TAG, at + TAG.length())) {
+            Map<String, String> attributes = new HashMap<>();
+            int i = at + TAG.length();
+            while (true) {
+                while (i < comment.length() && Character.isWhitespace(comment.charAt(i))) {
+                    i++;
+                }
+                int keyStart = i;
+                while (i < comment.length() && Character.isLetter(comment.charAt(i))) {
+                    i++;
+                }
+                if (i == keyStart || !comment.startsWith("=\"", i)) {
+                    break;
+                }
+                int valueEnd = comment.indexOf('"', i + 2);
+                if (valueEnd < 0) {
+                    break;
+                }
+                attributes.put(comment.substring(keyStart, i), comment.substring(i + 2, valueEnd));
+                i = valueEnd + 1;
+            }
+            String name = attributes.get("name");
+            String type = attributes.get("type");
+            if (name != null && type != null) {
+                types.put(name, type.trim());
+            }
+        }
+    }
+}
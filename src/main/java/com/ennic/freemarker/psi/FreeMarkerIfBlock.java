@@ -0,0 +1,10 @@
+package com.ennic.freemarker.psi;
+
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+
+public class FreeMarkerIfBlock extends FreeMarkerBlock {
+    public FreeMarkerIfBlock(@NotNull ASTNode node) {
+        super(node);
+    }
+}
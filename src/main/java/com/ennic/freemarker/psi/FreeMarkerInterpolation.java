@@ -0,0 +1,14 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.FreeMarkerPsiElement;
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An interpolation, ${...}.
+ */
+public class FreeMarkerInterpolation extends FreeMarkerPsiElement {
+    public FreeMarkerInterpolation(@NotNull ASTNode node) {
+        super(node);
+    }
+}
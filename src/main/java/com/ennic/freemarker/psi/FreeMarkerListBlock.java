@@ -0,0 +1,10 @@
+package com.ennic.freemarker.psi;
+
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+
+public class FreeMarkerListBlock extends FreeMarkerBlock {
+    public FreeMarkerListBlock(@NotNull ASTNode node) {
+        super(node);
+    }
+}
@@ -0,0 +1,25 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.stubs.FreeMarkerDefinitionStub;
+import com.intellij.icons.AllIcons;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.stubs.IStubElementType;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+
+// <#macro name ...>...</#macro>; the name is the first parameter of the start tag
+public class FreeMarkerMacroBlock extends FreeMarkerDefinitionElement implements FreeMarkerBlockElement {
+    public FreeMarkerMacroBlock(@NotNull FreeMarkerDefinitionStub stub, @NotNull IStubElementType<?, ?> nodeType) {
+        super(stub, nodeType);
+    }
+
+    public FreeMarkerMacroBlock(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    @Override
+    public Icon getIcon(int flags) {
+        return AllIcons.Nodes.Method;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.FreeMarkerPsiElement;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A call of a user-defined directive, {@code <@greet>}, {@code <@lib.greet/>} or {@code </@greet>}.
+ */
+public class FreeMarkerMacroCall extends FreeMarkerPsiElement {
+    public FreeMarkerMacroCall(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    // The token holding the macro name: greet in <@greet>, .greet in <@lib.greet>
+    @Nullable
+    public ASTNode getMacroNameNode() {
+        ASTNode first = FreeMarkerPsiUtil.getDirectiveNameNode(getNode());
+        if (first == null || first.getElementType() != FreeMarkerTokenTypes.IDENTIFIER) {
+            return null;
+        }
+        ASTNode next = first.getTreeNext();
+        return next != null && next.getElementType() == FreeMarkerTokenTypes.FUNCTION_CALL ? next : first;
+    }
+
+    // lib in <@lib.greet>
+    @Nullable
+    public String getNamespace() {
+        ASTNode name = getMacroNameNode();
+        ASTNode first = FreeMarkerPsiUtil.getDirectiveNameNode(getNode());
+        return name != null && name != first ? first.getText() : null;
+    }
+}
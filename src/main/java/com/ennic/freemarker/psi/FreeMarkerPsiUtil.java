@@ -0,0 +1,90 @@
+package com.ennic.freemarker.psi;
+
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class FreeMarkerPsiUtil {
+
+    private FreeMarkerPsiUtil() {
+    }
+
+    // The name token right after <# or </# in a tag
+    @Nullable
+    public static ASTNode getDirectiveNameNode(@Nullable ASTNode tag) {
+        ASTNode first = tag != null ? tag.getFirstChildNode() : null;
+        ASTNode next = first != null ? first.getTreeNext() : null;
+        return next != null && FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(next.getElementType()) ? next : null;
+    }
+
+    @Nullable
+    public static String getDirectiveName(@Nullable ASTNode tag) {
+        ASTNode name = getDirectiveNameNode(tag);
+        return name != null ? name.getText() : null;
+    }
+
+    // The first identifier following the directive name, e.g. the macro name in <#macro greet name>
+    @Nullable
+    public static ASTNode getFirstParameterNode(@Nullable ASTNode tag) {
+        ASTNode node = getDirectiveNameNode(tag);
+        if (node == null) {
+            return null;
+        }
+        for (node = node.getTreeNext(); node != null; node = node.getTreeNext()) {
+            if (node.getElementType() == FreeMarkerTokenTypes.TEXT) {
+                continue;
+            }
+            return FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(node.getElementType()) ? node : null;
+        }
+        return null;
+    }
+
+    // The name tokens a macro, function or assignment defines. For an assignment these are the
+    // identifiers directly followed by a single '=', as in <#assign a = 1 b = a == 1>
+    @NotNull
+    public static List<ASTNode> getDefinedNameNodes(@NotNull ASTNode definition) {
+        IElementType type = definition.getElementType();
+        ASTNode startTag = definition.findChildByType(FreeMarkerElementTypes.START_TAG);
+        if (type != FreeMarkerElementTypes.ASSIGNMENT) {
+            ASTNode name = getFirstParameterNode(startTag);
+            return name != null ? List.of(name) : List.of();
+        }
+
+        List<ASTNode> names = new ArrayList<>();
+        ASTNode node = getDirectiveNameNode(startTag != null ? startTag : definition);
+        for (node = node != null ? node.getTreeNext() : null; node != null; node = node.getTreeNext()) {
+            if (FreeMarkerElementTypes.DIRECTIVE_NAMES.contains(node.getElementType()) &&
+                    isAssignmentOperator(skipText(node.getTreeNext()))) {
+                names.add(node);
+            }
+        }
+        return names;
+    }
+
+    // A name followed by a single '=', as in <#assign a = 1> or <@greet name="x">
+    public static boolean isAssignedName(@NotNull ASTNode name) {
+        return isAssignmentOperator(skipText(name.getTreeNext()));
+    }
+
+    private static boolean isAssignmentOperator(@Nullable ASTNode node) {
+        return isEquals(node) && !isEquals(node.getTreeNext());
+    }
+
+    private static boolean isEquals(@Nullable ASTNode node) {
+        return node != null && node.getElementType() == FreeMarkerTokenTypes.OPERATOR && node.textMatches("=");
+    }
+
+    @Nullable
+    private static ASTNode skipText(@Nullable ASTNode node) {
+        while (node != null && node.getElementType() == FreeMarkerTokenTypes.TEXT) {
+            node = node.getTreeNext();
+        }
+        return node;
+    }
+}
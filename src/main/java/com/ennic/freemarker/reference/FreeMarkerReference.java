@@ -0,0 +1,129 @@
+package com.ennic.freemarker.reference;
+
+import com.ennic.freemarker.index.FreeMarkerDependencyGraph;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.ennic.freemarker.psi.FreeMarkerBinding;
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.stubs.FreeMarkerVariableIndex;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiElementResolveResult;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiPolyVariantReferenceBase;
+import com.intellij.psi.ResolveResult;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A use of a macro, function or variable name, resolved through the stub index of its kind.
+ * <p>
+ * A loop variable, parameter or {@code <#local>} resolves to the name that binds it, found by {@link FreeMarkerScopes}.
+ * Other variables resolve only to definitions in the file and in the templates it includes. Macros and functions
+ * defined there win over same-named ones elsewhere in the project, which are used when there are none.
+ * A name qualified with an import namespace, as in {@code <@lib.greet>}, resolves only in the imported template.
+ */
+public class FreeMarkerReference extends PsiPolyVariantReferenceBase<PsiElement> {
+    private static final ResolveCache.PolyVariantResolver<FreeMarkerReference> RESOLVER =
+            (reference, incompleteCode) -> reference.doResolve();
+
+    private final ASTNode leaf;
+    private final StubIndexKey<String, FreeMarkerDefinition> key;
+    @Nullable
+    private final String namespacePath;
+
+    FreeMarkerReference(@NotNull PsiElement element, @NotNull ASTNode leaf, @NotNull TextRange range,
+                        @NotNull StubIndexKey<String, FreeMarkerDefinition> key, @Nullable String namespacePath) {
+        super(element, range, true);
+        this.leaf = leaf;
+        this.key = key;
+        this.namespacePath = namespacePath;
+    }
+
+    @NotNull
+    public StubIndexKey<String, FreeMarkerDefinition> getKey() {
+        return key;
+    }
+
+    @Override
+    public ResolveResult @NotNull [] multiResolve(boolean incompleteCode) {
+        return ResolveCache.getInstance(getElement().getProject()).resolveWithCaching(this, RESOLVER, false, incompleteCode);
+    }
+
+    private ResolveResult[] doResolve() {
+        if (key == FreeMarkerVariableIndex.KEY && namespacePath == null) {
+            ASTNode binding = FreeMarkerScopes.getBinding(getElement().getContainingFile(), leaf);
+            if (binding != null) {
+                return new ResolveResult[]{new PsiElementResolveResult(new FreeMarkerBinding(binding.getPsi()))};
+            }
+        }
+        Project project = getElement().getProject();
+        PsiFile file = getElement().getContainingFile().getOriginalFile();
+        VirtualFile virtualFile = file.getVirtualFile();
+        String name = getValue();
+
+        if (namespacePath != null) {
+            VirtualFile target = virtualFile != null ? FreeMarkerDependencyGraph.resolve(virtualFile, namespacePath) : null;
+            return target != null ?
+                    find(name, project, GlobalSearchScope.fileScope(project, target)) : ResolveResult.EMPTY_ARRAY;
+        }
+        if (virtualFile != null) {
+            List<VirtualFile> visible = new ArrayList<>(FreeMarkerDependencyGraph.getInstance(project)
+                    .getTransitiveIncludes(virtualFile));
+            visible.add(virtualFile);
+            ResolveResult[] local = find(name, project, GlobalSearchScope.filesScope(project, visible));
+            if (local.length > 0 || key == FreeMarkerVariableIndex.KEY) {
+                return local;
+            }
+        } else if (key == FreeMarkerVariableIndex.KEY) {
+            // An injected or in-memory template is not indexed, and has only its own assignments
+            return findAssignments(name, file);
+        }
+        return find(name, project, GlobalSearchScope.allScope(project));
+    }
+
+    private ResolveResult[] find(String name, Project project, GlobalSearchScope scope) {
+        Collection<FreeMarkerDefinition> definitions = StubIndex.getElements(key, name, project, scope,
+                FreeMarkerDefinition.class);
+        return PsiElementResolveResult.createResults(definitions);
+    }
+
+    private static ResolveResult[] findAssignments(String name, PsiFile file) {
+        List<FreeMarkerDefinition> definitions = new ArrayList<>();
+        Deque<ASTNode> nodes = new ArrayDeque<>();
+        nodes.push(file.getNode());
+        while (!nodes.isEmpty()) {
+            ASTNode node = nodes.pop();
+            if (node.getElementType() == FreeMarkerElementTypes.ASSIGNMENT &&
+                    ((FreeMarkerDefinition) node.getPsi()).getDefinedNames().contains(name)) {
+                definitions.add((FreeMarkerDefinition) node.getPsi());
+            }
+            for (ASTNode child = node.getLastChildNode(); child != null; child = child.getTreePrev()) {
+                nodes.push(child);
+            }
+        }
+        return PsiElementResolveResult.createResults(definitions);
+    }
+
+    // Only the name token is rewritten; for .greet the dot stays
+    @Override
+    public PsiElement handleElementRename(@NotNull String newElementName) {
+        String text = leaf.getElementType() == FreeMarkerTokenTypes.FUNCTION_CALL ? "." + newElementName : newElementName;
+        ((LeafElement) leaf).replaceWithText(text);
+        return getElement();
+    }
+}
@@ -0,0 +1,119 @@
+package com.ennic.freemarker.reference;
+
+import com.ennic.freemarker.index.FreeMarkerIncludeIndex;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.psi.FreeMarkerMacroCall;
+import com.ennic.freemarker.psi.FreeMarkerPsiUtil;
+import com.ennic.freemarker.stubs.FreeMarkerFunctionIndex;
+import com.ennic.freemarker.stubs.FreeMarkerMacroIndex;
+import com.ennic.freemarker.stubs.FreeMarkerVariableIndex;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.impl.source.resolve.reference.ReferenceProvidersRegistry;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.util.ArrayUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the references of a tag or interpolation from the name tokens directly inside it.
+ * <p>
+ * Names that are being defined are not references: the names and parameters in a macro or function
+ * start tag, names followed by a single '=' (assignment targets and macro call arguments) and names
+ * after {@code as} (loop variables and import namespaces).
+ */
+public final class FreeMarkerReferences {
+
+    private FreeMarkerReferences() {
+    }
+
+    // The element's own name references, followed by any registered by optional integrations
+    @NotNull
+    public static PsiReference[] getReferences(@NotNull PsiElement element) {
+        return ArrayUtil.mergeArrays(getNameReferences(element), ReferenceProvidersRegistry.getReferencesFromProviders(element));
+    }
+
+    private static PsiReference[] getNameReferences(PsiElement element) {
+        ASTNode node = element.getNode();
+        ASTNode parent = node.getTreeParent();
+        if (node.getElementType() == FreeMarkerElementTypes.START_TAG && parent != null &&
+                (parent.getElementType() == FreeMarkerElementTypes.MACRO_BLOCK ||
+                        parent.getElementType() == FreeMarkerElementTypes.FUNCTION_BLOCK)) {
+            return PsiReference.EMPTY_ARRAY;
+        }
+
+        ASTNode macroName = element instanceof FreeMarkerMacroCall ? ((FreeMarkerMacroCall) element).getMacroNameNode() : null;
+        Map<String, String> namespaces = null;
+        List<PsiReference> references = new ArrayList<>();
+        ASTNode previous = null;
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            IElementType type = child.getElementType();
+            if (type == FreeMarkerTokenTypes.TEXT && !isOpeningParenthesis(child)) {
+                continue;
+            }
+            if (type == FreeMarkerTokenTypes.IDENTIFIER && child != macroName && !isAs(previous) &&
+                    !FreeMarkerPsiUtil.isAssignedName(child)) {
+                if (namespaces == null) {
+                    namespaces = getImportNamespaces(element.getContainingFile());
+                }
+                ASTNode next = child.getTreeNext();
+                if (next != null && next.getElementType() == FreeMarkerTokenTypes.FUNCTION_CALL &&
+                        namespaces.containsKey(child.getText())) {
+                    // lib.name: the namespace itself is not a reference, the member resolves in the imported file
+                    StubIndexKey<String, FreeMarkerDefinition> key = next == macroName ? FreeMarkerMacroIndex.KEY :
+                            isCall(next) ? FreeMarkerFunctionIndex.KEY : FreeMarkerVariableIndex.KEY;
+                    references.add(create(element, next, key, namespaces.get(child.getText())));
+                } else {
+                    references.add(create(element, child, isCall(child) ? FreeMarkerFunctionIndex.KEY :
+                            FreeMarkerVariableIndex.KEY, null));
+                }
+            } else if (child == macroName && type == FreeMarkerTokenTypes.IDENTIFIER) {
+                references.add(create(element, child, FreeMarkerMacroIndex.KEY, null));
+            }
+            previous = child;
+        }
+        return references.toArray(PsiReference.EMPTY_ARRAY);
+    }
+
+    // Namespaces bound by the file's <#import> directives, mapped to the imported paths
+    @NotNull
+    public static Map<String, String> getImportNamespaces(@NotNull PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(
+                FreeMarkerIncludeIndex.findImportNamespaces(file.getViewProvider().getContents(),
+                        FreeMarkerSyntax.get(file)), file));
+    }
+
+    private static PsiReference create(PsiElement element, ASTNode leaf, StubIndexKey<String, FreeMarkerDefinition> key,
+                                       @Nullable String namespacePath) {
+        // The dot of .name is not part of the name
+        int skip = leaf.getElementType() == FreeMarkerTokenTypes.FUNCTION_CALL ? 1 : 0;
+        int start = leaf.getStartOffset() - element.getNode().getStartOffset() + skip;
+        TextRange range = new TextRange(start, start + leaf.getTextLength() - skip);
+        return new FreeMarkerReference(element, leaf, range, key, namespacePath);
+    }
+
+    private static boolean isAs(@Nullable ASTNode node) {
+        return node != null && node.getElementType() == FreeMarkerTokenTypes.KEYWORD && node.textMatches("as");
+    }
+
+    private static boolean isCall(ASTNode name) {
+        return isOpeningParenthesis(name.getTreeNext());
+    }
+
+    private static boolean isOpeningParenthesis(@Nullable ASTNode node) {
+        return node != null && node.getElementType() == FreeMarkerTokenTypes.TEXT && node.getText().startsWith("(");
+    }
+}
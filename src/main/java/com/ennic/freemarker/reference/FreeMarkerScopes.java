@@ -0,0 +1,500 @@
+package com.ennic.freemarker.reference;
+
+import com.ennic.freemarker.index.FreeMarkerDependencyGraph;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.psi.FreeMarkerFtlVariables;
+import com.ennic.freemarker.psi.FreeMarkerPsiUtil;
+import com.ennic.freemarker.stubs.FreeMarkerFunctionIndex;
+import com.ennic.freemarker.stubs.FreeMarkerMacroIndex;
+import com.ennic.freemarker.stubs.FreeMarkerVariableIndex;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Variable uses of a template that no definition covers.
+ * <p>
+ * A name the template never defines is taken to come from the data model and is not checked. A name it does
+ * define is reported where no definition reaches: before the first {@code <#assign>} or {@code <#global>} of it
+ * at the top level, or outside the list, macro or function that defines it as a loop variable, parameter or
+ * {@code <#local>}. Uses inside macros and functions see every assignment of the file, since they run when called.
+ * <p>
+ * The same walk binds each use of a loop variable, parameter or {@code <#local>} to the name that defines it, which
+ * is what such a use resolves to.
+ * <p>
+ * The scopes come from one walk over the file's tree, cached until the file changes. Names defined by included
+ * templates and members of imported namespaces are then looked up in the stub index, and that result is cached
+ * until any PSI changes.
+ */
+public final class FreeMarkerScopes {
+    private static final List<StubIndexKey<String, FreeMarkerDefinition>> MEMBER_KEYS =
+            List.of(FreeMarkerMacroIndex.KEY, FreeMarkerFunctionIndex.KEY, FreeMarkerVariableIndex.KEY);
+
+    private FreeMarkerScopes() {
+    }
+
+    // Name tokens of the file's undefined uses, mapped to their message
+    @NotNull
+    public static Map<ASTNode, String> getUndefinedUses(@NotNull PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(
+                findUndefinedUses(file), PsiModificationTracker.MODIFICATION_COUNT));
+    }
+
+    // The loop variable, parameter or <#local> name that the use of a name refers to, if any
+    @Nullable
+    public static ASTNode getBinding(@NotNull PsiFile file, @NotNull ASTNode use) {
+        return getTable(file).bindings.get(use);
+    }
+
+    private static Table getTable(PsiFile file) {
+        return CachedValuesManager.getCachedValue(file, () -> CachedValueProvider.Result.create(
+                new Walker(file).walk(), file));
+    }
+
+    private static Map<ASTNode, String> findUndefinedUses(PsiFile file) {
+        Table table = getTable(file);
+        if (table.uses.isEmpty() && table.members.isEmpty()) {
+            return Map.of();
+        }
+        Project project = file.getProject();
+        // Injected and in-memory templates have no includes or imports to look into
+        VirtualFile virtualFile = file.getOriginalFile().getVirtualFile();
+        FreeMarkerDependencyGraph graph = FreeMarkerDependencyGraph.getInstance(project);
+        Map<ASTNode, String> undefined = new IdentityHashMap<>();
+
+        GlobalSearchScope includes = null;
+        for (Use use : table.uses) {
+            // <#include> runs the included template in the same namespace, so it may have defined the name
+            if (includes == null) {
+                includes = virtualFile != null ?
+                        GlobalSearchScope.filesScope(project, graph.getTransitiveIncludes(virtualFile)) :
+                        GlobalSearchScope.EMPTY_SCOPE;
+            }
+            if (!isDefined(project, FreeMarkerVariableIndex.KEY, use.name, includes)) {
+                undefined.put(use.node, use.beforeDefinition ?
+                        "Variable '" + use.name + "' is used before it is defined" :
+                        "Variable '" + use.name + "' is not defined in this scope");
+            }
+        }
+        for (Member member : virtualFile != null ? table.members : List.<Member>of()) {
+            VirtualFile target = FreeMarkerDependencyGraph.resolve(virtualFile, member.path);
+            // A library that includes other templates can get members from them; those are not followed
+            if (target == null || !graph.getIncludes(target).isEmpty()) {
+                continue;
+            }
+            GlobalSearchScope scope = GlobalSearchScope.fileScope(project, target);
+            boolean found = false;
+            for (StubIndexKey<String, FreeMarkerDefinition> key : MEMBER_KEYS) {
+                if (isDefined(project, key, member.name, scope)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                undefined.put(member.node,
+                        "Cannot resolve '" + member.name + "' in namespace '" + member.namespace + "'");
+            }
+        }
+        return undefined;
+    }
+
+    private static boolean isDefined(Project project, StubIndexKey<String, FreeMarkerDefinition> key, String name,
+                                     GlobalSearchScope scope) {
+        return !StubIndex.getElements(key, name, project, scope, FreeMarkerDefinition.class).isEmpty();
+    }
+
+    // What one walk over the tree found, before anything is looked up in other files
+    private static class Table {
+        final List<Use> uses = new ArrayList<>();
+        final List<Member> members = new ArrayList<>();
+        final Map<ASTNode, ASTNode> bindings = new IdentityHashMap<>();
+    }
+
+    private static class Use {
+        final ASTNode node;
+        final String name;
+        final boolean beforeDefinition;
+
+        Use(ASTNode node, String name, boolean beforeDefinition) {
+            this.node = node;
+            this.name = name;
+            this.beforeDefinition = beforeDefinition;
+        }
+    }
+
+    // ns.name where ns is an import namespace
+    private static class Member {
+        final ASTNode node;
+        final String namespace;
+        final String path;
+        final String name;
+
+        Member(ASTNode node, String namespace, String path, String name) {
+            this.node = node;
+            this.namespace = namespace;
+            this.path = path;
+            this.name = name;
+        }
+    }
+
+    private static class Scope {
+        // Each name mapped to the token that defines it, or to null for a name defined without one, like item_index
+        final Map<String, ASTNode> names = new HashMap<>();
+        final boolean macro;
+        // The macro call whose end tag closes the scope, for the loop variables of <@repeat ; i>
+        @Nullable
+        final String call;
+
+        Scope(boolean macro, @Nullable String call) {
+            this.macro = macro;
+            this.call = call;
+        }
+    }
+
+    // A use that no enclosing scope covered when it was met
+    private static class Pending {
+        final ASTNode node;
+        final String name;
+        final boolean inMacro;
+
+        Pending(ASTNode node, String name, boolean inMacro) {
+            this.node = node;
+            this.name = name;
+            this.inMacro = inMacro;
+        }
+    }
+
+    private static class Walker {
+        final PsiFile file;
+        final Map<String, String> namespaces;
+        final Set<String> declared;
+        final Deque<Scope> scopes = new ArrayDeque<>();
+        int macroDepth;
+
+        // Where each name is first assigned at the top level, and names assigned inside macros and functions
+        final Map<String, Integer> assigned = new HashMap<>();
+        final Set<String> assignedInMacros = new HashSet<>();
+        // Loop variables, parameters and locals, and the names of macros and functions
+        final Set<String> local = new HashSet<>();
+        final Set<String> definitions = new HashSet<>();
+        final List<Pending> pending = new ArrayList<>();
+        final Table table = new Table();
+
+        Walker(PsiFile file) {
+            this.file = file;
+            this.namespaces = FreeMarkerReferences.getImportNamespaces(file);
+            this.declared = FreeMarkerFtlVariables.getDeclaredTypes(file).keySet();
+        }
+
+        Table walk() {
+            visitChildren(file.getNode(), null);
+            for (Pending use : pending) {
+                String name = use.name;
+                if (definitions.contains(name) || namespaces.containsKey(name) || declared.contains(name)) {
+                    continue;
+                }
+                Integer first = assigned.get(name);
+                if (first != null || assignedInMacros.contains(name)) {
+                    // A macro may run after any assignment; the top level only after the ones above it
+                    if (!use.inMacro && first != null && first > use.node.getStartOffset() &&
+                            !assignedInMacros.contains(name)) {
+                        table.uses.add(new Use(use.node, name, true));
+                    }
+                } else if (local.contains(name)) {
+                    table.uses.add(new Use(use.node, name, false));
+                }
+            }
+            return table;
+        }
+
+        void visitChildren(ASTNode node, @Nullable ASTNode skip) {
+            for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+                if (child != skip) {
+                    visit(child);
+                }
+            }
+        }
+
+        void visit(ASTNode node) {
+            IElementType type = node.getElementType();
+            if (type == FreeMarkerElementTypes.INTERPOLATION) {
+                scanUses(node, null, Set.of());
+            } else if (type == FreeMarkerElementTypes.MACRO_CALL) {
+                visitMacroCall(node);
+            } else if (node.findChildByType(FreeMarkerElementTypes.START_TAG) != null) {
+                visitBlock(node);
+            } else if (type == FreeMarkerElementTypes.DIRECTIVE || type == FreeMarkerElementTypes.ASSIGNMENT ||
+                    type == FreeMarkerElementTypes.END_TAG) {
+                visitTag(node);
+            } else if (node.getFirstChildNode() != null) {
+                visitChildren(node, null);
+            }
+        }
+
+        void visitBlock(ASTNode block) {
+            ASTNode startTag = block.findChildByType(FreeMarkerElementTypes.START_TAG);
+            String name = FreeMarkerPsiUtil.getDirectiveName(startTag);
+            int depth = scopes.size();
+            if ("macro".equals(name) || "function".equals(name)) {
+                ASTNode macroName = FreeMarkerPsiUtil.getFirstParameterNode(startTag);
+                if (macroName != null) {
+                    definitions.add(macroName.getText());
+                }
+                Scope scope = new Scope(true, null);
+                for (ASTNode parameter : getParameters(startTag, macroName)) {
+                    scope.names.putIfAbsent(parameter.getText(), parameter);
+                }
+                local.addAll(scope.names.keySet());
+                scopes.push(scope);
+                macroDepth++;
+                visitChildren(block, startTag);
+                macroDepth--;
+            } else {
+                Scope scope = new Scope(false, null);
+                scope.names.putAll(visitTag(startTag));
+                local.addAll(scope.names.keySet());
+                scopes.push(scope);
+                visitChildren(block, startTag);
+            }
+            // Also drops the scopes of macro calls left open inside the block
+            while (scopes.size() > depth) {
+                scopes.pop();
+            }
+        }
+
+        // Scans a directive tag and returns the loop variables it defines for its body
+        Map<String, ASTNode> visitTag(ASTNode tag) {
+            ASTNode nameNode = FreeMarkerPsiUtil.getDirectiveNameNode(tag);
+            String name = nameNode != null ? nameNode.getText() : null;
+            if (name == null) {
+                scanUses(tag, null, Set.of());
+                return Map.of();
+            }
+            switch (name) {
+                case "import", "escape", "ftl" -> {
+                    return Map.of();
+                }
+                case "list", "items" -> {
+                    return scanLoop(tag, nameNode);
+                }
+                case "assign", "global", "local" -> {
+                    List<ASTNode> targets = getAssignmentTargets(tag, nameNode);
+                    scanUses(tag, nameNode, new HashSet<>(targets));
+                    for (ASTNode target : targets) {
+                        define(target, "local".equals(name), tag.getStartOffset() + tag.getTextLength());
+                    }
+                    return Map.of();
+                }
+                default -> {
+                    scanUses(tag, nameNode, Set.of());
+                    return Map.of();
+                }
+            }
+        }
+
+        void define(ASTNode target, boolean isLocal, int end) {
+            String name = target.getText();
+            if (isLocal) {
+                local.add(name);
+                for (Scope scope : scopes) {
+                    if (scope.macro) {
+                        scope.names.putIfAbsent(name, target);
+                        break;
+                    }
+                }
+            } else if (macroDepth > 0) {
+                assignedInMacros.add(name);
+            } else {
+                assigned.putIfAbsent(name, end);
+            }
+        }
+
+        // <#list items as item> or <#list map as key, value>: uses before "as", loop variables after it
+        Map<String, ASTNode> scanLoop(ASTNode tag, ASTNode nameNode) {
+            ASTNode as = null;
+            for (ASTNode child = nameNode.getTreeNext(); child != null; child = child.getTreeNext()) {
+                if (child.getElementType() == FreeMarkerTokenTypes.KEYWORD && child.textMatches("as")) {
+                    as = child;
+                    break;
+                }
+            }
+            Set<ASTNode> loopNodes = new HashSet<>();
+            Map<String, ASTNode> names = new HashMap<>();
+            for (ASTNode child = as; child != null; child = child.getTreeNext()) {
+                if (child.getElementType() == FreeMarkerTokenTypes.IDENTIFIER) {
+                    loopNodes.add(child);
+                    names.putIfAbsent(child.getText(), child);
+                    // Deprecated, but still set by every list. Not bound to the loop variable: renaming it would
+                    // not find them, since the name is only part of their token.
+                    names.putIfAbsent(child.getText() + "_index", null);
+                    names.putIfAbsent(child.getText() + "_has_next", null);
+                }
+            }
+            scanUses(tag, nameNode, loopNodes);
+            return names;
+        }
+
+        void visitMacroCall(ASTNode call) {
+            ASTNode first = call.getFirstChildNode();
+            ASTNode nameNode = FreeMarkerPsiUtil.getDirectiveNameNode(call);
+            String name = nameNode != null ? nameNode.getText() : null;
+            if (first != null && first.getElementType() == FreeMarkerTokenTypes.MACRO_CALL_CLOSING) {
+                Scope top = scopes.peek();
+                if (top != null && top.call != null && top.call.equals(name)) {
+                    scopes.pop();
+                }
+                return;
+            }
+            // <@repeat count=3 ; i, last>: the names after ';' are loop variables for the body
+            Set<ASTNode> loopNodes = new HashSet<>();
+            Scope scope = new Scope(false, name);
+            boolean afterSemicolon = false;
+            for (ASTNode child = first; child != null; child = child.getTreeNext()) {
+                IElementType type = child.getElementType();
+                if (type == FreeMarkerTokenTypes.TEXT && child.getText().indexOf(';') >= 0) {
+                    afterSemicolon = true;
+                } else if (afterSemicolon && type == FreeMarkerTokenTypes.IDENTIFIER) {
+                    loopNodes.add(child);
+                    scope.names.putIfAbsent(child.getText(), child);
+                }
+            }
+            // <@lib.greet>: the namespace is the name token, the member follows it
+            if (nameNode != null && nameNode.getElementType() == FreeMarkerTokenTypes.IDENTIFIER) {
+                addMember(nameNode);
+            }
+            scanUses(call, nameNode, loopNodes);
+            ASTNode last = call.getLastChildNode();
+            if (!scope.names.isEmpty() && last != null &&
+                    last.getElementType() != FreeMarkerTokenTypes.EMPTY_DIRECTIVE_END) {
+                local.addAll(scope.names.keySet());
+                scopes.push(scope);
+            }
+        }
+
+        // Records the root names used directly in a tag or interpolation, and in interpolations nested in its strings
+        void scanUses(ASTNode element, @Nullable ASTNode nameNode, Set<ASTNode> excluded) {
+            ASTNode previous = null;
+            for (ASTNode child = element.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+                IElementType type = child.getElementType();
+                if (type == FreeMarkerElementTypes.INTERPOLATION) {
+                    scanUses(child, null, Set.of());
+                } else if (type == FreeMarkerTokenTypes.IDENTIFIER && child != nameNode && !excluded.contains(child) &&
+                        !isAs(previous) && !FreeMarkerPsiUtil.isAssignedName(child)) {
+                    use(child);
+                }
+                if (type != FreeMarkerTokenTypes.TEXT) {
+                    previous = child;
+                }
+            }
+        }
+
+        void use(ASTNode node) {
+            if (addMember(node)) {
+                return;
+            }
+            String name = node.getText();
+            for (Scope scope : scopes) {
+                if (scope.names.containsKey(name)) {
+                    ASTNode binding = scope.names.get(name);
+                    if (binding != null) {
+                        table.bindings.put(node, binding);
+                    }
+                    return;
+                }
+            }
+            pending.add(new Pending(node, name, macroDepth > 0));
+        }
+
+        // ns.name where ns is an import namespace; the member is looked up in the imported template
+        boolean addMember(ASTNode namespace) {
+            String path = namespaces.get(namespace.getText());
+            ASTNode next = namespace.getTreeNext();
+            if (path == null || next == null || next.getElementType() != FreeMarkerTokenTypes.FUNCTION_CALL) {
+                return false;
+            }
+            table.members.add(new Member(next, namespace.getText(), path, next.getText().substring(1)));
+            return true;
+        }
+
+        private static boolean isAs(@Nullable ASTNode node) {
+            return node != null && node.getElementType() == FreeMarkerTokenTypes.KEYWORD && node.textMatches("as");
+        }
+
+        // The parameters of <#macro greet name greeting="Hi" rest...>; default values are not parameters
+        private static List<ASTNode> getParameters(ASTNode startTag, @Nullable ASTNode macroName) {
+            List<ASTNode> parameters = new ArrayList<>();
+            if (macroName == null) {
+                return parameters;
+            }
+            boolean value = false;
+            for (ASTNode child = macroName.getTreeNext(); child != null; child = child.getTreeNext()) {
+                IElementType type = child.getElementType();
+                if (type == FreeMarkerTokenTypes.TEXT) {
+                    continue;
+                }
+                if (type == FreeMarkerTokenTypes.IDENTIFIER && !value) {
+                    parameters.add(child);
+                }
+                value = type == FreeMarkerTokenTypes.OPERATOR && child.textMatches("=");
+            }
+            return parameters;
+        }
+
+        // x in <#assign x = 1>, <#assign x += 1>, <#assign x++> and the capturing <#assign x>...</#assign>
+        private static List<ASTNode> getAssignmentTargets(ASTNode tag, ASTNode nameNode) {
+            List<ASTNode> targets = new ArrayList<>();
+            for (ASTNode child = nameNode.getTreeNext(); child != null; child = child.getTreeNext()) {
+                if (child.getElementType() == FreeMarkerTokenTypes.IDENTIFIER && isAssignmentTarget(child)) {
+                    targets.add(child);
+                }
+            }
+            if (targets.isEmpty()) {
+                ASTNode first = FreeMarkerPsiUtil.getFirstParameterNode(tag);
+                if (first != null && first.getElementType() == FreeMarkerTokenTypes.IDENTIFIER) {
+                    targets.add(first);
+                }
+            }
+            return targets;
+        }
+
+        private static boolean isAssignmentTarget(ASTNode name) {
+            if (FreeMarkerPsiUtil.isAssignedName(name)) {
+                return true;
+            }
+            ASTNode operator = name.getTreeNext();
+            while (operator != null && operator.getElementType() == FreeMarkerTokenTypes.TEXT) {
+                operator = operator.getTreeNext();
+            }
+            ASTNode second = operator != null ? operator.getTreeNext() : null;
+            if (operator == null || second == null || operator.getElementType() != FreeMarkerTokenTypes.OPERATOR ||
+                    second.getElementType() != FreeMarkerTokenTypes.OPERATOR) {
+                return false;
+            }
+            String text = operator.getText();
+            return "+-*/%".contains(text) && second.textMatches("=") ||
+                    ("+".equals(text) || "-".equals(text)) && second.textMatches(text);
+        }
+    }
+}
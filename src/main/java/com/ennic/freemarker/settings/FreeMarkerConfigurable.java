@@ -0,0 +1,49 @@
+package com.ennic.freemarker.settings;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.ui.JBIntSpinner;
+import com.intellij.util.ui.FormBuilder;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+
+public class FreeMarkerConfigurable implements Configurable {
+    private JBIntSpinner thresholdSpinner;
+
+    @Nls
+    @Override
+    public String getDisplayName() {
+        return "FreeMarker";
+    }
+
+    @Nullable
+    @Override
+    public JComponent createComponent() {
+        thresholdSpinner = new JBIntSpinner(FreeMarkerSettings.getInstance().getLargeFileThresholdKb(), 1, Integer.MAX_VALUE / 1024);
+        return FormBuilder.createFormBuilder()
+                .addLabeledComponent("Large file threshold (KB):", thresholdSpinner)
+                .addComponentFillVertically(new JPanel(), 0)
+                .getPanel();
+    }
+
+    @Override
+    public boolean isModified() {
+        return thresholdSpinner.getNumber() != FreeMarkerSettings.getInstance().getLargeFileThresholdKb();
+    }
+
+    @Override
+    public void apply() {
+        FreeMarkerSettings.getInstance().setLargeFileThresholdKb(thresholdSpinner.getNumber());
+    }
+
+    @Override
+    public void reset() {
+        thresholdSpinner.setNumber(FreeMarkerSettings.getInstance().getLargeFileThresholdKb());
+    }
+
+    @Override
+    public void disposeUIResources() {
+        thresholdSpinner = null;
+    }
+}
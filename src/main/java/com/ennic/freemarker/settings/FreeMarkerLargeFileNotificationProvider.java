@@ -0,0 +1,39 @@
+package com.ennic.freemarker.settings;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.options.ShowSettingsUtil;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.EditorNotificationPanel;
+import com.intellij.ui.EditorNotificationProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.function.Function;
+
+/**
+ * Tells the user that a template is above the large file threshold and only gets highlighting.
+ */
+public class FreeMarkerLargeFileNotificationProvider implements EditorNotificationProvider, DumbAware {
+
+    @Nullable
+    @Override
+    public Function<? super FileEditor, ? extends JComponent> collectNotificationData(@NotNull Project project,
+                                                                                     @NotNull VirtualFile file) {
+        if (file.getFileType() != FreeMarkerFileType.INSTANCE || !FreeMarkerSettings.isLargeFile(file)) {
+            return null;
+        }
+        return fileEditor -> {
+            EditorNotificationPanel panel = new EditorNotificationPanel(fileEditor, EditorNotificationPanel.Status.Info);
+            panel.setText("This template is " + StringUtil.formatFileSize(file.getLength()) +
+                    ": FreeMarker support is limited to highlighting.");
+            panel.createActionLabel("Change threshold",
+                    () -> ShowSettingsUtil.getInstance().showSettingsDialog(project, FreeMarkerConfigurable.class));
+            return panel;
+        };
+    }
+}
@@ -0,0 +1,111 @@
+package com.ennic.freemarker.settings;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.ennic.freemarker.filetype.FreeMarkerFileViewProvider;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.FileViewProvider;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.ui.EditorNotifications;
+import com.intellij.util.FileContentUtilCore;
+import com.intellij.util.indexing.FileBasedIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application-wide plugin settings.
+ */
+@Service(Service.Level.APP)
+@State(name = "FreeMarkerSettings", storages = @Storage("freemarker.xml"))
+public final class FreeMarkerSettings implements PersistentStateComponent<FreeMarkerSettings.State> {
+
+    public static class State {
+        // Files above this size get highlighting only, without a full tree or the template data language
+        public int largeFileThresholdKb = 2048;
+    }
+
+    private State state = new State();
+
+    public static FreeMarkerSettings getInstance() {
+        return ApplicationManager.getApplication().getService(FreeMarkerSettings.class);
+    }
+
+    @NotNull
+    @Override
+    public State getState() {
+        return state;
+    }
+
+    @Override
+    public void loadState(@NotNull State state) {
+        this.state = state;
+    }
+
+    public int getLargeFileThresholdKb() {
+        return state.largeFileThresholdKb;
+    }
+
+    // Templates between the old and the new threshold change mode: they are reindexed, since a large file has no
+    // stubs, and reparsed, which gives them a view provider that decides again
+    public void setLargeFileThresholdKb(int thresholdKb) {
+        long low = Math.min(thresholdKb, state.largeFileThresholdKb) * 1024L;
+        long high = Math.max(thresholdKb, state.largeFileThresholdKb) * 1024L;
+        state.largeFileThresholdKb = thresholdKb;
+        if (low == high) {
+            return;
+        }
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            DumbService.getInstance(project).runWhenSmart(() -> reparse(project, low, high));
+        }
+    }
+
+    private static void reparse(Project project, long low, long high) {
+        if (project.isDisposed()) {
+            return;
+        }
+        List<VirtualFile> files = new ArrayList<>();
+        for (VirtualFile file : FileTypeIndex.getFiles(FreeMarkerFileType.INSTANCE,
+                GlobalSearchScope.projectScope(project))) {
+            if (file.getLength() > low && file.getLength() <= high) {
+                files.add(file);
+            }
+        }
+        for (VirtualFile file : files) {
+            FileBasedIndex.getInstance().requestReindex(file);
+        }
+        FileContentUtilCore.reparseFiles(files);
+        EditorNotifications.getInstance(project).updateAllNotifications();
+    }
+
+    public static boolean isLargeFile(long length) {
+        return length > getInstance().getLargeFileThresholdKb() * 1024L;
+    }
+
+    public static boolean isLargeFile(@Nullable VirtualFile file) {
+        return file != null && isLargeFile(file.getLength());
+    }
+
+    // A template's view provider has decided once for its whole life, and everything working on its tree follows it
+    public static boolean isLargeFile(@Nullable PsiFile file) {
+        if (file == null) {
+            return false;
+        }
+        FileViewProvider viewProvider = file.getViewProvider();
+        if (viewProvider instanceof FreeMarkerFileViewProvider) {
+            return ((FreeMarkerFileViewProvider) viewProvider).isLargeFile();
+        }
+        return isLargeFile(viewProvider.getVirtualFile());
+    }
+}
@@ -0,0 +1,69 @@
+package com.ennic.freemarker.structure;
+
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.stubs.FreeMarkerDefinitionStub;
+import com.intellij.ide.structureView.StructureViewTreeElement;
+import com.intellij.ide.structureView.impl.common.PsiTreeElementBase;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.PsiFileImpl;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The file, listing the macros, functions and assignments that are not inside a macro or function.
+ * <p>
+ * They are read from the stub tree, so a file whose AST is not loaded is not parsed for them. The list is
+ * cached until the file changes, and the definitions that survive an edit keep their PSI, so the tree
+ * only updates the nodes that changed.
+ */
+public class FreeMarkerStructureViewElement extends PsiTreeElementBase<PsiElement> {
+
+    public FreeMarkerStructureViewElement(@NotNull PsiElement element) {
+        super(element);
+    }
+
+    @NotNull
+    @Override
+    public Collection<StructureViewTreeElement> getChildrenBase() {
+        PsiElement element = getElement();
+        if (!(element instanceof PsiFileImpl)) {
+            return List.of();
+        }
+        List<StructureViewTreeElement> children = new ArrayList<>();
+        for (FreeMarkerDefinition definition : getTopLevelDefinitions((PsiFileImpl) element)) {
+            children.add(new FreeMarkerStructureViewElement(definition));
+        }
+        return children;
+    }
+
+    @Nullable
+    @Override
+    public String getPresentableText() {
+        PsiElement element = getElement();
+        if (element instanceof FreeMarkerDefinition) {
+            return String.join(", ", ((FreeMarkerDefinition) element).getDefinedNames());
+        }
+        return element instanceof PsiFile ? ((PsiFile) element).getName() : null;
+    }
+
+    @NotNull
+    private static List<FreeMarkerDefinition> getTopLevelDefinitions(@NotNull PsiFileImpl file) {
+        return CachedValuesManager.getCachedValue(file, () -> {
+            List<FreeMarkerDefinition> definitions = new ArrayList<>();
+            for (StubElement<?> stub : file.calcStubTree().getRoot().getChildrenStubs()) {
+                if (stub instanceof FreeMarkerDefinitionStub) {
+                    definitions.add(((FreeMarkerDefinitionStub) stub).getPsi());
+                }
+            }
+            return CachedValueProvider.Result.create(definitions, file);
+        });
+    }
+}
@@ -0,0 +1,30 @@
+package com.ennic.freemarker.structure;
+
+import com.intellij.ide.structureView.StructureViewBuilder;
+import com.intellij.ide.structureView.StructureViewModel;
+import com.intellij.ide.structureView.TreeBasedStructureViewBuilder;
+import com.intellij.lang.PsiStructureViewFactory;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class FreeMarkerStructureViewFactory implements PsiStructureViewFactory {
+
+    @Nullable
+    @Override
+    public StructureViewBuilder getStructureViewBuilder(@NotNull PsiFile psiFile) {
+        return new TreeBasedStructureViewBuilder() {
+            @NotNull
+            @Override
+            public StructureViewModel createStructureViewModel(@Nullable Editor editor) {
+                return new FreeMarkerStructureViewModel(psiFile, editor);
+            }
+
+            @Override
+            public boolean isRootNodeShown() {
+                return false;
+            }
+        };
+    }
+}
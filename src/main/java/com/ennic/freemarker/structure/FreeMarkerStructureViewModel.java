@@ -0,0 +1,31 @@
+package com.ennic.freemarker.structure;
+
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.intellij.ide.structureView.StructureViewModel;
+import com.intellij.ide.structureView.StructureViewModelBase;
+import com.intellij.ide.structureView.StructureViewTreeElement;
+import com.intellij.ide.util.treeView.smartTree.Sorter;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class FreeMarkerStructureViewModel extends StructureViewModelBase implements StructureViewModel.ElementInfoProvider {
+
+    public FreeMarkerStructureViewModel(@NotNull PsiFile psiFile, @Nullable Editor editor) {
+        super(psiFile, editor, new FreeMarkerStructureViewElement(psiFile));
+        withSorters(Sorter.ALPHA_SORTER);
+        withSuitableClasses(FreeMarkerDefinition.class);
+    }
+
+    @Override
+    public boolean isAlwaysShowsPlus(StructureViewTreeElement element) {
+        return false;
+    }
+
+    // Only the file has children, so the tree never asks a definition for its own
+    @Override
+    public boolean isAlwaysLeaf(StructureViewTreeElement element) {
+        return element.getValue() instanceof FreeMarkerDefinition;
+    }
+}
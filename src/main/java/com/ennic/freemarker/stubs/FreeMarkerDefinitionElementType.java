@@ -0,0 +1,85 @@
+package com.ennic.freemarker.stubs;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.psi.FreeMarkerPsiUtil;
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.stubs.IndexSink;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubIndexKey;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Element type of a definition that is kept in the stub tree and whose names go into {@code indexKey}.
+ */
+public class FreeMarkerDefinitionElementType extends IStubElementType<FreeMarkerDefinitionStub, FreeMarkerDefinition> {
+    private final StubIndexKey<String, FreeMarkerDefinition> indexKey;
+    private final BiFunction<FreeMarkerDefinitionStub, FreeMarkerDefinitionElementType, FreeMarkerDefinition> psiFactory;
+
+    public FreeMarkerDefinitionElementType(@NotNull @NonNls String debugName,
+                                           @NotNull StubIndexKey<String, FreeMarkerDefinition> indexKey,
+                                           @NotNull BiFunction<FreeMarkerDefinitionStub, FreeMarkerDefinitionElementType, FreeMarkerDefinition> psiFactory) {
+        super(debugName, FreeMarkerLanguage.INSTANCE);
+        this.indexKey = indexKey;
+        this.psiFactory = psiFactory;
+    }
+
+    @Override
+    public FreeMarkerDefinition createPsi(@NotNull FreeMarkerDefinitionStub stub) {
+        return psiFactory.apply(stub, this);
+    }
+
+    @NotNull
+    @Override
+    public FreeMarkerDefinitionStub createStub(@NotNull FreeMarkerDefinition psi, StubElement<?> parentStub) {
+        return new FreeMarkerDefinitionStub(parentStub, this, psi.getDefinedNames());
+    }
+
+    // Definitions without a name, like an unfinished <#macro >, stay out of the stub tree
+    @Override
+    public boolean shouldCreateStub(ASTNode node) {
+        return !FreeMarkerPsiUtil.getDefinedNameNodes(node).isEmpty();
+    }
+
+    @NotNull
+    @Override
+    public String getExternalId() {
+        return "freemarker." + this;
+    }
+
+    @Override
+    public void serialize(@NotNull FreeMarkerDefinitionStub stub, @NotNull StubOutputStream dataStream) throws IOException {
+        List<String> names = stub.getNames();
+        dataStream.writeVarInt(names.size());
+        for (String name : names) {
+            dataStream.writeName(name);
+        }
+    }
+
+    @NotNull
+    @Override
+    public FreeMarkerDefinitionStub deserialize(@NotNull StubInputStream dataStream, StubElement parentStub) throws IOException {
+        int count = dataStream.readVarInt();
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(dataStream.readNameString());
+        }
+        return new FreeMarkerDefinitionStub(parentStub, this, names);
+    }
+
+    @Override
+    public void indexStub(@NotNull FreeMarkerDefinitionStub stub, @NotNull IndexSink sink) {
+        for (String name : stub.getNames()) {
+            sink.occurrence(indexKey, name);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.ennic.freemarker.stubs;
+
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.stubs.StubBase;
+import com.intellij.psi.stubs.StubElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The names a macro, function or assignment defines, so they can be read without parsing the file.
+ */
+public class FreeMarkerDefinitionStub extends StubBase<FreeMarkerDefinition> {
+    private final List<String> names;
+
+    public FreeMarkerDefinitionStub(@Nullable StubElement<?> parent, @NotNull IStubElementType<?, ?> elementType,
+                                    @NotNull List<String> names) {
+        super(parent, elementType);
+        this.names = names;
+    }
+
+    @NotNull
+    public List<String> getNames() {
+        return names;
+    }
+}
@@ -0,0 +1,85 @@
+package com.ennic.freemarker.stubs;
+
+import com.ennic.freemarker.diagnostics.FreeMarkerStats;
+import com.ennic.freemarker.filetype.FreeMarkerFile;
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.ennic.freemarker.lexer.FreeMarkerLexer;
+import com.ennic.freemarker.lexer.FreeMarkerSyntax;
+import com.ennic.freemarker.lexer.FreeMarkerTokenTypes;
+import com.ennic.freemarker.parser.FreeMarkerElementTypes;
+import com.ennic.freemarker.parser.FreeMarkerParser;
+import com.ennic.freemarker.settings.FreeMarkerSettings;
+import com.intellij.lang.ASTFactory;
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.stubs.DefaultStubBuilder;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.psi.stubs.StubBuilder;
+import com.intellij.psi.tree.IStubFileElementType;
+import com.intellij.psi.tree.TokenSet;
+import org.jetbrains.annotations.NotNull;
+
+public class FreeMarkerFileElementType extends IStubFileElementType<PsiFileStub<FreeMarkerFile>> {
+    // Nothing below these can hold a definition, so the stub builder does not descend into them
+    private static final TokenSet SKIPPED = TokenSet.create(
+            FreeMarkerElementTypes.START_TAG, FreeMarkerElementTypes.END_TAG,
+            FreeMarkerElementTypes.DIRECTIVE, FreeMarkerElementTypes.INTERPOLATION, FreeMarkerElementTypes.MACRO_CALL);
+
+    public FreeMarkerFileElementType() {
+        super("FREEMARKER_FILE", FreeMarkerLanguage.INSTANCE);
+    }
+
+    @Override
+    public int getStubVersion() {
+        return 2;
+    }
+
+    @NotNull
+    @Override
+    public String getExternalId() {
+        return "freemarker.FILE";
+    }
+
+    // Above the large file threshold the whole file is a single leaf: nothing to lex, nothing to stub, and a tree
+    // that does not grow with the file. The view provider decides the mode, so the tree matches its languages.
+    @Override
+    protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+        PsiFile file = psi.getContainingFile();
+        int syntax = file != null ? FreeMarkerSyntax.get(file) : FreeMarkerSyntax.DETECT;
+        boolean largeFile = file != null ? FreeMarkerSettings.isLargeFile(file) :
+                FreeMarkerSettings.isLargeFile(chameleon.getTextLength());
+        if (!largeFile) {
+            if (FreeMarkerStats.ENABLED) {
+                long start = System.nanoTime();
+                ASTNode tree = parse(chameleon, psi, syntax);
+                FreeMarkerStats.fileParsed(file != null ? file.getName() : "?", chameleon.getTextLength(),
+                        System.nanoTime() - start);
+                return tree;
+            }
+            return parse(chameleon, psi, syntax);
+        }
+        // Neither lexed nor built: the leaf shares the file's characters
+        CharSequence chars = chameleon.getChars();
+        return chars.length() > 0 ? ASTFactory.leaf(FreeMarkerTokenTypes.TEXT, chars) : null;
+    }
+
+    // Parsed with a lexer for the file's syntax rather than the parser definition's
+    private ASTNode parse(ASTNode chameleon, PsiElement psi, int syntax) {
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(psi.getProject(), chameleon,
+                new FreeMarkerLexer(false, syntax), getLanguage(), chameleon.getChars());
+        return new FreeMarkerParser().parse(this, builder).getFirstChildNode();
+    }
+
+    @Override
+    public StubBuilder getBuilder() {
+        return new DefaultStubBuilder() {
+            @Override
+            protected boolean skipChildProcessingWhenBuildingStubs(@NotNull ASTNode parent, @NotNull ASTNode node) {
+                return SKIPPED.contains(node.getElementType());
+            }
+        };
+    }
+}
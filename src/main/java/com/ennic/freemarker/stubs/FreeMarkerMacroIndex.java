@@ -0,0 +1,30 @@
+package com.ennic.freemarker.stubs;
+
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.stubs.StringStubIndexExtension;
+import com.intellij.psi.stubs.StubIndex;
+import com.intellij.psi.stubs.StubIndexKey;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * Names defined by <#macro>, mapped to their definitions.
+ */
+public class FreeMarkerMacroIndex extends StringStubIndexExtension<FreeMarkerDefinition> {
+    public static final StubIndexKey<String, FreeMarkerDefinition> KEY = StubIndexKey.createIndexKey("freemarker.macro");
+
+    @NotNull
+    @Override
+    public StubIndexKey<String, FreeMarkerDefinition> getKey() {
+        return KEY;
+    }
+
+    @NotNull
+    public static Collection<FreeMarkerDefinition> find(@NotNull String name, @NotNull Project project,
+                                                        @NotNull GlobalSearchScope scope) {
+        return StubIndex.getElements(KEY, name, project, scope, FreeMarkerDefinition.class);
+    }
+}
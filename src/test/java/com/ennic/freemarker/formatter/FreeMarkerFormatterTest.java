@@ -0,0 +1,122 @@
+package com.ennic.freemarker.formatter;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+public class FreeMarkerFormatterTest extends BasePlatformTestCase {
+    private static final long WHOLE_FILE_LIMIT_MS = 1000;
+
+    public void testBlockBodiesAreIndented() {
+        doTest("""
+                <#if user??>
+                <p>${user.name}</p>
+                <#elseif guest>
+                <p>Guest</p>
+                <#else>
+                <p>Nobody</p>
+                </#if>
+                """, """
+                <#if user??>
+                    <p>${user.name}</p>
+                <#elseif guest>
+                    <p>Guest</p>
+                <#else>
+                    <p>Nobody</p>
+                </#if>
+                """);
+    }
+
+    public void testNestedBlocks() {
+        doTest("""
+                <#macro row item>
+                <#list item.cells as cell>
+                <#if cell??>
+                ${cell}
+                </#if>
+                </#list>
+                </#macro>
+                """, """
+                <#macro row item>
+                    <#list item.cells as cell>
+                        <#if cell??>
+                            ${cell}
+                        </#if>
+                    </#list>
+                </#macro>
+                """);
+    }
+
+    public void testBlocksInsideMarkup() {
+        doTest("""
+                <ul>
+                <#list items as item>
+                <li>${item}</li>
+                </#list>
+                </ul>
+                """, """
+                <ul>
+                    <#list items as item>
+                        <li>${item}</li>
+                    </#list>
+                </ul>
+                """);
+    }
+
+    public void testRangeLeavesRestAlone() {
+        myFixture.configureByText("range.ftl", """
+                <#if a>
+                x
+                </#if>
+                <#if b>
+                y
+                </#if>
+                """);
+        PsiFile file = myFixture.getFile();
+        int start = file.getText().indexOf("<#if b>");
+        WriteCommandAction.runWriteCommandAction(getProject(),
+                () -> CodeStyleManager.getInstance(getProject()).reformatText(file, start, file.getTextLength()));
+        myFixture.checkResult("""
+                <#if a>
+                x
+                </#if>
+                <#if b>
+                    y
+                </#if>
+                """);
+    }
+
+    // Reformatting a 10,000 line template takes under a second once the formatter is warmed up
+    public void testTenThousandLinesUnderASecond() {
+        String unit = """
+                <#list orders as order>
+                <tr>
+                <#if order.paid>
+                <td>${order.id}</td>
+                <#else>
+                <td>-</td>
+                </#if>
+                </tr>
+                </#list>
+                """;
+        String text = unit.repeat(10_000 / 9 + 1);
+        reformat(myFixture.configureByText("warmup.ftl", text));
+        PsiFile file = myFixture.configureByText("large.ftl", text);
+
+        long start = System.nanoTime();
+        reformat(file);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("reformatting took " + elapsed + " ms", elapsed < WHOLE_FILE_LIMIT_MS);
+    }
+
+    private void doTest(String before, String after) {
+        reformat(myFixture.configureByText("test.ftl", before));
+        myFixture.checkResult(after);
+    }
+
+    private void reformat(PsiFile file) {
+        WriteCommandAction.runWriteCommandAction(getProject(),
+                () -> CodeStyleManager.getInstance(getProject()).reformat(file));
+    }
+}
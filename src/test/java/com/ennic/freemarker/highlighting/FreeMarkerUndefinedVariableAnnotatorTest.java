@@ -0,0 +1,61 @@
+package com.ennic.freemarker.highlighting;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+public class FreeMarkerUndefinedVariableAnnotatorTest extends BasePlatformTestCase {
+
+    public void testUseBeforeTopLevelAssignment() {
+        checkWarnings("${<warning descr=\"Variable 'title' is used before it is defined\">title</warning>}" +
+                "<#assign title = \"Home\">${title}");
+    }
+
+    public void testMacroBodySeesLaterAssignments() {
+        checkWarnings("<#macro header>${title}</#macro><#assign title = \"Home\"><@header/>");
+    }
+
+    public void testLoopVariableOutsideItsList() {
+        checkWarnings("<#list items as item>${item}</#list>" +
+                "${<warning descr=\"Variable 'item' is not defined in this scope\">item</warning>}");
+    }
+
+    public void testMacroCallLoopVariables() {
+        checkWarnings("<@repeat count=3 ; i>${i}</@repeat>" +
+                "${<warning descr=\"Variable 'i' is not defined in this scope\">i</warning>}");
+    }
+
+    public void testLoopSuffixesInsideAndOutsideTheirList() {
+        checkWarnings("<#list items as item>${item_index}<#if item_has_next>,</#if></#list>" +
+                "${<warning descr=\"Variable 'item_index' is not defined in this scope\">item_index</warning>}");
+    }
+
+    public void testMissingNamespaceMember() {
+        myFixture.addFileToProject("lib.ftl", "<#macro greet>Hi</#macro>");
+        checkWarnings("<#import \"lib.ftl\" as lib><@lib.greet/>" +
+                "${lib<warning descr=\"Cannot resolve 'missing' in namespace 'lib'\">.missing</warning>}");
+    }
+
+    public void testNamespaceMemberOfLibraryWithIncludesIsNotChecked() {
+        myFixture.addFileToProject("parts.ftl", "<#macro footer>Bye</#macro>");
+        myFixture.addFileToProject("lib.ftl", "<#include \"parts.ftl\"><#macro greet>Hi</#macro>");
+        checkWarnings("<#import \"lib.ftl\" as lib><@lib.greet/>${lib.footer}");
+    }
+
+    public void testFtlVariableIsNotChecked() {
+        checkWarnings("<#-- @ftlvariable name=\"title\" type=\"java.lang.String\" -->" +
+                "${title}<#assign title = \"Home\">");
+    }
+
+    public void testDataModelNamesAreNotChecked() {
+        checkWarnings("${user.name}<#list orders as order>${order.id}</#list>");
+    }
+
+    public void testNameDefinedInIncludedTemplate() {
+        myFixture.addFileToProject("header.ftl", "<#assign title = \"Home\">");
+        checkWarnings("<#include \"header.ftl\">${title}<#assign title = \"Page\">");
+    }
+
+    private void checkWarnings(String text) {
+        myFixture.configureByText("page.ftl", text);
+        myFixture.checkHighlighting(true, false, false);
+    }
+}
@@ -0,0 +1,147 @@
+package com.ennic.freemarker.java;
+
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.intellij.lang.Language;
+import com.intellij.lang.injection.InjectedLanguageManager;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.Nullable;
+
+public class FreeMarkerLiteralInjectorTest extends LightJavaCodeInsightFixtureTestCase {
+    private static final long KEYSTROKE_LIMIT_MS = 100;
+
+    public void testTemplateWithReader() {
+        addFreeMarkerClasses();
+        configure("new Template(\"t\", new StringReader(\"<#if a>${<caret>b}</#if>\"));");
+        assertEquals(FreeMarkerLanguage.INSTANCE, getInjectedLanguage());
+    }
+
+    public void testTemplateWithSourceCode() {
+        addFreeMarkerClasses();
+        configure("new Template(\"t\", \"${<caret>b}\", new Configuration());");
+        assertEquals(FreeMarkerLanguage.INSTANCE, getInjectedLanguage());
+    }
+
+    public void testPutTemplate() {
+        addFreeMarkerClasses();
+        configure("new StringTemplateLoader().putTemplate(\"t\", \"${<caret>b}\");");
+        assertEquals(FreeMarkerLanguage.INSTANCE, getInjectedLanguage());
+    }
+
+    public void testConstantPassedAsTemplateSource() {
+        addFreeMarkerClasses();
+        configure("String source = \"${<caret>b}\";\n        new Template(\"t\", new StringReader(source));");
+        assertEquals(FreeMarkerLanguage.INSTANCE, getInjectedLanguage());
+    }
+
+    public void testOtherLiteralsAreNotInjected() {
+        addFreeMarkerClasses();
+        configure("String source = \"${<caret>b}\";\n        System.out.println(source);");
+        assertNull(getInjectedLanguage());
+    }
+
+    public void testOtherClassNamedTemplateIsNotInjected() {
+        addFreeMarkerClasses();
+        myFixture.addClass("package other; public class Template { public Template(String n, java.io.Reader r) {} }");
+        myFixture.configureByText("Templates.java", """
+                import other.Template;
+                import java.io.StringReader;
+
+                class Templates {
+                    void load() {
+                        new Template("t", new StringReader("${<caret>b}"));
+                    }
+                }
+                """);
+        assertNull(getInjectedLanguage());
+    }
+
+    // Without FreeMarker on the classpath only the imports tell which Template is meant
+    public void testUnresolvedTemplateNeedsImport() {
+        configure("new Template(\"t\", new StringReader(\"${<caret>b}\"));");
+        assertEquals(FreeMarkerLanguage.INSTANCE, getInjectedLanguage());
+
+        myFixture.configureByText("Other.java", """
+                import java.io.StringReader;
+
+                class Other {
+                    void load() {
+                        new Template("t", new StringReader("${<caret>b}"));
+                    }
+                }
+                """);
+        assertNull(getInjectedLanguage());
+    }
+
+    // One keystroke among 200 injected templates, commit and injected lookup included, stays under 100 ms
+    public void testKeystrokeAmongManyTemplates() {
+        addFreeMarkerClasses();
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            body.append("new Template(\"t").append(i).append("\", new StringReader(\"<#list items as item>")
+                    .append(i == 100 ? "${<caret>order}" : "${item.name}").append("</#list>\"));\n        ");
+        }
+        configure(body.toString());
+        PsiFile file = myFixture.getFile();
+        Document document = PsiDocumentManager.getInstance(getProject()).getDocument(file);
+        int caret = myFixture.getCaretOffset();
+        typeAt(document, caret);
+
+        long start = System.nanoTime();
+        typeAt(document, caret);
+        PsiElement injected = InjectedLanguageManager.getInstance(getProject()).findInjectedElementAt(file, caret);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        assertNotNull(injected);
+        assertTrue("a keystroke took " + elapsed + " ms", elapsed < KEYSTROKE_LIMIT_MS);
+    }
+
+    private void typeAt(Document document, int offset) {
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            document.insertString(offset, "x");
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+        });
+    }
+
+    private void addFreeMarkerClasses() {
+        myFixture.addClass("package freemarker.template; public class Configuration {}");
+        myFixture.addClass("""
+                package freemarker.template;
+                public class Template {
+                    public Template(String name, java.io.Reader reader) {}
+                    public Template(String name, String sourceCode, Configuration cfg) {}
+                }
+                """);
+        myFixture.addClass("""
+                package freemarker.cache;
+                public class StringTemplateLoader {
+                    public void putTemplate(String name, String templateContent) {}
+                }
+                """);
+    }
+
+    private void configure(String statements) {
+        myFixture.configureByText("Templates.java", """
+                import freemarker.cache.StringTemplateLoader;
+                import freemarker.template.Configuration;
+                import freemarker.template.Template;
+                import java.io.StringReader;
+
+                class Templates {
+                    void load() {
+                        %s
+                    }
+                }
+                """.formatted(statements));
+    }
+
+    @Nullable
+    private Language getInjectedLanguage() {
+        PsiElement injected = InjectedLanguageManager.getInstance(getProject())
+                .findInjectedElementAt(myFixture.getFile(), myFixture.getCaretOffset());
+        return injected != null ? injected.getContainingFile().getLanguage() : null;
+    }
+}
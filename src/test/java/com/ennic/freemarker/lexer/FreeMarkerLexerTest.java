@@ -0,0 +1,330 @@
+package com.ennic.freemarker.lexer;
+
+import com.ennic.freemarker.parser.FreeMarkerDirectives;
+import com.intellij.lexer.Lexer;
+import com.intellij.testFramework.LexerTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class FreeMarkerLexerTest extends LexerTestCase {
+    private static final String TEMPLATE = """
+            <#ftl output_format="HTML">
+            <#-- Order summary, TODO: paging -->
+            <#import "/lib/utils.ftl" as utils>
+            <#assign total = 0 />
+            <table class="${style!'plain'}">
+            <#list order.items as item>
+              <tr title="${item.name?html} (${item.id})">
+                <td>${item.price?string("0.00")}</td>
+                <td><@utils.badge label="${item.tag!''}" active=item.active/></td>
+              </tr>
+              <#assign total = total + item.price>
+            <#else>
+              <tr><td>No items</td></tr>
+            </#list>
+            </table>
+            <#if total gt 100 && customer.vip?? >${"Free shipping for ${customer.name}"}</#if>
+            """;
+
+    private static final String SQUARE_TEMPLATE = """
+            [#ftl]
+            [#-- square bracket syntax --]
+            [#list rows as row]
+              <li data-i="[=row?index]">[=row.cells[0]!"-"] [@cell value=row.values[1] /]</li>
+            [/#list]
+            """;
+
+    @Override
+    protected Lexer createLexer() {
+        return new FreeMarkerLexer();
+    }
+
+    @Override
+    protected String getDirPath() {
+        return "";
+    }
+
+    public void testDirectiveAndInterpolation() {
+        doTest("<#if a>${b}</#if>", """
+                DIRECTIVE_START ('<#')
+                DIRECTIVE_NAME ('if')
+                TEXT (' ')
+                IDENTIFIER ('a')
+                DIRECTIVE_END ('>')
+                INTERPOLATION_START ('${')
+                IDENTIFIER ('b')
+                INTERPOLATION_END ('}')
+                DIRECTIVE_CLOSING ('</#')
+                DIRECTIVE_NAME ('if')
+                DIRECTIVE_END ('>')""");
+    }
+
+    // The camelCase spellings are directives too, and the blocks among them need end tags like the lower case ones
+    public void testCamelCaseDirectives() {
+        doTest("<#elseIf a>", """
+                DIRECTIVE_START ('<#')
+                DIRECTIVE_NAME ('elseIf')
+                TEXT (' ')
+                IDENTIFIER ('a')
+                DIRECTIVE_END ('>')""");
+        for (String name : new String[]{"noParse", "noEscape", "outputFormat", "autoEsc", "noAutoEsc"}) {
+            assertTrue(name, FreeMarkerRegistry.isDirective(name));
+            assertTrue(name, FreeMarkerDirectives.isRequiredBlock(name));
+        }
+        assertTrue(FreeMarkerDirectives.isClauseOf("elseIf", "if"));
+    }
+
+    // Buffer reads per character must not grow with the file, whatever the file is made of
+    public void testLinearTime() {
+        assertLinear(TEMPLATE);
+        assertLinear("<#-- unterminated comment\n");
+        assertLinear("<#assign s = \"unterminated string ${x}\n");
+        assertLinear("${a[\"${b['${c}']}\"]}");
+        assertLinear("<#if " + "x".repeat(200) + ">\n");
+        assertLinear("<div class=\"a\">" + "text ".repeat(40) + "</div>\n");
+    }
+
+    // After warm-up, lexing a large buffer allocates nothing per token
+    public void testNoAllocationPerToken() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        String text = TEMPLATE.repeat(2000);
+        FreeMarkerLexer lexer = new FreeMarkerLexer();
+        for (int i = 0; i < 5; i++) {
+            countTokens(lexer, text);
+        }
+
+        long before = allocations.getCurrentThreadAllocatedBytes();
+        int tokens = countTokens(lexer, text);
+        long allocated = allocations.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue("lexed too few tokens: " + tokens, tokens > 100_000);
+        assertTrue("lexing " + tokens + " tokens allocated " + allocated + " bytes", allocated < 16 * 1024);
+    }
+
+    // Restarting at any token with its state gives the rest of the full token stream
+    public void testRestartFromEveryToken() {
+        assertRestartable(TEMPLATE);
+        assertRestartable(SQUARE_TEMPLATE);
+        assertRestartable("<#assign s = \"a ${b + \"c ${d}\"} e\" /><#-- open\n<#if x>${'q'}</#if> -->");
+        assertRestartable("<#assign s = \"unterminated\n<#-- unterminated\n${x}");
+    }
+
+    // Relexing from the last restartable token before an edit gives the tokens of a full relex
+    public void testIncrementalRelex() {
+        Random random = new Random(7);
+        String[] insertions = {"\"", "'", "${", "}", "<#", ">", "<#--", "-->", "[", "?", "#", "x", " "};
+        for (String base : new String[]{TEMPLATE.repeat(5), SQUARE_TEMPLATE.repeat(5)}) {
+            for (int i = 0; i < 200; i++) {
+                int offset = random.nextInt(base.length() + 1);
+                String insertion = insertions[random.nextInt(insertions.length)];
+                String text = base.substring(0, offset) + insertion + base.substring(offset);
+                // An edit that changes the detected syntax relexes the whole file
+                if (FreeMarkerSyntax.detect(text) != FreeMarkerSyntax.detect(base)) {
+                    continue;
+                }
+                Relex relex = relex(lex(base, 0, 0), text, offset, insertion.length());
+                assertTokens("inserting " + insertion + " at " + offset, lex(text, 0, 0), relex.tokens);
+            }
+        }
+    }
+
+    // A keystroke in the middle of a 10,000 line template relexes a few lines around it. Typing into a comment
+    // can break its end and so legitimately extend it up to the next one.
+    public void testKeystrokeRelexesFewLines() {
+        String base = TEMPLATE.repeat(700);
+        List<Token> tokens = lex(base, 0, 0);
+        Random random = new Random(11);
+        for (int i = 0; i < 100; i++) {
+            int offset = base.length() / 4 + random.nextInt(base.length() / 2);
+            if (isInComment(tokens, offset)) {
+                continue;
+            }
+            String text = base.substring(0, offset) + "x" + base.substring(offset);
+            Relex relex = relex(tokens, text, offset, 1);
+            assertTrue("typing at " + offset + " relexed " + relex.relexed + " characters", relex.relexed < 400);
+        }
+    }
+
+    // An opening quote typed into a directive ends its string with the line instead of turning the rest of
+    // the file inside out
+    public void testUnterminatedStringRelexIsBounded() {
+        String base = TEMPLATE.repeat(700);
+        List<Token> tokens = lex(base, 0, 0);
+        for (int i = tokens.size() / 2; i < tokens.size() / 2 + 400; i++) {
+            if (tokens.get(i).type.equals("DIRECTIVE_NAME")) {
+                int offset = tokens.get(i).end + 1;
+                for (String quote : new String[]{"\"", "'"}) {
+                    String text = base.substring(0, offset) + quote + base.substring(offset);
+                    Relex relex = relex(tokens, text, offset, 1);
+                    assertTrue("quote at " + offset + " relexed " + relex.relexed + " characters",
+                            relex.relexed < 200);
+                    assertTokens("quote at " + offset, lex(text, 0, 0), relex.tokens);
+                }
+            }
+        }
+    }
+
+    // A comment start without an end relexes at most its lookahead window, however long the file
+    public void testUnterminatedCommentRelexIsBounded() {
+        String base = TEMPLATE.replace("<#-- Order summary, TODO: paging -->\n", "").repeat(2000);
+        List<Token> tokens = lex(base, 0, 0);
+        Random random = new Random(13);
+        for (int i = 0; i < 20; i++) {
+            int offset = base.indexOf("<table", base.length() / 4 + random.nextInt(base.length() / 2));
+            String text = base.substring(0, offset) + "<#--" + base.substring(offset);
+            Relex relex = relex(tokens, text, offset, 4);
+            assertTrue("comment at " + offset + " relexed " + relex.relexed + " characters",
+                    relex.relexed < (1 << 16) + 200 && relex.relexed < base.length() / 10);
+            assertTokens("comment at " + offset, lex(text, 0, 0), relex.tokens);
+        }
+    }
+
+    private static boolean isInComment(List<Token> tokens, int offset) {
+        for (Token token : tokens) {
+            if (token.start < offset && offset < token.end) {
+                return token.type.equals("COMMENT");
+            }
+        }
+        return false;
+    }
+
+    private static void assertRestartable(String text) {
+        FreeMarkerLexer lexer = new FreeMarkerLexer();
+        List<Token> tokens = lex(text, 0, 0);
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (lexer.isRestartableState(token.state)) {
+                assertTokens("restarting at " + token.start, tokens.subList(i, tokens.size()),
+                        lex(text, token.start, token.state));
+            }
+        }
+    }
+
+    // Fails at the first token that differs, rather than printing both streams
+    private static void assertTokens(String message, List<Token> expected, List<Token> actual) {
+        for (int i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            assertEquals(message + ", token " + i, expected.get(i), actual.get(i));
+        }
+        assertEquals(message + ", token count", expected.size(), actual.size());
+    }
+
+    // What the editor highlighter does after an insertion: restart two tokens before the one holding the edit,
+    // or further back at a restartable state, and stop at the first token that starts where a token of the old
+    // text started, with the same state
+    private static Relex relex(List<Token> old, String text, int offset, int inserted) {
+        FreeMarkerLexer lexer = new FreeMarkerLexer();
+        int first = 0;
+        while (first + 1 < old.size() && old.get(first + 1).start <= offset) {
+            first++;
+        }
+        first = Math.max(0, first - 2);
+        while (first > 0 && !lexer.isRestartableState(old.get(first).state)) {
+            first--;
+        }
+        int start = old.isEmpty() ? 0 : old.get(first).start;
+        List<Token> tokens = new ArrayList<>(old.subList(0, first));
+
+        int next = first;
+        lexer.start(text, start, text.length(), old.isEmpty() ? 0 : old.get(first).state);
+        for (; lexer.getTokenType() != null; lexer.advance()) {
+            while (next < old.size() && (old.get(next).start < offset ||
+                    old.get(next).start + inserted < lexer.getTokenStart())) {
+                next++;
+            }
+            if (next < old.size() && lexer.isRestartableState(lexer.getState())) {
+                Token same = old.get(next);
+                if (same.start + inserted == lexer.getTokenStart() && same.state == lexer.getState()) {
+                    for (Token token : old.subList(next, old.size())) {
+                        tokens.add(new Token(token.type, token.start + inserted, token.end + inserted, token.state));
+                    }
+                    return new Relex(tokens, lexer.getTokenStart() - start);
+                }
+            }
+            tokens.add(new Token(lexer.getTokenType().toString(), lexer.getTokenStart(), lexer.getTokenEnd(),
+                    lexer.getState()));
+        }
+        return new Relex(tokens, text.length() - start);
+    }
+
+    private static List<Token> lex(CharSequence text, int start, int state) {
+        FreeMarkerLexer lexer = new FreeMarkerLexer();
+        List<Token> tokens = new ArrayList<>();
+        for (lexer.start(text, start, text.length(), state); lexer.getTokenType() != null; lexer.advance()) {
+            tokens.add(new Token(lexer.getTokenType().toString(), lexer.getTokenStart(), lexer.getTokenEnd(),
+                    lexer.getState()));
+        }
+        return tokens;
+    }
+
+    private static void assertLinear(String unit) {
+        long small = countReads(unit.repeat(100));
+        long large = countReads(unit.repeat(1600));
+        int smallLength = unit.length() * 100;
+
+        assertTrue("reads per character: " + (double) small / smallLength, small <= 16L * smallLength);
+        assertTrue("reads grew from " + small + " to " + large + " for 16 times the text",
+                large <= 17 * small);
+    }
+
+    private static long countReads(String text) {
+        CountingSequence buffer = new CountingSequence(text);
+        countTokens(new FreeMarkerLexer(), buffer);
+        return buffer.reads;
+    }
+
+    private static int countTokens(FreeMarkerLexer lexer, CharSequence text) {
+        int tokens = 0;
+        for (lexer.start(text, 0, text.length(), 0); lexer.getTokenType() != null; lexer.advance()) {
+            tokens++;
+        }
+        return tokens;
+    }
+
+    private static class CountingSequence implements CharSequence {
+        final String text;
+        long reads;
+
+        CountingSequence(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            reads++;
+            return text.charAt(index);
+        }
+
+        @NotNull
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    private record Token(String type, int start, int end, int state) {
+    }
+
+    // Tokens after an incremental relex, and how many characters it relexed
+    private record Relex(List<Token> tokens, int relexed) {
+    }
+}
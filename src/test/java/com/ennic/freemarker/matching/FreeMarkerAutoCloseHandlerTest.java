@@ -0,0 +1,112 @@
+package com.ennic.freemarker.matching;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+public class FreeMarkerAutoCloseHandlerTest extends BasePlatformTestCase {
+    private static final long KEYSTROKE_LIMIT_NANOS = 1_000_000;
+    private static final String START_TAG = "<#list items as item";
+
+    public void testStartTagInsertsEndTag() {
+        myFixture.configureByText("page.ftl", "<#list items as item<caret>");
+        myFixture.type('>');
+        myFixture.checkResult("<#list items as item><caret></#list>");
+    }
+
+    public void testSlashCompletesInnermostDirective() {
+        myFixture.configureByText("page.ftl", "<#list items as item>\n<#if item.visible>\n<<caret>\n</#list>");
+        myFixture.type('/');
+        myFixture.checkResult("<#list items as item>\n<#if item.visible>\n</#if><caret>\n</#list>");
+    }
+
+    public void testSquareBracketSyntax() {
+        myFixture.configureByText("page.ftl", "[#list items as item]\n[<caret>");
+        myFixture.type('/');
+        myFixture.checkResult("[#list items as item]\n[/#list]<caret>");
+    }
+
+    public void testSlashClosesMarkupOpenedInsideDirective() {
+        myFixture.configureByText("page.ftl", "<#if x><div><<caret>");
+        myFixture.type('/');
+        assertFalse(myFixture.getEditor().getDocument().getText().contains("</#if>"));
+    }
+
+    public void testSlashCompletesDirectiveAfterClosedMarkup() {
+        myFixture.configureByText("page.ftl", "<#if x><div><br></div><<caret>");
+        myFixture.type('/');
+        myFixture.checkResult("<#if x><div><br></div></#if><caret>");
+    }
+
+    public void testRequiredBlockInsideClosedDirective() {
+        myFixture.configureByText("page.ftl", "<#list xs>\n<#items as x<caret>\n</#list>");
+        myFixture.type('>');
+        myFixture.checkResult("<#list xs>\n<#items as x><caret></#items>\n</#list>");
+    }
+
+    public void testNoCompletionInComment() {
+        myFixture.configureByText("page.ftl", "<#list items as item>\n<#-- <<caret> -->");
+        myFixture.type('/');
+        myFixture.checkResult("<#list items as item>\n<#-- </<caret> -->");
+    }
+
+    public void testNoCompletionInString() {
+        myFixture.configureByText("page.ftl", "<#list items as item>\n${\"<<caret>\"}");
+        myFixture.type('/');
+        myFixture.checkResult("<#list items as item>\n${\"</<caret>\"}");
+    }
+
+    // Typing the ">" of a start tag in the middle of a 20,000 line template, end tag included, stays under 1 ms
+    public void testKeystrokeInTwentyThousandLinesUnderAMillisecond() {
+        String unit = """
+                <#list orders as order>
+                <tr>
+                <#if order.paid>
+                <td>${order.id}</td>
+                <#else>
+                <td>-</td>
+                </#if>
+                </tr>
+                </#list>
+                """;
+        String text = unit.repeat(20_000 / 9 + 1);
+        PsiFile file = myFixture.configureByText("large.ftl", text);
+        Editor editor = myFixture.getEditor();
+        Document document = editor.getDocument();
+        int caret = text.indexOf('\n', text.length() / 2) + 1;
+        FreeMarkerBlockPairs.forDocument(document);
+        FreeMarkerAutoCloseHandler handler = new FreeMarkerAutoCloseHandler();
+
+        int keystrokes = 200;
+        for (int i = 0; i < keystrokes; i++) {
+            typeTagEnd(handler, file, editor, caret);
+        }
+        long nanos = 0;
+        for (int i = 0; i < keystrokes; i++) {
+            nanos += typeTagEnd(handler, file, editor, caret);
+        }
+        long average = nanos / keystrokes;
+        assertTrue("a keystroke took " + average / 1000 + " us", average < KEYSTROKE_LIMIT_NANOS);
+    }
+
+    // Types the start tag, then times its ">" and the inserted end tag, and removes both again
+    private long typeTagEnd(FreeMarkerAutoCloseHandler handler, PsiFile file, Editor editor, int caret) {
+        Document document = editor.getDocument();
+        int offset = caret + START_TAG.length();
+        long[] nanos = new long[1];
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(caret, START_TAG));
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+            long start = System.nanoTime();
+            document.insertString(offset, ">");
+            editor.getCaretModel().moveToOffset(offset + 1);
+            handler.charTyped('>', getProject(), editor, file);
+            nanos[0] = System.nanoTime() - start;
+        });
+        int end = offset + ">".length() + "</#list>".length();
+        assertEquals("</#list>", document.getCharsSequence().subSequence(offset + 1, end).toString());
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.deleteString(caret, end));
+        return nanos[0];
+    }
+}
@@ -0,0 +1,132 @@
+package com.ennic.freemarker.reference;
+
+import com.ennic.freemarker.psi.FreeMarkerAssignment;
+import com.ennic.freemarker.psi.FreeMarkerDefinition;
+import com.ennic.freemarker.psi.FreeMarkerMacroBlock;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiPolyVariantReference;
+import com.intellij.psi.ResolveResult;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+public class FreeMarkerReferenceTest extends BasePlatformTestCase {
+
+    public void testVariableResolvesToAssignmentInFile() {
+        myFixture.configureByText("page.ftl", "<#assign title = \"Home\">${tit<caret>le}");
+        PsiElement target = resolveSingle();
+        assertInstanceOf(target, FreeMarkerAssignment.class);
+        assertEquals("title", ((FreeMarkerDefinition) target).getName());
+    }
+
+    public void testVariableResolvesThroughInclude() {
+        PsiFile header = myFixture.addFileToProject("header.ftl", "<#assign title = \"Home\">");
+        myFixture.configureByText("page.ftl", "<#include \"header.ftl\">${tit<caret>le}");
+        assertEquals(header, resolveSingle().getContainingFile());
+    }
+
+    public void testVariableDoesNotResolveToUnrelatedTemplate() {
+        myFixture.addFileToProject("other.ftl", "<#assign title = \"Home\">");
+        myFixture.configureByText("page.ftl", "${tit<caret>le}");
+        assertEmpty(multiResolve());
+    }
+
+    public void testLoopVariableResolvesToItsBinding() {
+        String text = "<#assign item = 0><#list items as item>${it<caret>em}</#list>";
+        myFixture.configureByText("page.ftl", text);
+        assertBindsTo(text.indexOf("as item") + 3);
+    }
+
+    public void testMacroParameterResolvesToItsBinding() {
+        String text = "<#assign name = 0><#macro greet name>${na<caret>me}</#macro>";
+        myFixture.configureByText("page.ftl", text);
+        assertBindsTo(text.indexOf("greet name") + 6);
+    }
+
+    public void testLocalResolvesToItsBinding() {
+        String text = "<#macro m><#local count = 1>${cou<caret>nt}</#macro>";
+        myFixture.configureByText("page.ftl", text);
+        assertBindsTo(text.indexOf("count"));
+    }
+
+    public void testLocalIsNotVisibleOutsideItsMacro() {
+        myFixture.configureByText("page.ftl", "<#macro m><#local count = 1></#macro>${cou<caret>nt}");
+        assertEmpty(multiResolve());
+    }
+
+    public void testMacroResolvesAnywhereInProject() {
+        myFixture.addFileToProject("lib/macros.ftl", "<#macro greet>Hi</#macro>");
+        myFixture.configureByText("page.ftl", "<@gre<caret>et/>");
+        assertInstanceOf(resolveSingle(), FreeMarkerMacroBlock.class);
+    }
+
+    public void testRenameMacroUpdatesCallsInOtherTemplates() {
+        PsiFile lib = myFixture.addFileToProject("lib/macros.ftl", "<#macro greet>Hi</#macro>");
+        PsiFile other = myFixture.addFileToProject("other.ftl", "<@greet/><@greet></@greet>");
+        myFixture.configureByText("page.ftl", "<@gre<caret>et/>");
+        myFixture.renameElementAtCaret("welcome");
+        myFixture.checkResult("<@welcome/>");
+        assertEquals("<#macro welcome>Hi</#macro>", lib.getText());
+        assertEquals("<@welcome/><@welcome></@welcome>", other.getText());
+    }
+
+    public void testRenameVariableUpdatesUses() {
+        myFixture.configureByText("page.ftl", "<#assign count = 1>${cou<caret>nt} ${count + 1}");
+        myFixture.renameElementAtCaret("total");
+        myFixture.checkResult("<#assign total = 1>${total} ${total + 1}");
+    }
+
+    public void testRenameLoopVariable() {
+        myFixture.configureByText("page.ftl", "<#assign item = 0>" +
+                "<#list items as item>${it<caret>em.name}<#if item.active>${item}</#if></#list>${item}");
+        myFixture.renameElementAtCaret("row");
+        myFixture.checkResult("<#assign item = 0>" +
+                "<#list items as row>${row.name}<#if row.active>${row}</#if></#list>${item}");
+    }
+
+    public void testRenameMacroParameter() {
+        myFixture.configureByText("page.ftl", "<#macro greet name greeting=\"Hi\">${greeting} ${na<caret>me}</#macro>");
+        myFixture.renameElementAtCaret("title");
+        myFixture.checkResult("<#macro greet title greeting=\"Hi\">${greeting} ${title}</#macro>");
+    }
+
+    // item_index is one name to the word index, so it could not be renamed along with item
+    public void testLoopSuffixIsNotBoundToLoopVariable() {
+        myFixture.configureByText("page.ftl", "<#list items as item>${item_ind<caret>ex}</#list>");
+        assertEmpty(multiResolve());
+    }
+
+    public void testFindUsagesOfLoopVariable() {
+        myFixture.configureByText("page.ftl", "<#list items as item>${it<caret>em.name} ${item}</#list>${item}");
+        assertSize(2, myFixture.findUsages(resolveSingle()));
+    }
+
+    public void testFindUsagesOfMacro() {
+        myFixture.addFileToProject("other.ftl", "<@greet/><@greet name=\"x\"/>");
+        myFixture.addFileToProject("unrelated.ftl", "${greet}");
+        myFixture.configureByText("lib.ftl", "<#macro greet>Hi</#macro><@gre<caret>et/>");
+        assertSize(3, myFixture.findUsages(resolveSingle()));
+    }
+
+    public void testFindUsagesOfVariableStaysInIncludingTemplates() {
+        myFixture.addFileToProject("page.ftl", "<#include \"header.ftl\">${title}");
+        myFixture.addFileToProject("other.ftl", "${title}");
+        myFixture.configureByText("header.ftl", "<#assign title = \"Home\">${tit<caret>le}");
+        assertSize(2, myFixture.findUsages(resolveSingle()));
+    }
+
+    private void assertBindsTo(int offset) {
+        PsiElement target = resolveSingle();
+        assertEquals(myFixture.getFile(), target.getContainingFile());
+        assertEquals(offset, target.getTextRange().getStartOffset());
+    }
+
+    private PsiElement resolveSingle() {
+        ResolveResult[] results = multiResolve();
+        assertEquals(1, results.length);
+        return results[0].getElement();
+    }
+
+    private ResolveResult[] multiResolve() {
+        return ((PsiPolyVariantReference) myFixture.getReferenceAtCaretPositionWithAssertion()).multiResolve(false);
+    }
+}
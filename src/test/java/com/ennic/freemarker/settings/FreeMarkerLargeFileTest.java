@@ -0,0 +1,88 @@
+package com.ennic.freemarker.settings;
+
+import com.ennic.freemarker.filetype.FreeMarkerFileType;
+import com.ennic.freemarker.filetype.FreeMarkerLanguage;
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiManager;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+
+public class FreeMarkerLargeFileTest extends BasePlatformTestCase {
+    private static final long TIME_BUDGET_MS = 15_000;
+    private static final long HEAP_BUDGET = 384L << 20;
+    private static final long TREE_ALLOCATION_BUDGET = 1L << 20;
+    private static final String ROW = "<#if row.visible><tr><td class=\"name\">${row.name?html}</td>" +
+            "<td>${row.total?string(\"0.00\")}</td></tr></#if>\n";
+
+    // Opening a 50 MB template, highlighting and tree included, stays within a fixed time and heap budget
+    public void testOpenFiftyMegabyteTemplate() {
+        String text = ROW.repeat(50 * 1024 * 1024 / ROW.length());
+        long heap = usedHeap();
+        long start = System.nanoTime();
+
+        PsiFile file = myFixture.configureByText("report.ftl", text);
+        EditorEx editor = (EditorEx) myFixture.getEditor();
+        HighlighterIterator iterator = editor.getHighlighter().createIterator(text.length() - 1);
+        int children = file.getNode().getChildren(null).length;
+
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        long retained = usedHeap() - heap;
+        assertNotNull(iterator.getTokenType());
+        assertTrue(FreeMarkerSettings.isLargeFile(file));
+        assertEquals(Set.of(FreeMarkerLanguage.INSTANCE), file.getViewProvider().getLanguages());
+        assertEquals(1, children);
+        assertTrue("opening took " + elapsed + " ms", elapsed < TIME_BUDGET_MS);
+        assertTrue("opening retained " + (retained >> 20) + " MB", retained < HEAP_BUDGET);
+    }
+
+    // Building the tree of a large template lexes nothing, so it allocates next to nothing however large the file
+    public void testLargeFileTreeIsNotLexed() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        String text = ROW.repeat(50 * 1024 * 1024 / ROW.length());
+        PsiFile file = PsiFileFactory.getInstance(getProject()).createFileFromText("report.ftl",
+                FreeMarkerFileType.INSTANCE, text);
+        assertTrue(FreeMarkerSettings.isLargeFile(file));
+
+        long before = allocations.getCurrentThreadAllocatedBytes();
+        ASTNode[] children = file.getNode().getChildren(null);
+        long allocated = allocations.getCurrentThreadAllocatedBytes() - before;
+
+        assertEquals(1, children.length);
+        assertEquals(text.length(), children[0].getTextLength());
+        assertTrue("building the tree allocated " + (allocated >> 10) + " KB", allocated < TREE_ALLOCATION_BUDGET);
+    }
+
+    // Lowering the threshold below a template's size reparses it in large file mode
+    public void testThresholdChangeReparses() {
+        FreeMarkerSettings settings = FreeMarkerSettings.getInstance();
+        int threshold = settings.getLargeFileThresholdKb();
+        try {
+            PsiFile file = myFixture.configureByText("page.ftl", "<#macro m>${x}</#macro>\n".repeat(100));
+            assertFalse(FreeMarkerSettings.isLargeFile(file));
+
+            settings.setLargeFileThresholdKb(1);
+            PsiFile reparsed = PsiManager.getInstance(getProject()).findFile(file.getVirtualFile());
+            assertTrue(FreeMarkerSettings.isLargeFile(reparsed));
+            assertEquals(Set.of(FreeMarkerLanguage.INSTANCE), reparsed.getViewProvider().getLanguages());
+        } finally {
+            settings.setLargeFileThresholdKb(threshold);
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}